@@ -1,19 +1,43 @@
 package de.domisum.lib.compitum;
 
 import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.auxilium.util.FileUtil;
 import de.domisum.lib.auxiliumspigot.AuxiliumSpigotLib;
+import de.domisum.lib.compitum.block.BakedWalkabilityMap;
+import de.domisum.lib.compitum.block.BlockCache;
+import de.domisum.lib.compitum.block.BlockChangeListener;
+import de.domisum.lib.compitum.block.BlockChangeObserver;
+import de.domisum.lib.compitum.block.BlockLandmarkRegion;
 import de.domisum.lib.compitum.block.evaluator.MaterialEvaluator;
 import de.domisum.lib.compitum.block.evaluator.StairEvaluator;
+import de.domisum.lib.compitum.metrics.PathfindingMetrics;
 import de.domisum.lib.compitum.navmesh.NavMeshManager;
+import de.domisum.lib.compitum.sampling.SlowRequestSampler;
+import de.domisum.lib.compitum.scheduling.PathfindingScheduler;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+import org.bukkit.event.HandlerList;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @API
 public class CompitumLib
 {
 
+	// CONSTANTS
+	private static final String WALKABILITY_MAPS_DIRECTORY = "walkabilityMaps";
+	private static final String WALKABILITY_MAP_FILE_EXTENSION = ".walkability";
+	private static final String LANDMARK_REGIONS_DIRECTORY = "landmarkRegions";
+	private static final String LANDMARK_REGION_FILE_EXTENSION = ".landmarks";
+
 	// SETTINGS
 	private static boolean navMeshesEnabled = false;
 
@@ -22,6 +46,13 @@ public class CompitumLib
 	private Plugin plugin;
 
 	private NavMeshManager navMeshManager;
+	private List<BlockLandmarkRegion> blockLandmarkRegions = new CopyOnWriteArrayList<>();
+	private List<BakedWalkabilityMap> bakedWalkabilityMaps = new CopyOnWriteArrayList<>();
+	private PathfindingScheduler pathfindingScheduler;
+	private PathfindingMetrics metrics = new PathfindingMetrics();
+	private BlockCache blockCache;
+	private SlowRequestSampler slowRequestSampler;
+	private List<BlockChangeObserver> blockChangeObservers = new CopyOnWriteArrayList<>();
 
 
 	// INIT
@@ -54,6 +85,8 @@ public class CompitumLib
 
 		MaterialEvaluator.prepareEvaluation();
 		StairEvaluator.prepareEvaluation();
+		loadBakedWalkabilityMaps();
+		loadBlockLandmarkRegions();
 
 		if(navMeshesEnabled)
 		{
@@ -61,11 +94,21 @@ public class CompitumLib
 			this.navMeshManager.initiialize();
 		}
 
+		this.pathfindingScheduler = new PathfindingScheduler();
+		this.pathfindingScheduler.start(this.plugin);
+
+		BlockChangeListener blockChangeListener = new BlockChangeListener(this.plugin, this.blockChangeObservers);
+		Bukkit.getPluginManager().registerEvents(blockChangeListener, this.plugin);
+
 		getLogger().info(this.getClass().getSimpleName()+" has been enabled");
 	}
 
 	private void onDisable()
 	{
+		this.pathfindingScheduler.stop();
+		disableSlowRequestSampling();
+		disableBlockCache();
+
 		if(this.navMeshManager != null)
 			this.navMeshManager.terminate();
 
@@ -75,6 +118,55 @@ public class CompitumLib
 	}
 
 
+	private void loadBakedWalkabilityMaps()
+	{
+		File baseDir = new File(this.plugin.getDataFolder(), WALKABILITY_MAPS_DIRECTORY);
+		if(!baseDir.isDirectory())
+			return;
+
+		for(File file : FileUtil.listFilesRecursively(baseDir, FileUtil.FileType.FILE))
+		{
+			if(!file.getName().endsWith(WALKABILITY_MAP_FILE_EXTENSION))
+				continue;
+
+			try
+			{
+				this.bakedWalkabilityMaps.add(BakedWalkabilityMap.load(file));
+			}
+			catch(IOException e)
+			{
+				getLogger().log(Level.WARNING, "Failed to load walkability map '"+file.getAbsolutePath()+"'", e);
+			}
+		}
+
+		getLogger().info("Loaded "+this.bakedWalkabilityMaps.size()+" baked walkability map(s)");
+	}
+
+	private void loadBlockLandmarkRegions()
+	{
+		File baseDir = new File(this.plugin.getDataFolder(), LANDMARK_REGIONS_DIRECTORY);
+		if(!baseDir.isDirectory())
+			return;
+
+		for(File file : FileUtil.listFilesRecursively(baseDir, FileUtil.FileType.FILE))
+		{
+			if(!file.getName().endsWith(LANDMARK_REGION_FILE_EXTENSION))
+				continue;
+
+			try
+			{
+				this.blockLandmarkRegions.add(BlockLandmarkRegion.load(file));
+			}
+			catch(IOException e)
+			{
+				getLogger().log(Level.WARNING, "Failed to load landmark region '"+file.getAbsolutePath()+"'", e);
+			}
+		}
+
+		getLogger().info("Loaded "+this.blockLandmarkRegions.size()+" block landmark region(s)");
+	}
+
+
 	// GETTERS
 	@API public static CompitumLib getInstance()
 	{
@@ -98,12 +190,62 @@ public class CompitumLib
 		return getInstance().navMeshManager;
 	}
 
+	@API public static PathfindingScheduler getPathfindingScheduler()
+	{
+		return getInstance().pathfindingScheduler;
+	}
+
+	/**
+	 * @return the counters and latency histograms of all pathfindings done through the UniversalPathfinder and the
+	 * PathfindingScheduler
+	 */
+	@API public static PathfindingMetrics getMetrics()
+	{
+		return getInstance().metrics;
+	}
+
+	/**
+	 * @return the cache of the blocks read by the pathfinding, or null if the cache is disabled
+	 */
+	@API public static BlockCache getBlockCache()
+	{
+		return getInstance().blockCache;
+	}
+
+	/**
+	 * @return the sampler recording slow pathfindings, or null if sampling is disabled
+	 */
+	@API public static SlowRequestSampler getSlowRequestSampler()
+	{
+		return getInstance().slowRequestSampler;
+	}
+
 	@API public static boolean areNavMeshesEnabled()
 	{
 		return navMeshesEnabled;
 	}
 
 
+	@API public static BlockLandmarkRegion getBlockLandmarkRegionAt(Location location)
+	{
+		for(BlockLandmarkRegion region : getInstance().blockLandmarkRegions)
+			if(region.contains(location))
+				return region;
+
+		return null;
+	}
+
+
+	@API public static BakedWalkabilityMap getBakedWalkabilityMapAt(Location location)
+	{
+		for(BakedWalkabilityMap map : getInstance().bakedWalkabilityMaps)
+			if(map.contains(location))
+				return map;
+
+		return null;
+	}
+
+
 	// SETTERS
 	@API public static void enableNavMeshes()
 	{
@@ -113,4 +255,132 @@ public class CompitumLib
 		navMeshesEnabled = true;
 	}
 
+
+	// BLOCK CACHE
+	/**
+	 * Makes the UniversalPathfinder read the blocks through a cache shared by all searches, instead of reading them
+	 * from the world for every search. This helps when many searches run through the same areas.
+	 *
+	 * @param maxBytes the memory budget of the cache in bytes
+	 */
+	@API public static void enableBlockCache(long maxBytes)
+	{
+		enableBlockCache(new BlockCache(maxBytes));
+	}
+
+	/**
+	 * Like {@link #enableBlockCache(long)}, but with a cache created by the caller, e.g. one keeping its blocks off the
+	 * heap in an OffHeapSectionStore.
+	 *
+	 * @param blockCache the cache to use
+	 */
+	@API public static void enableBlockCache(BlockCache blockCache)
+	{
+		disableBlockCache();
+
+		getInstance().blockCache = blockCache;
+		registerBlockChangeObserver(blockCache);
+		Bukkit.getPluginManager().registerEvents(blockCache, getInstance().plugin);
+	}
+
+	@API public static void disableBlockCache()
+	{
+		BlockCache blockCache = getInstance().blockCache;
+		if(blockCache == null)
+			return;
+
+		HandlerList.unregisterAll(blockCache);
+		unregisterBlockChangeObserver(blockCache);
+		blockCache.clear();
+		getInstance().blockCache = null;
+	}
+
+
+	// SAMPLING
+	/**
+	 * Starts recording every pathfinding done through the UniversalPathfinder which takes longer than the threshold.
+	 * The samples can be replayed without a server using PathfindingReplay.
+	 *
+	 * @param thresholdNanos the duration in nanoseconds above which a pathfinding is recorded
+	 * @param directory      the directory the samples are written to
+	 * @param capacity       the number of samples kept, the oldest one is replaced when the capacity is reached
+	 */
+	@API public static void enableSlowRequestSampling(long thresholdNanos, File directory, int capacity)
+	{
+		disableSlowRequestSampling();
+		getInstance().slowRequestSampler = new SlowRequestSampler(thresholdNanos, directory, capacity, getLogger());
+	}
+
+	@API public static void disableSlowRequestSampling()
+	{
+		SlowRequestSampler sampler = getInstance().slowRequestSampler;
+		if(sampler == null)
+			return;
+
+		sampler.terminate();
+		getInstance().slowRequestSampler = null;
+	}
+
+
+	// LANDMARKS
+	/**
+	 * Registers a region so the BlockAStar searches in it use its landmarks. Regions in files ending with '.landmarks'
+	 * in the directory 'landmarkRegions' in the data folder of the plugin enabling CompitumLib
+	 * (plugins/&lt;plugin&gt;/landmarkRegions) are registered automatically when CompitumLib is enabled.
+	 *
+	 * @param region the region to register
+	 */
+	@API public static void registerBlockLandmarkRegion(BlockLandmarkRegion region)
+	{
+		getInstance().blockLandmarkRegions.add(region);
+	}
+
+	@API public static void unregisterBlockLandmarkRegion(BlockLandmarkRegion region)
+	{
+		getInstance().blockLandmarkRegions.remove(region);
+	}
+
+
+	// WALKABILITY MAPS
+	/**
+	 * Registers a map so the UniversalPathfinder uses it for searches starting or ending in it. Maps in files ending
+	 * with '.walkability' in the directory 'walkabilityMaps' in the data folder of the plugin enabling CompitumLib
+	 * (plugins/&lt;plugin&gt;/walkabilityMaps) are registered automatically when CompitumLib is enabled.
+	 *
+	 * @param map the map
+	 */
+	@API public static void registerBakedWalkabilityMap(BakedWalkabilityMap map)
+	{
+		getInstance().bakedWalkabilityMaps.add(map);
+	}
+
+	@API public static void unregisterBakedWalkabilityMap(BakedWalkabilityMap map)
+	{
+		getInstance().bakedWalkabilityMaps.remove(map);
+	}
+
+
+	// BLOCK CHANGES
+	@API public static void registerBlockChangeObserver(BlockChangeObserver observer)
+	{
+		getInstance().blockChangeObservers.add(observer);
+	}
+
+	@API public static void unregisterBlockChangeObserver(BlockChangeObserver observer)
+	{
+		getInstance().blockChangeObservers.remove(observer);
+	}
+
+	/**
+	 * Notifies the BlockChangeObservers about a block changed without an event, e.g. through Block.setType(..) by a
+	 * plugin. Such changes are not seen otherwise, so the caches and navigation meshes would keep the old block.
+	 *
+	 * @param block the changed block
+	 */
+	@API public static void notifyBlockChange(Block block)
+	{
+		for(BlockChangeObserver observer : getInstance().blockChangeObservers)
+			observer.onBlockChange(block.getWorld(), block.getX(), block.getY(), block.getZ());
+	}
+
 }
@@ -2,31 +2,64 @@ package de.domisum.lib.compitum;
 
 
 import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.block.BakedBlockAccess;
+import de.domisum.lib.compitum.block.BakedWalkabilityMap;
+import de.domisum.lib.compitum.block.BidirectionalBlockAStar;
+import de.domisum.lib.compitum.block.BlockAccess;
+import de.domisum.lib.compitum.block.BlockCache;
 import de.domisum.lib.compitum.block.BlockAStar;
+import de.domisum.lib.compitum.block.BlockLandmarkRegion;
 import de.domisum.lib.compitum.block.BlockPathSmoother;
+import de.domisum.lib.compitum.block.CachedBlockAccess;
+import de.domisum.lib.compitum.block.ParallelBlockAStar;
+import de.domisum.lib.compitum.block.WorldBlockAccess;
+import de.domisum.lib.compitum.metrics.PathfindingStats;
 import de.domisum.lib.compitum.navmesh.NavMesh;
 import de.domisum.lib.compitum.navmesh.NavMeshManager;
 import de.domisum.lib.compitum.navmesh.pathfinding.NavMeshPathfinder;
 import de.domisum.lib.compitum.path.BlockPath;
 import de.domisum.lib.compitum.path.Path;
+import de.domisum.lib.compitum.path.PathListener;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import de.domisum.lib.compitum.sampling.PathfindingSample;
+import de.domisum.lib.compitum.sampling.SlowRequestSampler;
 import org.bukkit.Location;
 
+import java.util.List;
 import java.util.Objects;
 
 @API
 public class UniversalPathfinder
 {
 
+	// CONSTANTS
+	// below this distance the overhead of the snapshot and the threads is bigger than the time saved
+	private static final double PARALLEL_SEARCH_MIN_DISTANCE = 64;
+
 	// INPUT
 	private Location start;
 	private Location target;
 
 	// PROPERTIES
+	private boolean useBidirectionalSearch = false;
+	private boolean useParallelSearch = false;
+	private boolean returnPartialPath = false;
+
+	private PathListener pathListener;
 
+	// STATUS
+	private BlockAStar blockPathfinder;
+	private NavMeshPathfinder navMeshPathfinder;
+	private NavMesh navMesh;
+	private boolean finished = false;
+
+	private BlockPathNode provisionalPathEnd;
 
 	// OUTPUT
 	private Path path;
+	private boolean pathPartial = false;
 
+	private PathfindingStats stats;
 	private String diagnose;
 	private String failure;
 
@@ -50,6 +83,28 @@ public class UniversalPathfinder
 		return this.path != null;
 	}
 
+	@API public boolean isFinished()
+	{
+		return this.finished;
+	}
+
+	/**
+	 * @return true if the path only leads towards the target because the search gave up, see
+	 * {@link #setReturnPartialPath(boolean)}
+	 */
+	@API public boolean isPathPartial()
+	{
+		return this.pathPartial;
+	}
+
+
+	/**
+	 * @return the cost of the pathfinding, or null if it isn't finished yet
+	 */
+	@API public PathfindingStats getStats()
+	{
+		return this.stats;
+	}
 
 	@API public String getDiagnose()
 	{
@@ -62,8 +117,123 @@ public class UniversalPathfinder
 	}
 
 
+	// SETTERS
+	/**
+	 * Makes the block pathfinding search from the start and the target at the same time. This is faster to detect
+	 * enclosed targets, e.g. inside of buildings, since the search from the target runs out of nodes early.
+	 *
+	 * @param useBidirectionalSearch whether the block pathfinding should search from both ends
+	 */
+	@API public void setUseBidirectionalSearch(boolean useBidirectionalSearch)
+	{
+		this.useBidirectionalSearch = useBidirectionalSearch;
+	}
+
+	/**
+	 * Makes long block pathfinding searches run from both ends on separate threads, on a snapshot of the blocks between
+	 * the start and the target. Short searches, and searches too long for the snapshot (see
+	 * {@link ParallelBlockAStar#MAX_SNAPSHOT_DISTANCE}), are still done on the calling thread.
+	 *
+	 * @param useParallelSearch whether long block pathfinding searches should use multiple threads
+	 */
+	@API public void setUseParallelSearch(boolean useParallelSearch)
+	{
+		this.useParallelSearch = useParallelSearch;
+	}
+
+	/**
+	 * Makes the pathfinding return the path to the point closest to the target if the search gives up because it
+	 * visited too many nodes. The failure is still set, so the caller can search again from the end of the path.
+	 *
+	 * @param returnPartialPath whether a partial path should be returned if the search gives up
+	 */
+	@API public void setReturnPartialPath(boolean returnPartialPath)
+	{
+		this.returnPartialPath = returnPartialPath;
+	}
+
+	/**
+	 * Sets a listener which receives a provisional path after every step of the block pathfinding in which the search
+	 * got closer to the target, and the final path when the pathfinding is finished.
+	 *
+	 * @param pathListener the listener receiving the paths
+	 */
+	@API public void setPathListener(PathListener pathListener)
+	{
+		this.pathListener = pathListener;
+	}
+
+
 	// PATHFINDING
 	@API public void findPath()
+	{
+		if(this.finished)
+			return;
+
+		if(tryNavMesh())
+		{
+			onPathfindingFinished();
+			return;
+		}
+
+		createBlockPathfinder();
+		this.blockPathfinder.findPath();
+		finishWorldAStar();
+		onPathfindingFinished();
+	}
+
+	/**
+	 * Continues the pathfinding until it is finished or the given time has passed. NavMesh pathfinding is fast enough
+	 * to always be completed in one call, the block pathfinding keeps its state between the calls.
+	 *
+	 * @param nanoBudget the time in nanoseconds this call may take
+	 * @return true if the pathfinding is finished (with or without a path), false if it has to be continued
+	 */
+	@API public boolean stepFor(long nanoBudget)
+	{
+		if(this.finished)
+			return true;
+
+		if(this.blockPathfinder == null)
+		{
+			if(tryNavMesh())
+			{
+				onPathfindingFinished();
+				return true;
+			}
+
+			createBlockPathfinder();
+		}
+
+		if(!this.blockPathfinder.stepFor(nanoBudget))
+		{
+			publishProvisionalPath();
+			return false;
+		}
+
+		finishWorldAStar();
+		onPathfindingFinished();
+		return true;
+	}
+
+
+	/**
+	 * Stops the pathfinding if it isn't needed anymore, so a search running on other threads doesn't keep them busy.
+	 * The pathfinding can't be continued afterwards.
+	 */
+	@API public void cancel()
+	{
+		if(this.finished)
+			return;
+
+		this.finished = true;
+		this.failure = "The pathfinding was cancelled";
+		if(this.blockPathfinder instanceof ParallelBlockAStar)
+			((ParallelBlockAStar) this.blockPathfinder).cancel();
+	}
+
+
+	private boolean tryNavMesh()
 	{
 		navMeshCheck:
 		if(CompitumLib.areNavMeshesEnabled())
@@ -81,44 +251,167 @@ public class UniversalPathfinder
 				break navMeshCheck;
 
 			useNavMesh(meshAtStart);
-			return;
+			this.finished = true;
+			return true;
 		}
 
-		useWorldAStar();
+		return false;
 	}
 
 
-	private void useWorldAStar()
+	private void createBlockPathfinder()
 	{
-		BlockAStar pathfinder = new BlockAStar(this.start, this.target);
-		pathfinder.findPath();
+		if(this.useParallelSearch && isParallelSearchDistance())
+			this.blockPathfinder = new ParallelBlockAStar(this.start, this.target);
+		else if(this.useBidirectionalSearch)
+			this.blockPathfinder = new BidirectionalBlockAStar(this.start, this.target);
+		else
+			this.blockPathfinder = new BlockAStar(this.start, this.target);
+
+		// the parallel search reads the blocks from its own snapshot, since blocks which aren't cached yet can't be
+		// read off the main thread
+		if(!(this.blockPathfinder instanceof ParallelBlockAStar))
+			this.blockPathfinder.setBlockAccess(createBlockAccess());
+
+		BlockLandmarkRegion landmarkRegion = CompitumLib.getBlockLandmarkRegionAt(this.start);
+		if(landmarkRegion != null && landmarkRegion.contains(this.target))
+			this.blockPathfinder.setLandmarkRegion(landmarkRegion);
+
+		this.blockPathfinder.setReturnPartialPath(this.returnPartialPath);
+	}
+
+	private boolean isParallelSearchDistance()
+	{
+		if(this.start.getWorld() != this.target.getWorld())
+			return false;
+
+		if(this.start.distanceSquared(this.target) < PARALLEL_SEARCH_MIN_DISTANCE*PARALLEL_SEARCH_MIN_DISTANCE)
+			return false;
+
+		double dX = this.target.getX()-this.start.getX();
+		double dZ = this.target.getZ()-this.start.getZ();
+		return dX*dX+dZ*dZ <= ParallelBlockAStar.MAX_SNAPSHOT_DISTANCE*ParallelBlockAStar.MAX_SNAPSHOT_DISTANCE;
+	}
+
+	private void finishWorldAStar()
+	{
+		this.finished = true;
+
+		BlockAStar pathfinder = this.blockPathfinder;
 		this.diagnose = pathfinder.getDiagnose();
+		this.stats = pathfinder.getStats();
 		if(!pathfinder.pathFound())
 		{
 			this.failure = pathfinder.getFailure();
 			return;
 		}
-		BlockPath blockPath = pathfinder.getPath();
 
-		BlockPathSmoother smoother = new BlockPathSmoother(blockPath);
+		long smoothingStartNano = System.nanoTime();
+		this.path = smoothPath(pathfinder.getPath());
+		this.stats.addPhaseNanos("smoothing", System.nanoTime()-smoothingStartNano);
+		this.pathPartial = pathfinder.isPathPartial();
+		if(this.pathPartial)
+			this.failure = pathfinder.getFailure();
+	}
+
+	private Path smoothPath(BlockPath blockPath)
+	{
+		BlockPathSmoother smoother = new BlockPathSmoother(blockPath, createBlockAccess());
 		smoother.convert();
-		this.path = smoother.getSmoothPath();
+		return smoother.getSmoothPath();
+	}
+
+	private BlockAccess createBlockAccess()
+	{
+		BlockCache blockCache = CompitumLib.getBlockCache();
+		BlockAccess blockAccess = blockCache == null ?
+				new WorldBlockAccess(this.start.getWorld()) :
+				new CachedBlockAccess(blockCache, this.start.getWorld());
+
+		BakedWalkabilityMap walkabilityMap = CompitumLib.getBakedWalkabilityMapAt(this.start);
+		if(walkabilityMap == null)
+			walkabilityMap = CompitumLib.getBakedWalkabilityMapAt(this.target);
+		if(walkabilityMap != null)
+			return new BakedBlockAccess(walkabilityMap, blockAccess);
+
+		return blockAccess;
 	}
 
 	private void useNavMesh(NavMesh navMesh)
 	{
 		NavMeshPathfinder pathfinder = new NavMeshPathfinder(this.start, this.target, navMesh);
+		this.navMeshPathfinder = pathfinder;
+		this.navMesh = navMesh;
+		pathfinder.setReturnPartialPath(this.returnPartialPath);
 		pathfinder.findPath();
 		this.path = pathfinder.getPath();
+		this.stats = pathfinder.getStats();
 
 		//this.diagnose = pathfinder.getDiagnose();
 		if(this.path == null)
 		{
-			this.failure = getFailure();
+			this.failure = pathfinder.getFailure();
 			return;
 		}
 
 		this.path = pathfinder.getPath();
+		this.pathPartial = pathfinder.isPathPartial();
+		if(this.pathPartial)
+			this.failure = pathfinder.getFailure();
+	}
+
+
+	// PATH LISTENER
+	private void publishProvisionalPath()
+	{
+		if(this.pathListener == null)
+			return;
+
+		BlockPath provisionalPath = this.blockPathfinder.getProvisionalPath();
+		if(provisionalPath == null)
+			return;
+
+		// only paths which end at a new closest node are published, at most once per step
+		List<BlockPathNode> nodes = provisionalPath.getNodes();
+		if(nodes.size() < 2)
+			return;
+
+		BlockPathNode provisionalPathEnd = nodes.get(nodes.size()-1);
+		if(provisionalPathEnd.equals(this.provisionalPathEnd))
+			return;
+
+		this.provisionalPathEnd = provisionalPathEnd;
+		this.pathListener.onPathUpdate(smoothPath(provisionalPath), false);
+	}
+
+	private void onPathfindingFinished()
+	{
+		if(this.stats != null)
+		{
+			CompitumLib.getMetrics().record(this.stats);
+			sampleIfSlow();
+		}
+
+		if(this.pathListener != null)
+			this.pathListener.onPathUpdate(this.path, true);
+	}
+
+
+	private void sampleIfSlow()
+	{
+		SlowRequestSampler sampler = CompitumLib.getSlowRequestSampler();
+		if(sampler == null || !sampler.isSlow(this.stats))
+			return;
+
+		PathfindingSample sample = new PathfindingSample(this.stats, this.failure, this.start, this.target,
+				this.useBidirectionalSearch, this.useParallelSearch, this.returnPartialPath);
+		if(this.navMeshPathfinder != null)
+		{
+			sample.setNavMesh(this.navMesh.getId(), this.navMeshPathfinder.getNavMeshVersion());
+			sampler.sampleNavMeshSearch(sample);
+		}
+		else
+			sampler.sampleBlockSearch(sample, this.start, this.target, this.blockPathfinder);
 	}
 
 
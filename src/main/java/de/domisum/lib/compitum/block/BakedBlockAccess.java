@@ -0,0 +1,82 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.block.evaluator.StairEvaluator;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+
+/**
+ * Answers the walkability queries of the pathfinding from a BakedWalkabilityMap inside of the map, and from another
+ * BlockAccess outside of it. Types and data of blocks are always read from the other BlockAccess.
+ */
+@API
+public class BakedBlockAccess implements BlockAccess
+{
+
+	// REFERENCES
+	private final BakedWalkabilityMap map;
+	private final BlockAccess fallback;
+
+
+	// INIT
+	@API public BakedBlockAccess(BakedWalkabilityMap map, BlockAccess fallback)
+	{
+		this.map = map;
+		this.fallback = fallback;
+	}
+
+
+	// ACCESS
+	@Override public int getTypeId(int x, int y, int z)
+	{
+		return this.fallback.getTypeId(x, y, z);
+	}
+
+	@Override public int getData(int x, int y, int z)
+	{
+		return this.fallback.getData(x, y, z);
+	}
+
+
+	// WALKABILITY
+	@Override public boolean canStandIn(int x, int y, int z)
+	{
+		if(!this.map.contains(x, y, z))
+			return this.fallback.canStandIn(x, y, z);
+
+		return (this.map.getFlags(x, y, z)&BakedWalkabilityMap.CAN_STAND_IN) != 0;
+	}
+
+	@Override public boolean canStandOn(int x, int y, int z)
+	{
+		if(!this.map.contains(x, y, z))
+			return this.fallback.canStandOn(x, y, z);
+
+		return (this.map.getFlags(x, y, z)&BakedWalkabilityMap.CAN_STAND_ON) != 0;
+	}
+
+	@Override public boolean canStandAt(int x, int y, int z)
+	{
+		if(!this.map.contains(x, y, z))
+			return this.fallback.canStandAt(x, y, z);
+
+		return (this.map.getFlags(x, y, z)&BakedWalkabilityMap.CAN_STAND_AT) != 0;
+	}
+
+	@Override public boolean isLadder(int x, int y, int z)
+	{
+		if(!this.map.contains(x, y, z))
+			return this.fallback.isLadder(x, y, z);
+
+		return (this.map.getFlags(x, y, z)&BakedWalkabilityMap.LADDER) != 0;
+	}
+
+	@Override public boolean isStair(BlockPathNode from, BlockPathNode to)
+	{
+		if(!this.map.contains(to.x, to.y-1, to.z))
+			return this.fallback.isStair(from, to);
+
+		int directionBits = this.map.getFlags(to.x, to.y-1, to.z)>>BakedWalkabilityMap.STAIR_DIRECTIONS_SHIFT;
+		return StairEvaluator.isStair(from, to, directionBits);
+	}
+
+}
@@ -0,0 +1,243 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.block.evaluator.StairEvaluator;
+import org.bukkit.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The precomputed walkability of every block of a cuboid region of a world, for regions whose blocks never change
+ * (e.g. lobbies and minigame maps). One byte per block holds whether the block can be stood in and on, whether an
+ * agent fits into the block and the one above it while standing on the block below, whether the block is a ladder,
+ * and in which directions it can be walked up as a stair.
+ * <p>
+ * The map is baked into a file once and memory-mapped when it is loaded, so it doesn't use heap memory and can be
+ * read from any thread.
+ */
+@API
+public class BakedWalkabilityMap
+{
+
+	// CONSTANTS
+	private static final int MAGIC_NUMBER = 0x43505757; // "CPWW"
+	private static final int FORMAT_VERSION = 1;
+
+	static final int CAN_STAND_IN = 1;
+	static final int CAN_STAND_ON = 1<<1;
+	static final int CAN_STAND_AT = 1<<2;
+	static final int LADDER = 1<<3;
+	static final int STAIR_DIRECTIONS_SHIFT = 4; // the upper four bits are the stair directions
+
+	// PROPERTIES
+	private final String worldName;
+
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+
+	// STATUS
+	private final ByteBuffer flags;
+
+
+	// INIT
+	private BakedWalkabilityMap(String worldName, int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ,
+			ByteBuffer flags)
+	{
+		this.worldName = worldName;
+
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+
+		this.flags = flags;
+	}
+
+	/**
+	 * Maps the file of a baked map into memory.
+	 *
+	 * @param file the file written by one of the bake methods
+	 * @return the map
+	 * @throws IOException if the file can't be read or isn't a baked walkability map
+	 */
+	@API public static BakedWalkabilityMap load(File file) throws IOException
+	{
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+				FileChannel channel = randomAccessFile.getChannel())
+		{
+			if(randomAccessFile.readInt() != MAGIC_NUMBER)
+				throw new IOException("The file '"+file.getAbsolutePath()+"' is not a baked walkability map");
+
+			int formatVersion = randomAccessFile.readInt();
+			if(formatVersion != FORMAT_VERSION)
+				throw new IOException("The walkability map format version "+formatVersion+" is not supported");
+
+			String worldName = randomAccessFile.readUTF();
+			int minX = randomAccessFile.readInt();
+			int minY = randomAccessFile.readInt();
+			int minZ = randomAccessFile.readInt();
+			int sizeX = randomAccessFile.readInt();
+			int sizeY = randomAccessFile.readInt();
+			int sizeZ = randomAccessFile.readInt();
+
+			// the mapped buffer stays valid after the channel is closed
+			long volume = (long) sizeX*sizeY*sizeZ;
+			ByteBuffer flags = channel.map(FileChannel.MapMode.READ_ONLY, randomAccessFile.getFilePointer(), volume);
+
+			return new BakedWalkabilityMap(worldName, minX, minY, minZ, sizeX, sizeY, sizeZ, flags);
+		}
+	}
+
+
+	// GETTERS
+	@API public String getWorldName()
+	{
+		return this.worldName;
+	}
+
+	@API public boolean contains(Location location)
+	{
+		if(!location.getWorld().getName().equals(this.worldName))
+			return false;
+
+		return contains(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+	}
+
+	boolean contains(int x, int y, int z)
+	{
+		return x >= this.minX && x < this.minX+this.sizeX && y >= this.minY && y < this.minY+this.sizeY
+				&& z >= this.minZ && z < this.minZ+this.sizeZ;
+	}
+
+	/**
+	 * @return the flags of a block inside of the map
+	 */
+	int getFlags(int x, int y, int z)
+	{
+		return this.flags.get(getIndex(x, y, z))&0xFF;
+	}
+
+	private int getIndex(int x, int y, int z)
+	{
+		return ((x-this.minX)*this.sizeY+(y-this.minY))*this.sizeZ+(z-this.minZ);
+	}
+
+
+	// BAKING
+	/**
+	 * Bakes the map of the cuboid region between the corners on another thread. Only the snapshot of the chunks is
+	 * taken on the calling thread, which has to be the main thread. The chunks of the region have to be loaded.
+	 *
+	 * @param corner1 a corner of the region
+	 * @param corner2 the opposite corner of the region
+	 * @param file    the file the map is written to
+	 * @return the future of the loaded map
+	 */
+	@API public static CompletableFuture<BakedWalkabilityMap> bakeAsync(Location corner1, Location corner2, File file)
+	{
+		int minX = Math.min(corner1.getBlockX(), corner2.getBlockX());
+		int minY = Math.min(corner1.getBlockY(), corner2.getBlockY());
+		int minZ = Math.min(corner1.getBlockZ(), corner2.getBlockZ());
+		int maxX = Math.max(corner1.getBlockX(), corner2.getBlockX());
+		int maxY = Math.max(corner1.getBlockY(), corner2.getBlockY());
+		int maxZ = Math.max(corner1.getBlockZ(), corner2.getBlockZ());
+
+		BlockSnapshot snapshot = new BlockSnapshot(corner1, corner2);
+		String worldName = corner1.getWorld().getName();
+		return CompletableFuture.supplyAsync(()->
+		{
+			try
+			{
+				bake(snapshot, worldName, minX, minY, minZ, maxX, maxY, maxZ, file);
+				return load(file);
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	/**
+	 * Evaluates the walkability of every block of the region and writes it to the file.
+	 *
+	 * @param blockAccess the source of the blocks, the blocks around the region are read as well
+	 * @param worldName   the name of the world of the region
+	 * @param minX        the lowest x coordinate of the region
+	 * @param minY        the lowest y coordinate of the region
+	 * @param minZ        the lowest z coordinate of the region
+	 * @param maxX        the highest x coordinate of the region
+	 * @param maxY        the highest y coordinate of the region
+	 * @param maxZ        the highest z coordinate of the region
+	 * @param file        the file the map is written to, it is replaced if it exists
+	 * @throws IOException if the file can't be written
+	 */
+	@API public static void bake(BlockAccess blockAccess, String worldName, int minX, int minY, int minZ, int maxX,
+			int maxY, int maxZ, File file) throws IOException
+	{
+		int sizeX = maxX-minX+1;
+		int sizeY = maxY-minY+1;
+		int sizeZ = maxZ-minZ+1;
+		if((long) sizeX*sizeY*sizeZ > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The region is too large (max volume is "+Integer.MAX_VALUE+" blocks)");
+
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw"))
+		{
+			randomAccessFile.setLength(0);
+			randomAccessFile.writeInt(MAGIC_NUMBER);
+			randomAccessFile.writeInt(FORMAT_VERSION);
+			randomAccessFile.writeUTF(worldName);
+			randomAccessFile.writeInt(minX);
+			randomAccessFile.writeInt(minY);
+			randomAccessFile.writeInt(minZ);
+			randomAccessFile.writeInt(sizeX);
+			randomAccessFile.writeInt(sizeY);
+			randomAccessFile.writeInt(sizeZ);
+
+			// the blocks are written in slices of the same x coordinate, in the order of the index
+			byte[] slice = new byte[sizeY*sizeZ];
+			for(int x = minX; x <= maxX; x++)
+			{
+				for(int y = minY; y <= maxY; y++)
+					for(int z = minZ; z <= maxZ; z++)
+						slice[(y-minY)*sizeZ+(z-minZ)] = (byte) evaluateFlags(blockAccess, x, y, z);
+
+				randomAccessFile.write(slice);
+			}
+		}
+	}
+
+	private static int evaluateFlags(BlockAccess blockAccess, int x, int y, int z)
+	{
+		int flags = 0;
+		if(blockAccess.canStandIn(x, y, z))
+			flags |= CAN_STAND_IN;
+		if(blockAccess.canStandOn(x, y, z))
+			flags |= CAN_STAND_ON;
+		if(blockAccess.canStandAt(x, y, z))
+			flags |= CAN_STAND_AT;
+		if(blockAccess.isLadder(x, y, z))
+			flags |= LADDER;
+
+		int typeId = blockAccess.getTypeId(x, y, z);
+		int directionBits = StairEvaluator.getDirectionBits(typeId, blockAccess.getData(x, y, z));
+		flags |= directionBits<<STAIR_DIRECTIONS_SHIFT;
+
+		return flags;
+	}
+
+}
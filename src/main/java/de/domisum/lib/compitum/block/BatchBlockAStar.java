@@ -0,0 +1,196 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.path.BlockPath;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import de.domisum.lib.compitum.path.node.TransitionType;
+import org.bukkit.Location;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the paths from multiple starts to the same target with one search running backwards from the target. All paths
+ * are extracted from the same search tree, so the area around the target is only searched once instead of once per
+ * start.
+ */
+@API
+public class BatchBlockAStar extends BlockAStar
+{
+
+	// INPUT
+	private final List<BlockPathNode> startNodes = new ArrayList<>();
+
+	// STATUS
+	private BlockAStarFrontier backward;
+	private Set<BlockPathNode> unreachedStartNodes;
+
+	// OUTPUT
+	private List<BlockPath> paths;
+
+
+	// INIT
+	/**
+	 * Creates a pathfinder for the paths from all of the starts to the target. The maximum number of visited nodes is
+	 * multiplied by the number of starts, so the batch can visit as many nodes as the single searches would.
+	 *
+	 * @param startLocations the starts of the paths
+	 * @param targetLocation the target of all paths
+	 */
+	@API public BatchBlockAStar(List<Location> startLocations, Location targetLocation)
+	{
+		super(targetLocation, targetLocation);
+
+		if(startLocations.isEmpty())
+			throw new IllegalArgumentException("At least one start location is needed");
+
+		for(Location startLocation : startLocations)
+		{
+			if(startLocation.getWorld() != targetLocation.getWorld())
+				throw new IllegalArgumentException("The start and the end location are not in the same world!");
+
+			this.startNodes.add(
+					new BlockPathNode(startLocation.getBlockX(), startLocation.getBlockY(), startLocation.getBlockZ()));
+		}
+
+		setMaxNodeVisits(getMaxNodeVisits()*startLocations.size());
+	}
+
+
+	// GETTERS
+	/**
+	 * @return the paths in the order of the start locations, null for the starts no path was found for; null if the
+	 * search isn't finished
+	 */
+	@API public List<BlockPath> getPaths()
+	{
+		return this.paths;
+	}
+
+	@API public int getFoundPathCount()
+	{
+		if(this.paths == null)
+			return 0;
+
+		int count = 0;
+		for(BlockPath path : this.paths)
+			if(path != null)
+				count++;
+
+		return count;
+	}
+
+	@Override public int getVisitedNodeCount()
+	{
+		return this.backward == null ? 0 : this.backward.visitedNodes.size();
+	}
+
+	@Override public int getUnvisitedNodeCount()
+	{
+		return this.backward == null ? 0 : this.backward.unvisitedNodes.getSize();
+	}
+
+	@Override public String getDiagnose()
+	{
+		String diagnose = super.getDiagnose();
+
+		diagnose += "starts="+this.startNodes.size()+", ";
+		diagnose += "foundPaths="+getFoundPathCount()+", ";
+
+		return diagnose;
+	}
+
+
+	// PATHFINDING
+	@Override protected void startSearch()
+	{
+		this.backward = new BlockAStarFrontier(getMaxNodeVisits());
+		this.unreachedStartNodes = new HashSet<>(this.startNodes);
+
+		BlockPathNode backwardStartNode = new BlockPathNode(this.endNode.x, this.endNode.y, this.endNode.z);
+		backwardStartNode.setParent(null, TransitionType.WALK, 0);
+		addBackwardNode(backwardStartNode);
+	}
+
+	@Override protected boolean continueSearch(int maxNodeVisitsInStep, long deadlineNano)
+	{
+		for(int i = 0; i < maxNodeVisitsInStep; i++)
+		{
+			if(i > 0 && isDeadlineReached(deadlineNano))
+				return false;
+
+			if(this.unreachedStartNodes.isEmpty())
+				return endSearch(null);
+
+			if(this.backward.unvisitedNodes.getSize() == 0)
+				return endSearch("No unvisted nodes left");
+
+			if(this.backward.visitedNodes.size() >= getMaxNodeVisits())
+				return endSearch("Number of nodes visited exceeds maximum");
+
+			BlockPathNode node = this.backward.visitNextNode();
+			this.unreachedStartNodes.remove(node);
+
+			for(BlockPathNode newNode : getPredecessorNodes(node))
+				if(!this.backward.contains(newNode))
+					addBackwardNode(newNode);
+		}
+
+		return false;
+	}
+
+	private boolean endSearch(String failure)
+	{
+		this.paths = new ArrayList<>(this.startNodes.size());
+		for(BlockPathNode startNode : this.startNodes)
+			this.paths.add(extractPath(startNode));
+
+		if(!this.unreachedStartNodes.isEmpty())
+			this.failure = failure+" ("+this.unreachedStartNodes.size()+" start(s) not reached)";
+
+		return true;
+	}
+
+	private BlockPath extractPath(BlockPathNode startNode)
+	{
+		if(this.unreachedStartNodes.contains(startNode))
+			return null;
+
+		BlockPathNode forwardStartNode = new BlockPathNode(startNode.x, startNode.y, startNode.z);
+		forwardStartNode.setParent(null, TransitionType.WALK, 0);
+
+		return new BlockPath(joinBackwardChain(forwardStartNode, this.backward.get(startNode)));
+	}
+
+	@Override protected BlockPathNode getPathEndNode()
+	{
+		// the paths are created for each start separately
+		return null;
+	}
+
+
+	@Override protected boolean canBeReachedForward(BlockPathNode node)
+	{
+		if(this.unreachedStartNodes.contains(node))
+			return true;
+
+		return super.canBeReachedForward(node);
+	}
+
+	private void addBackwardNode(BlockPathNode node)
+	{
+		// estimate the distance to the closest start, which keeps the estimate a lower bound for all of them
+		double distanceEstimate = Double.MAX_VALUE;
+		for(BlockPathNode startNode : this.unreachedStartNodes)
+			distanceEstimate = Math.min(distanceEstimate, getDistanceEstimate(startNode, node));
+
+		if(this.unreachedStartNodes.isEmpty())
+			distanceEstimate = 0;
+
+		node.setHeuristicWeight(distanceEstimate*getHeuristicImportance());
+		this.backward.add(node);
+	}
+
+}
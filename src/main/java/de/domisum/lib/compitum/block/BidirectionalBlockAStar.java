@@ -0,0 +1,197 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import de.domisum.lib.compitum.path.node.TransitionType;
+import org.bukkit.Location;
+
+/**
+ * Searches from the start and from the end at the same time. The backward search follows the movement rules in reverse,
+ * so it only uses a connection if it could be walked from the start side (e.g. jumping up vs. falling down).
+ * If the end is enclosed, the backward frontier runs out of nodes early and the search fails without flooding the area
+ * around the start.
+ */
+@API
+public class BidirectionalBlockAStar extends BlockAStar
+{
+
+	// STATUS
+	private BlockAStarFrontier forward;
+	private BlockAStarFrontier backward;
+
+	private BlockPathNode meetingForwardNode;
+	private BlockPathNode meetingBackwardNode;
+	private double meetingCost = Double.MAX_VALUE;
+
+
+	// INIT
+	@API public BidirectionalBlockAStar(Location startLocation, Location endLocation)
+	{
+		super(startLocation, endLocation);
+	}
+
+
+	// GETTERS
+	@Override public int getVisitedNodeCount()
+	{
+		return getForwardVisitedNodeCount()+getBackwardVisitedNodeCount();
+	}
+
+	@Override public int getUnvisitedNodeCount()
+	{
+		int count = 0;
+		if(this.forward != null)
+			count += this.forward.unvisitedNodes.getSize();
+		if(this.backward != null)
+			count += this.backward.unvisitedNodes.getSize();
+
+		return count;
+	}
+
+	@API public int getForwardVisitedNodeCount()
+	{
+		return this.forward == null ? 0 : this.forward.visitedNodes.size();
+	}
+
+	@API public int getBackwardVisitedNodeCount()
+	{
+		return this.backward == null ? 0 : this.backward.visitedNodes.size();
+	}
+
+	@Override public String getDiagnose()
+	{
+		String diagnose = super.getDiagnose();
+
+		diagnose += "forwardVisitedNodes="+getForwardVisitedNodeCount()+", ";
+		diagnose += "backwardVisitedNodes="+getBackwardVisitedNodeCount()+", ";
+
+		return diagnose;
+	}
+
+
+	// PATHFINDING
+	@Override protected void startSearch()
+	{
+		this.forward = new BlockAStarFrontier(getMaxNodeVisits());
+		this.backward = new BlockAStarFrontier(getMaxNodeVisits());
+
+		BlockPathNode backwardStartNode = new BlockPathNode(this.endNode.x, this.endNode.y, this.endNode.z);
+		backwardStartNode.setParent(null, TransitionType.WALK, 0);
+
+		addForwardNode(this.startNode);
+		addBackwardNode(backwardStartNode);
+	}
+
+	@Override protected boolean continueSearch(int maxNodeVisitsInStep, long deadlineNano)
+	{
+		if(this.startNode.equals(this.endNode))
+			return true;
+
+		for(int i = 0; i < maxNodeVisitsInStep; i++)
+		{
+			if(i > 0 && isDeadlineReached(deadlineNano))
+				return false;
+
+			// one of the sides is enclosed, no other connection can be found
+			if(this.forward.unvisitedNodes.getSize() == 0 || this.backward.unvisitedNodes.getSize() == 0)
+				return endSearch("No unvisted nodes left");
+
+			// no path through the remaining unvisited nodes can be shorter than the one found already
+			double lowerBound = Math.max(this.forward.unvisitedNodes.getFirst().getFValue(),
+					this.backward.unvisitedNodes.getFirst().getFValue());
+			if(this.meetingCost <= lowerBound)
+				return endSearch(null);
+
+			if(getVisitedNodeCount() >= getMaxNodeVisits())
+			{
+				this.nodeVisitLimitReached = true;
+				return endSearch("Number of nodes visited exceeds maximum");
+			}
+
+			// always continue the smaller frontier to keep the searches balanced
+			if(this.forward.unvisitedNodes.getSize() <= this.backward.unvisitedNodes.getSize())
+				visitForwardNode(this.forward.visitNextNode());
+			else
+				visitBackwardNode(this.backward.visitNextNode());
+
+			updateOpenSetPeak();
+		}
+
+		return false;
+	}
+
+	private boolean endSearch(String failure)
+	{
+		// the search can run out of nodes after the frontiers already met
+		if(this.meetingForwardNode == null)
+			this.failure = failure;
+
+		return true;
+	}
+
+	@Override protected BlockPathNode getPathEndNode()
+	{
+		if(this.startNode.equals(this.endNode))
+			return this.startNode;
+
+		if(this.meetingForwardNode == null)
+			return null;
+
+		return joinMeetingNodes();
+	}
+
+
+	private void visitForwardNode(BlockPathNode node)
+	{
+		updateClosestNode(node);
+		expandSearchBounds(node);
+		for(BlockPathNode newNode : getSuccessorNodes(node))
+			if(!this.forward.contains(newNode))
+				addForwardNode(newNode);
+	}
+
+	private void visitBackwardNode(BlockPathNode node)
+	{
+		expandSearchBounds(node);
+		for(BlockPathNode newNode : getPredecessorNodes(node))
+			if(!this.backward.contains(newNode))
+				addBackwardNode(newNode);
+	}
+
+
+	private void addForwardNode(BlockPathNode node)
+	{
+		node.setHeuristicWeight(getDistanceEstimate(node, this.endNode)*getHeuristicImportance());
+		addNode(this.forward, this.backward, node);
+	}
+
+	private void addBackwardNode(BlockPathNode node)
+	{
+		// the backward search estimates the distance still needed to get from the start to the node
+		node.setHeuristicWeight(getDistanceEstimate(this.startNode, node)*getHeuristicImportance());
+		addNode(this.backward, this.forward, node);
+	}
+
+	private void addNode(BlockAStarFrontier frontier, BlockAStarFrontier otherFrontier, BlockPathNode node)
+	{
+		frontier.add(node);
+
+		BlockPathNode otherNode = otherFrontier.get(node);
+		if(otherNode == null)
+			return;
+
+		double cost = node.getGValue()+otherNode.getGValue();
+		if(cost >= this.meetingCost)
+			return;
+
+		this.meetingCost = cost;
+		this.meetingForwardNode = frontier == this.forward ? node : otherNode;
+		this.meetingBackwardNode = frontier == this.forward ? otherNode : node;
+	}
+
+	private BlockPathNode joinMeetingNodes()
+	{
+		return joinBackwardChain(this.meetingForwardNode, this.meetingBackwardNode);
+	}
+
+}
@@ -3,17 +3,22 @@ package de.domisum.lib.compitum.block;
 
 import de.domisum.lib.auxilium.util.java.annotations.API;
 import de.domisum.lib.auxilium.util.math.MathUtil;
-import de.domisum.lib.compitum.block.evaluator.MaterialEvaluator;
-import de.domisum.lib.compitum.block.evaluator.StairEvaluator;
+import de.domisum.lib.compitum.metrics.PathfindingStats;
 import de.domisum.lib.compitum.path.node.TransitionType;
 import de.domisum.lib.compitum.path.node.BlockPathNode;
 import de.domisum.lib.compitum.path.BlockPath;
 import de.domisum.lib.compitum.path.node.weighted.SortedWeightedNodeList;
 import org.bukkit.Location;
-import org.bukkit.Material;
+import org.bukkit.World;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 @API
 public class BlockAStar
@@ -21,6 +26,17 @@ public class BlockAStar
 
 	// CONSTANTS
 	private static final double CLIMBING_EXPENSE = 2;
+	// ladders are only used instead of walking if that saves a lot of distance
+	private static final double LADDER_AVOIDANCE_EXPENSE = 4;
+	private static final double DIAGONAL_EXPENSE = 1.41;
+	private static final int MAX_JUMP_DISTANCE = 32;
+	// what is known about a cell scanned by jump point search
+	private static final int CELL_UNOBSTRUCTED = 1;
+	private static final int CELL_STANDABLE = 2;
+	private static final int CELL_FLAT = 4;
+	private static final int CELL_FLATNESS_KNOWN = 8;
+
+	protected static final int NO_TRANSITION = -1;
 
 	// PROPERTIES
 	private double heuristicImportance = 1.0;
@@ -29,25 +45,45 @@ public class BlockAStar
 	private boolean canUseDiagonalMovement = true;
 	private boolean canUseLadders = false;
 
+	private boolean useJumpPointSearch = false;
+	private boolean returnPartialPath = false;
+
+	private BlockLandmarkRegion landmarkRegion;
+	private BlockAccess blockAccess;
+
 	// INPUT
 	private Location startLocation;
 	private Location endLocation;
 
 	// STATUS
-	private boolean moveDiagonally = true;
-	private boolean useLadders = false;
-
+	protected BlockPathNode startNode;
 	protected BlockPathNode endNode;
 
 	private SortedWeightedNodeList<BlockPathNode> unvisitedNodes = new SortedWeightedNodeList<>(this.maxNodeVisits*3);
 	private Set<BlockPathNode> visitedNodes = new HashSet<>(this.maxNodeVisits);
 
-	private long pathfindingStartNano;
-	private long pathfindingEndNano;
+	// the scans of neighboring jump points cross the same cells many times, so the cells are only read once per search
+	private final Map<BlockPathNode, Integer> jumpCells = new HashMap<>(); // <feet position, CELL_* flags>
+
+	private BlockPathNode closestNode;
+	private double closestNodeDistance = Double.MAX_VALUE;
+	protected boolean nodeVisitLimitReached = false;
+
+	private boolean searchStarted = false;
+	private boolean searchFinished = false;
+	private long pathfindingNanos;
+
+	private int openSetPeak = 0;
+	private BlockPathNode searchMin; // corners of the box around all visited nodes
+	private BlockPathNode searchMax;
+	private final Set<Long> searchChunks = new HashSet<>(); // <chunk key>, chunks containing visited nodes
+	private long lastSearchChunk; // consecutive nodes are mostly in the same chunk
+	private final LongAdder blockLookups = new LongAdder(); // the parallel search reads blocks from two threads
 
 	// OUTPUT
 	private BlockPath path;
-	private String failure;
+	private boolean pathPartial = false;
+	protected String failure;
 
 
 	// INIT
@@ -69,6 +105,37 @@ public class BlockAStar
 		return this.path;
 	}
 
+	/**
+	 * @return true if the path doesn't reach the end, but only leads to the node closest to it, see
+	 * {@link #setReturnPartialPath(boolean)}
+	 */
+	@API public boolean isPathPartial()
+	{
+		return this.pathPartial;
+	}
+
+	/**
+	 * Returns the path found so far while the search is still running: the path to the visited node which is the closest
+	 * to the end. The beginning of it is likely to be part of the final path, so an agent can start walking along it.
+	 *
+	 * @return the path if the search is finished, otherwise the path to the closest node or null if there is none yet
+	 */
+	@API public BlockPath getProvisionalPath()
+	{
+		if(this.path != null)
+			return this.path;
+
+		if(this.closestNode == null)
+			return null;
+
+		return new BlockPath(this.closestNode);
+	}
+
+	@API public boolean isFinished()
+	{
+		return this.searchFinished;
+	}
+
 
 	@API public String getFailure()
 	{
@@ -76,9 +143,46 @@ public class BlockAStar
 	}
 
 
+	@API public int getVisitedNodeCount()
+	{
+		return this.visitedNodes.size();
+	}
+
+	@API public int getUnvisitedNodeCount()
+	{
+		return this.unvisitedNodes.getSize();
+	}
+
+
+	protected World getWorld()
+	{
+		return this.startLocation.getWorld();
+	}
+
+	protected Location getStartLocation()
+	{
+		return this.startLocation;
+	}
+
+	protected int getMaxNodeVisits()
+	{
+		return this.maxNodeVisits;
+	}
+
+	protected double getHeuristicImportance()
+	{
+		return this.heuristicImportance;
+	}
+
+	protected boolean isUsingLadders()
+	{
+		return this.canUseLadders;
+	}
+
+
 	private long getNanoDuration()
 	{
-		return this.pathfindingEndNano-this.pathfindingStartNano;
+		return this.pathfindingNanos;
 	}
 
 	private double getMsDuration()
@@ -86,16 +190,63 @@ public class BlockAStar
 		return MathUtil.round(getNanoDuration()/1000d/1000, 2);
 	}
 
+	/**
+	 * @return the cost of the search so far
+	 */
+	@API public PathfindingStats getStats()
+	{
+		PathfindingStats stats = new PathfindingStats("block");
+		stats.setPathFound(pathFound());
+		stats.setPathPartial(this.pathPartial);
+		stats.setVisitedNodes(getVisitedNodeCount());
+		stats.setOpenSetPeak(this.openSetPeak);
+		stats.setBlockLookups(this.blockLookups.sum());
+		if(this.blockAccess instanceof CachedBlockAccess)
+			stats.setCacheHits(((CachedBlockAccess) this.blockAccess).getHitCount());
+		stats.addPhaseNanos("search", this.pathfindingNanos);
+
+		return stats;
+	}
+
+	/**
+	 * @return the corner with the lowest coordinates of the box around all nodes visited so far, null if the search
+	 * doesn't keep track of it or hasn't visited a node yet
+	 */
+	@API public Location getSearchMin()
+	{
+		return this.searchMin == null ? null : this.searchMin.getLocation(getWorld());
+	}
+
+	/**
+	 * @return the corner with the highest coordinates of the box around all nodes visited so far, null if the search
+	 * doesn't keep track of it or hasn't visited a node yet
+	 */
+	@API public Location getSearchMax()
+	{
+		return this.searchMax == null ? null : this.searchMax.getLocation(getWorld());
+	}
+
+	/**
+	 * @return the keys of the chunks containing the nodes visited so far (see BlockSnapshot.getChunkKey(..)), empty if
+	 * the search doesn't keep track of them or hasn't visited a node yet
+	 */
+	@API public Set<Long> getSearchChunks()
+	{
+		return Collections.unmodifiableSet(this.searchChunks);
+	}
+
 	@API public String getDiagnose()
 	{
 		String diagnose = "";
 
 		diagnose += "found="+pathFound()+", ";
+		if(this.pathPartial)
+			diagnose += "partial=true, ";
 		/*if(pathFound())
 			diagnose += "length="+getPath().getLength()+", ";*/
 
-		diagnose += "visitedNodes="+this.visitedNodes.size()+", ";
-		diagnose += "unvisitedNodes="+this.unvisitedNodes.getSize()+", ";
+		diagnose += "visitedNodes="+getVisitedNodeCount()+", ";
+		diagnose += "unvisitedNodes="+getUnvisitedNodeCount()+", ";
 		diagnose += "durationMs="+getMsDuration()+", ";
 
 		return diagnose;
@@ -108,6 +259,11 @@ public class BlockAStar
 		this.heuristicImportance = heuristicImportance;
 	}
 
+	@API public void setMaxNodeVisits(int maxNodeVisits)
+	{
+		this.maxNodeVisits = maxNodeVisits;
+	}
+
 	@API public void setCanUseDiagonalMovement(boolean canUseDiagonalMovement)
 	{
 		this.canUseDiagonalMovement = canUseDiagonalMovement;
@@ -118,75 +274,276 @@ public class BlockAStar
 		this.canUseLadders = canUseLadders;
 	}
 
+	/**
+	 * Enables jump point search. On flat open ground only the jump points along the movement direction are added
+	 * instead of every neighbor, which removes most of the symmetric nodes on large plazas. Nodes next to stairs, jumps,
+	 * ladders or changing obstacles are expanded normally.
+	 * <p>
+	 * The scans read more blocks than the nodes they skip, the cells they read are kept for the whole search. On open
+	 * ground this is still a lot faster, between many small obstacles the regular expansion reads fewer blocks. The
+	 * JumpPointSearchBenchmark compares both on generated plazas.
+	 *
+	 * @param useJumpPointSearch whether jump point search should be used
+	 */
+	@API public void setUseJumpPointSearch(boolean useJumpPointSearch)
+	{
+		this.useJumpPointSearch = useJumpPointSearch;
+	}
+
+	/**
+	 * Makes the search return the path to the visited node closest to the end if the maximum number of node visits is
+	 * reached. The failure is still set, but the agent can already walk towards the end, and the next search starts a
+	 * lot closer to it.
+	 *
+	 * @param returnPartialPath whether the path to the closest node should be returned if the search gives up
+	 */
+	@API public void setReturnPartialPath(boolean returnPartialPath)
+	{
+		this.returnPartialPath = returnPartialPath;
+	}
+
+	/**
+	 * Sets where the blocks are read from. By default they are read from the world directly, which is only possible on
+	 * the main thread. A BlockSnapshot allows the search to run on other threads.
+	 *
+	 * @param blockAccess the source of the blocks
+	 */
+	@API public void setBlockAccess(BlockAccess blockAccess)
+	{
+		this.blockAccess = blockAccess;
+	}
+
+	@API public void setLandmarkRegion(BlockLandmarkRegion landmarkRegion)
+	{
+		this.landmarkRegion = landmarkRegion;
+	}
+
 
 	// PATHFINDING
 	@API public void findPath()
 	{
-		// don't set the start time if it already exists, this way duration of retries are counted together
-		if(this.pathfindingStartNano == 0)
-			this.pathfindingStartNano = System.nanoTime();
+		step(Integer.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Continues the search for at most the given number of node visits. The open and visited nodes are kept between the
+	 * calls, so a long search can be spread over multiple server ticks.
+	 *
+	 * @param maxNodeVisitsInStep the maximum number of nodes visited in this call
+	 * @return true if the search is finished (with or without a path), false if it has to be continued
+	 */
+	@API public boolean step(int maxNodeVisitsInStep)
+	{
+		return step(maxNodeVisitsInStep, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Continues the search until it is finished or the given time has passed. At least one node is visited per call.
+	 *
+	 * @param nanoBudget the time in nanoseconds this call may take
+	 * @return true if the search is finished (with or without a path), false if it has to be continued
+	 */
+	@API public boolean stepFor(long nanoBudget)
+	{
+		return step(Integer.MAX_VALUE, System.nanoTime()+nanoBudget);
+	}
+
+	private boolean step(int maxNodeVisitsInStep, long deadlineNano)
+	{
+		if(this.searchFinished)
+			return true;
+
+		long stepStartNano = System.nanoTime();
+		if(!this.searchStarted)
+		{
+			prepareSearch();
+			startSearch();
+			this.searchStarted = true;
+		}
+
+		this.searchFinished = continueSearch(maxNodeVisitsInStep, deadlineNano);
+		updateOpenSetPeak();
+
+		// pathfinding finalization
+		if(this.searchFinished)
+		{
+			BlockPathNode pathEndNode = getPathEndNode();
+			if(pathEndNode == null)
+				pathEndNode = getPartialPathEndNode();
+
+			if(pathEndNode != null)
+				this.path = new BlockPath(pathEndNode);
+		}
+
+		this.pathfindingNanos += System.nanoTime()-stepStartNano;
+		return this.searchFinished;
+	}
 
+	private void prepareSearch()
+	{
 		// validation
 		if(this.startLocation.getWorld() != this.endLocation.getWorld())
 			throw new IllegalArgumentException("The start and the end location are not in the same world!");
 
 		// preparation
-		BlockPathNode startNode = new BlockPathNode(this.startLocation.getBlockX(),
-				this.startLocation.getBlockY(), this.startLocation.getBlockZ());
+		this.startNode = new BlockPathNode(this.startLocation.getBlockX(), this.startLocation.getBlockY(),
+				this.startLocation.getBlockZ());
 		// this is needed in case the start and end nodes are the same, so the transition type is set
-		startNode.setParent(null, TransitionType.WALK, 0);
+		this.startNode.setParent(null, TransitionType.WALK, 0);
 
 		this.endNode = new BlockPathNode(this.endLocation.getBlockX(), this.endLocation.getBlockY(),
 				this.endLocation.getBlockZ());
+	}
 
-		this.unvisitedNodes.addSorted(startNode);
-
-		// pathfinding
-		visitNodes();
-
-
-		// pathfinding finalization
-		// if the end node has a parent, a pathfinding has been found
-		if(this.endNode.getParent() != null || startNode.equals(this.endNode))
-			this.path = new BlockPath(this.endNode);
-		else
-			// this looks through the provided options and checks if an ability of the pathfinder is deactivated,
-			// if so it activates it and reruns the pathfinding. if there are no other options available, it returns
-			retry();
-
-		this.pathfindingEndNano = System.nanoTime();
+	protected void startSearch()
+	{
+		this.unvisitedNodes.addSorted(this.startNode);
 	}
 
-	protected void visitNodes()
+	/**
+	 * Visits nodes until the search is finished, the number of nodes for this step is reached or the deadline has passed.
+	 *
+	 * @param maxNodeVisitsInStep the maximum number of nodes to visit
+	 * @param deadlineNano        the System.nanoTime() after which no further node should be visited
+	 * @return true if the search is finished, false if it has to be continued
+	 */
+	protected boolean continueSearch(int maxNodeVisitsInStep, long deadlineNano)
 	{
-		while(true)
+		for(int i = 0; i < maxNodeVisitsInStep; i++)
 		{
+			if(i > 0 && isDeadlineReached(deadlineNano))
+				return false;
+
 			if(this.unvisitedNodes.getSize() == 0)
 			{
 				// no unvisited nodes left, nowhere else to go ...
 				this.failure = "No unvisted nodes left";
-				break;
+				return true;
 			}
 
 			if(this.visitedNodes.size() >= this.maxNodeVisits)
 			{
 				// reached limit of nodes to search
 				this.failure = "Number of nodes visited exceeds maximum";
-				break;
+				this.nodeVisitLimitReached = true;
+				return true;
 			}
 
 			BlockPathNode nodeToVisit = this.unvisitedNodes.getAndRemoveFirst();
 			this.visitedNodes.add(nodeToVisit);
+			updateClosestNode(nodeToVisit);
 
 			// pathing reached end node
 			if(isTargetReached(nodeToVisit))
 			{
 				this.endNode = nodeToVisit;
-				break;
+				return true;
 			}
 
 			visitNode(nodeToVisit);
+			updateOpenSetPeak();
+			expandSearchBounds(nodeToVisit);
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the last node of the found path, linked to the start node through its parents, or null if no path was found
+	 */
+	protected BlockPathNode getPathEndNode()
+	{
+		// if the end node has a parent, a path has been found
+		if(this.endNode.getParent() != null || this.startNode.equals(this.endNode))
+			return this.endNode;
+
+		return null;
+	}
+
+	private BlockPathNode getPartialPathEndNode()
+	{
+		if(!this.returnPartialPath || !this.nodeVisitLimitReached)
+			return null;
+
+		// a path without any movement doesn't help
+		if(this.closestNode == null || this.closestNode.equals(this.startNode))
+			return null;
+
+		this.pathPartial = true;
+		return this.closestNode;
+	}
+
+	/**
+	 * Makes a finished search continuable again, for subclasses that can update their search state after the search was
+	 * finished (e.g. because blocks changed).
+	 */
+	protected void resumeSearch()
+	{
+		this.searchFinished = false;
+		this.path = null;
+		this.pathPartial = false;
+		this.failure = null;
+	}
+
+	/**
+	 * Remembers the node if it is closer to the end than the visited nodes before. Searches which don't visit their nodes
+	 * through this class call this for the nodes they reach from the start.
+	 *
+	 * @param node the node reached from the start
+	 */
+	protected void updateClosestNode(BlockPathNode node)
+	{
+		double distance = getDistanceEstimate(node, this.endNode);
+		if(distance >= this.closestNodeDistance)
+			return;
+
+		this.closestNode = node;
+		this.closestNodeDistance = distance;
+	}
+
+	/**
+	 * Remembers the size of the open set if it is the largest so far. The searches call this after visiting a node, it
+	 * is also called after every step.
+	 */
+	protected void updateOpenSetPeak()
+	{
+		this.openSetPeak = Math.max(this.openSetPeak, getUnvisitedNodeCount());
+	}
+
+	/**
+	 * Expands the box around the visited nodes to contain the given node and remembers its chunk. The searches call
+	 * this from the thread running them for every node they visit.
+	 *
+	 * @param node the visited node
+	 */
+	protected void expandSearchBounds(BlockPathNode node)
+	{
+		long chunkKey = BlockSnapshot.getChunkKey(node.x>>4, node.z>>4);
+		if(this.searchChunks.isEmpty() || chunkKey != this.lastSearchChunk)
+		{
+			this.searchChunks.add(chunkKey);
+			this.lastSearchChunk = chunkKey;
 		}
+
+		if(this.searchMin == null)
+		{
+			this.searchMin = node;
+			this.searchMax = node;
+			return;
+		}
+
+		if(node.x < this.searchMin.x || node.y < this.searchMin.y || node.z < this.searchMin.z)
+			this.searchMin = new BlockPathNode(Math.min(node.x, this.searchMin.x), Math.min(node.y, this.searchMin.y),
+					Math.min(node.z, this.searchMin.z));
+
+		if(node.x > this.searchMax.x || node.y > this.searchMax.y || node.z > this.searchMax.z)
+			this.searchMax = new BlockPathNode(Math.max(node.x, this.searchMax.x), Math.max(node.y, this.searchMax.y),
+					Math.max(node.z, this.searchMax.z));
+	}
+
+	protected static boolean isDeadlineReached(long deadlineNano)
+	{
+		return deadlineNano != Long.MAX_VALUE && System.nanoTime() >= deadlineNano;
 	}
 
 	protected boolean isTargetReached(BlockPathNode nodeToVisit)
@@ -197,9 +554,12 @@ public class BlockAStar
 
 	protected void visitNode(BlockPathNode node)
 	{
-		lookForWalkableNodes(node);
+		if(this.useJumpPointSearch)
+			lookForJumpPointNodes(node);
+		else
+			lookForWalkableNodes(node);
 
-		if(this.useLadders)
+		if(this.canUseLadders)
 			lookForLadderNodes(node);
 	}
 
@@ -213,56 +573,106 @@ public class BlockAStar
 
 	protected void validateNodeOffset(BlockPathNode node, int dX, int dY, int dZ)
 	{
-		// prevent movement to the same position
-		if(dX == 0 && dY == 0 && dZ == 0)
+		if(!isOffsetAllowed(dX, dY, dZ))
 			return;
 
-		// prevent diagonal movement if specified
-		if(!this.moveDiagonally && dX*dZ != 0)
+		BlockPathNode newNode = new BlockPathNode(node.x+dX, node.y+dY, node.z+dZ);
+
+		if(doesNodeAlreadyExist(newNode))
 			return;
 
-		// prevent diagonal movement at the same time as moving up and down
-		if(dX*dZ != 0 && dY != 0)
+		int transitionType = getTransitionType(node, newNode);
+		if(transitionType == NO_TRANSITION)
 			return;
 
+		// actually add the node to the pool
+		newNode.setParent(node, transitionType, getTransitionWeight(node, newNode, transitionType));
+		addNode(newNode);
+	}
 
-		BlockPathNode newNode = new BlockPathNode(node.x+dX, node.y+dY, node.z+dZ);
+	protected void lookForLadderNodes(BlockPathNode node)
+	{
+		Location feetLocation = node.getLocation(this.startLocation.getWorld());
 
-		if(doesNodeAlreadyExist(newNode))
-			return;
+		for(int dY = -1; dY <= 1; dY++)
+		{
+			Location location = feetLocation.clone().add(0, dY, 0);
+			if(!isLadder(location))
+				continue;
+
+			BlockPathNode newNode = new BlockPathNode(node.x, node.y+dY, node.z);
+			newNode.setParent(node, TransitionType.CLIMB, getClimbWeight(node, newNode, node));
+
+			if(doesNodeAlreadyExist(newNode))
+				continue;
+
+			addNode(newNode);
+		}
+	}
+
+
+	// TRANSITION
+	protected boolean isOffsetAllowed(int dX, int dY, int dZ)
+	{
+		// prevent movement to the same position
+		if(dX == 0 && dY == 0 && dZ == 0)
+			return false;
+
+		// prevent diagonal movement if specified
+		if(!this.canUseDiagonalMovement && dX*dZ != 0)
+			return false;
+
+		// prevent diagonal movement at the same time as moving up and down
+		return dX*dZ == 0 || dY == 0;
+	}
+
+	/**
+	 * Determines how the movement from one node to a neighboring node is done. The movement is not symmetric, jumping up
+	 * onto a block needs headroom above the lower node, walking down needs headroom above the node below.
+	 *
+	 * @param from the node the movement starts at
+	 * @param to   the neighboring node the movement ends at
+	 * @return the TransitionType of the movement or NO_TRANSITION if the movement is not possible
+	 */
+	protected int getTransitionType(BlockPathNode from, BlockPathNode to)
+	{
+		int dX = to.x-from.x;
+		int dY = to.y-from.y;
+		int dZ = to.z-from.z;
 
 		// check if player can stand at new node
-		if(!isValid(newNode))
-			return;
+		if(!isValid(to))
+			return NO_TRANSITION;
 
 		// check if the diagonal movement is not prevented by blocks to the side
-		if(dX*dZ != 0 && !isDiagonalMovementPossible(node, dX, dZ))
-			return;
+		if(dX*dZ != 0 && !isDiagonalMovementPossible(from, dX, dZ))
+			return NO_TRANSITION;
 
 		// check if the player hits his head when going up/down
-		if(dY == 1 && !isBlockUnobstructed(node.getLocation(this.startLocation.getWorld()).add(0, 2, 0)))
-			return;
+		if(dY == 1 && !isBlockUnobstructed(from.getLocation(this.startLocation.getWorld()).add(0, 2, 0)))
+			return NO_TRANSITION;
 
-		if(dY == -1 && !isBlockUnobstructed(newNode.getLocation(this.startLocation.getWorld()).add(0, 2, 0)))
-			return;
+		if(dY == -1 && !isBlockUnobstructed(to.getLocation(this.startLocation.getWorld()).add(0, 2, 0)))
+			return NO_TRANSITION;
 
 
 		// get transition type (walk up stairs, jump up blocks)
-		int transitionType = TransitionType.WALK;
-		if(dY == 1)
-		{
-			boolean isStair = StairEvaluator.isStair(node, newNode, this.startLocation.getWorld());
-			if(!isStair)
-				transitionType = TransitionType.JUMP;
-		}
+		if(dY == 1 && !isStair(from, to))
+			return TransitionType.JUMP;
+
+		return TransitionType.WALK;
+	}
 
+	protected double getTransitionWeight(BlockPathNode from, BlockPathNode to, int transitionType)
+	{
+		if(transitionType == TransitionType.CLIMB)
+			return CLIMBING_EXPENSE;
 
-		// calculate weight
 		// TODO punish 90° turns
-		int sumAbs = Math.abs(dX)+Math.abs(dY)+Math.abs(dZ);
+		int sumAbs = Math.abs(to.x-from.x)+Math.abs(to.y-from.y)+Math.abs(to.z-from.z);
 		double weight = 1;
 		if(sumAbs == 2)
-			weight = 1.41;
+			weight = DIAGONAL_EXPENSE;
 		else if(sumAbs == 3)
 			weight = 1.73;
 
@@ -270,30 +680,206 @@ public class BlockAStar
 		if(transitionType == TransitionType.JUMP)
 			weight += 0.5;
 
+		return weight;
+	}
 
-		// actually add the node to the pool
-		newNode.setParent(node, transitionType, weight);
-		addNode(newNode);
+	/**
+	 * Returns the weight of climbing from one node to the other. The abilities are part of the search from the start
+	 * instead of retrying the whole search with them enabled, so the avoidance expense makes sure ladders are only used
+	 * where they are really needed. It is charged once for getting onto the ladder, not for every block climbed on it.
+	 *
+	 * @param from         the node the climbing starts at
+	 * @param to           the node the climbing ends at
+	 * @param expandedNode the one of the two nodes that is being expanded, the searches running backwards expand the
+	 *                     node climbed to
+	 * @return the weight of the climbing transition
+	 */
+	protected double getClimbWeight(BlockPathNode from, BlockPathNode to, BlockPathNode expandedNode)
+	{
+		double weight = getTransitionWeight(from, to, TransitionType.CLIMB);
+
+		// forwards the expanded node was climbed to from its parent, backwards it is climbed from towards its parent,
+		// either way the agent is on the ladder already
+		if(expandedNode.getTransitionType() != TransitionType.CLIMB)
+			weight += LADDER_AVOIDANCE_EXPENSE;
+
+		return weight;
 	}
 
-	protected void lookForLadderNodes(BlockPathNode node)
+
+	// JUMP POINT SEARCH
+	protected void lookForJumpPointNodes(BlockPathNode node)
 	{
-		Location feetLocation = node.getLocation(this.startLocation.getWorld());
+		BlockPathNode parent = node.getParent();
 
-		for(int dY = -1; dY <= 1; dY++)
+		// pruning needs a flat movement direction into the node, nodes that could have forced neighbors are expanded fully
+		if(parent == null || parent.y != node.y || isJumpPoint(parent, node))
 		{
-			Location location = feetLocation.clone().add(0, dY, 0);
-			if(location.getBlock().getType() != Material.LADDER)
-				continue;
+			lookForWalkableNodes(node);
+			return;
+		}
 
-			BlockPathNode newNode = new BlockPathNode(node.x, node.y+dY, node.z);
-			newNode.setParent(node, TransitionType.CLIMB, CLIMBING_EXPENSE);
+		int dX = Integer.signum(node.x-parent.x);
+		int dZ = Integer.signum(node.z-parent.z);
 
-			if(doesNodeAlreadyExist(newNode))
-				continue;
+		// natural neighbors: straight on, for diagonal movement also the two straight components
+		addJumpPoint(jump(node, dX, dZ));
+		if(dX*dZ != 0)
+		{
+			addJumpPoint(jump(node, dX, 0));
+			addJumpPoint(jump(node, 0, dZ));
+		}
+	}
 
-			addNode(newNode);
+	protected BlockPathNode jump(BlockPathNode from, int dX, int dZ)
+	{
+		return jump(from, dX, dZ, true);
+	}
+
+	/**
+	 * @param stopAtMaxDistance whether the node at the end of the capped scan is returned as a jump point, the
+	 *                          straight scans of a diagonal scan only look for real jump points
+	 */
+	private BlockPathNode jump(BlockPathNode from, int dX, int dZ, boolean stopAtMaxDistance)
+	{
+		boolean diagonal = dX*dZ != 0;
+		if(diagonal && !this.canUseDiagonalMovement)
+			return null;
+
+		BlockPathNode current = from;
+		for(int i = 0; i < MAX_JUMP_DISTANCE; i++)
+		{
+			BlockPathNode next = new BlockPathNode(current.x+dX, current.y, current.z+dZ);
+			if(!hasCellFlag(next.x, next.y, next.z, CELL_STANDABLE))
+				return null;
+
+			if(diagonal && !isDiagonalCellMovePossible(current, dX, dZ))
+				return null;
+
+			// the skipped nodes stay in the parent chain so the resulting BlockPath has no gaps
+			next.setParent(current, TransitionType.WALK, diagonal ? DIAGONAL_EXPENSE : 1);
+			if(isJumpPoint(current, next))
+				return next;
+
+			// diagonal movement stops where one of the straight components reaches a jump point
+			if(diagonal && (jump(next, dX, 0, false) != null || jump(next, 0, dZ, false) != null))
+				return next;
+
+			current = next;
+		}
+
+		// the scan distance is capped to keep the block lookups per expansion bounded
+		return stopAtMaxDistance ? current : null;
+	}
+
+	private boolean isDiagonalCellMovePossible(BlockPathNode node, int dX, int dZ)
+	{
+		// the same corner rule as isDiagonalMovementPossible(..), on the cached cells
+		if(!hasCellFlag(node.x+dX, node.y, node.z, CELL_UNOBSTRUCTED))
+			return false;
+
+		return hasCellFlag(node.x, node.y, node.z+dZ, CELL_UNOBSTRUCTED);
+	}
+
+	private void addJumpPoint(BlockPathNode jumpPoint)
+	{
+		if(jumpPoint == null)
+			return;
+
+		if(doesNodeAlreadyExist(jumpPoint))
+			return;
+
+		addNode(jumpPoint);
+	}
+
+
+	protected boolean isJumpPoint(BlockPathNode from, BlockPathNode to)
+	{
+		if(isTargetReached(to))
+			return true;
+
+		if(!hasCellFlag(to.x, to.y, to.z, CELL_FLAT))
+			return true;
+
+		int dX = to.x-from.x;
+		int dZ = to.z-from.z;
+
+		// the scans are capped, so they have to turn towards the end where they cross its row or column
+		if((dX != 0 && to.x == this.endNode.x) || (dZ != 0 && to.z == this.endNode.z))
+			return true;
+
+		if(dX*dZ != 0)
+		{
+			// the straight neighbors behind the diagonal step have to be walkable, otherwise nodes next to them are forced
+			if(!hasCellFlag(to.x-dX, to.y, to.z, CELL_STANDABLE))
+				return true;
+
+			return !hasCellFlag(to.x, to.y, to.z-dZ, CELL_STANDABLE);
+		}
+
+		// moving straight, the sides have to look the same as the sides of the previous node
+		int sideX = dZ;
+		int sideZ = dX;
+		if(getFlatSignature(to.x+sideX, to.y, to.z+sideZ) != getFlatSignature(from.x+sideX, from.y, from.z+sideZ))
+			return true;
+
+		return getFlatSignature(to.x-sideX, to.y, to.z-sideZ) != getFlatSignature(from.x-sideX, from.y, from.z-sideZ);
+	}
+
+	protected boolean isOnFlatGround(BlockPathNode node)
+	{
+		World world = this.startLocation.getWorld();
+
+		if(this.canUseLadders)
+			for(int dY = -1; dY <= 1; dY++)
+				if(isLadder(node.getLocation(world).add(0, dY, 0)))
+					return false;
+
+		// moving up or down is only possible in the four straight directions
+		for(int[] direction : new int[][] {{1, 0}, {-1, 0}, {0, 1}, {0, -1}})
+		{
+			Location neighbor = node.getLocation(world).add(direction[0], 0, direction[1]);
+			if(canStandAt(neighbor.clone().add(0, 1, 0)) || canStandAt(neighbor.clone().add(0, -1, 0)))
+				return false;
 		}
+
+		return true;
+	}
+
+	private int getFlatSignature(int x, int y, int z)
+	{
+		return getCellFlags(x, y, z, false)&(CELL_UNOBSTRUCTED|CELL_STANDABLE);
+	}
+
+	private boolean hasCellFlag(int x, int y, int z, int flag)
+	{
+		return (getCellFlags(x, y, z, flag == CELL_FLAT)&flag) != 0;
+	}
+
+	private int getCellFlags(int x, int y, int z, boolean flatnessNeeded)
+	{
+		BlockPathNode cell = new BlockPathNode(x, y, z);
+		Integer knownFlags = this.jumpCells.get(cell);
+
+		int flags;
+		if(knownFlags != null)
+			flags = knownFlags;
+		else
+		{
+			Location location = new Location(this.startLocation.getWorld(), x, y, z);
+			flags = isUnobstructed(location) ? CELL_UNOBSTRUCTED : 0;
+			if(flags != 0 && canStandAt(location))
+				flags |= CELL_STANDABLE;
+		}
+
+		// the flatness needs the most blocks, so it is only read for the cells the scans move through
+		if(flatnessNeeded && (flags&CELL_FLATNESS_KNOWN) == 0)
+			flags |= CELL_FLATNESS_KNOWN|(isOnFlatGround(cell) ? CELL_FLAT : 0);
+
+		if(knownFlags == null || knownFlags != flags)
+			this.jumpCells.put(cell, flags);
+
+		return flags;
 	}
 
 
@@ -313,6 +899,133 @@ public class BlockAStar
 	}
 
 
+	// NEIGHBORS
+	/**
+	 * Looks for the nodes which can be reached from the given node, for the searches that don't keep their nodes in the
+	 * unvisited and visited nodes of this class. The parent of a returned node is the given node.
+	 *
+	 * @param node the node to look for successors of
+	 * @return the successors of the node
+	 */
+	protected List<BlockPathNode> getSuccessorNodes(BlockPathNode node)
+	{
+		List<BlockPathNode> successors = new ArrayList<>();
+		for(int dX = -1; dX <= 1; dX++)
+			for(int dZ = -1; dZ <= 1; dZ++)
+				for(int dY = -1; dY <= 1; dY++)
+				{
+					if(!isOffsetAllowed(dX, dY, dZ))
+						continue;
+
+					BlockPathNode newNode = new BlockPathNode(node.x+dX, node.y+dY, node.z+dZ);
+					int transitionType = getTransitionType(node, newNode);
+					if(transitionType == NO_TRANSITION)
+						continue;
+
+					newNode.setParent(node, transitionType, getTransitionWeight(node, newNode, transitionType));
+					successors.add(newNode);
+				}
+
+		if(!this.canUseLadders)
+			return successors;
+
+		for(int dY = -1; dY <= 1; dY += 2)
+		{
+			if(!isLadder(node.getLocation(getWorld()).add(0, dY, 0)))
+				continue;
+
+			BlockPathNode newNode = new BlockPathNode(node.x, node.y+dY, node.z);
+			newNode.setParent(node, TransitionType.CLIMB, getClimbWeight(node, newNode, node));
+			successors.add(newNode);
+		}
+
+		return successors;
+	}
+
+	/**
+	 * Looks for the nodes from which the given node can be reached, for the searches running backwards from the target.
+	 * The parent of a returned node is the given node, its transition type and weight describe the movement towards that
+	 * parent.
+	 *
+	 * @param node the node to look for predecessors of
+	 * @return the predecessors of the node
+	 */
+	protected List<BlockPathNode> getPredecessorNodes(BlockPathNode node)
+	{
+		List<BlockPathNode> predecessors = new ArrayList<>();
+		for(int dX = -1; dX <= 1; dX++)
+			for(int dZ = -1; dZ <= 1; dZ++)
+				for(int dY = -1; dY <= 1; dY++)
+				{
+					if(!isOffsetAllowed(dX, dY, dZ))
+						continue;
+
+					BlockPathNode newNode = new BlockPathNode(node.x-dX, node.y-dY, node.z-dZ);
+					if(!canBeReachedForward(newNode))
+						continue;
+
+					int transitionType = getTransitionType(newNode, node);
+					if(transitionType == NO_TRANSITION)
+						continue;
+
+					newNode.setParent(node, transitionType, getTransitionWeight(newNode, node, transitionType));
+					predecessors.add(newNode);
+				}
+
+		// climbing onto this node is only possible if it is in a ladder block
+		if(!this.canUseLadders || !isLadder(node.getLocation(getWorld())))
+			return predecessors;
+
+		for(int dY = -1; dY <= 1; dY += 2)
+		{
+			BlockPathNode newNode = new BlockPathNode(node.x, node.y-dY, node.z);
+			if(!canBeReachedForward(newNode))
+				continue;
+
+			newNode.setParent(node, TransitionType.CLIMB, getClimbWeight(newNode, node, node));
+			predecessors.add(newNode);
+		}
+
+		return predecessors;
+	}
+
+	protected boolean canBeReachedForward(BlockPathNode node)
+	{
+		if(node.equals(this.startNode))
+			return true;
+
+		if(isValid(node))
+			return true;
+
+		// the forward search can hang on a ladder without standing on anything
+		return this.canUseLadders && isLadder(node.getLocation(getWorld()));
+	}
+
+	/**
+	 * Continues a forward parent chain with the nodes of a backward parent chain, whose parents lead to the target.
+	 *
+	 * @param forwardNode  the last node of the forward chain
+	 * @param backwardNode the node of the backward chain at the same position as the forward node
+	 * @return the end node of the joined chain, at the position of the target
+	 */
+	protected static BlockPathNode joinBackwardChain(BlockPathNode forwardNode, BlockPathNode backwardNode)
+	{
+		BlockPathNode current = forwardNode;
+		while(backwardNode.getParent() != null)
+		{
+			BlockPathNode next = backwardNode.getParent();
+
+			BlockPathNode joinedNode = new BlockPathNode(next.x, next.y, next.z);
+			joinedNode.setParent(current, backwardNode.getTransitionType(), backwardNode.getWeightFromParent());
+
+			current = joinedNode;
+			backwardNode = next;
+		}
+
+		return current;
+	}
+
+
 	// NODE VALIDATION
 	protected boolean isValid(BlockPathNode node)
 	{
@@ -328,13 +1041,9 @@ public class BlockAStar
 
 	}
 
-	@SuppressWarnings("deprecation") protected boolean canStandAt(Location feetLocation)
+	protected boolean canStandAt(Location feetLocation)
 	{
-		if(!isUnobstructed(feetLocation))
-			return false;
-
-		return MaterialEvaluator.canStandOn(feetLocation.clone().add(0, -1, 0).getBlock().getTypeId());
-
+		return readBlocks().canStandAt(feetLocation.getBlockX(), feetLocation.getBlockY(), feetLocation.getBlockZ());
 	}
 
 	protected boolean isUnobstructed(Location feetLocation)
@@ -348,68 +1057,67 @@ public class BlockAStar
 
 
 	// LOCATION VALIDATION
-	@SuppressWarnings("deprecation") protected boolean isBlockUnobstructed(Location location)
+	protected boolean isBlockUnobstructed(Location location)
 	{
-		return MaterialEvaluator.canStandIn(location.getBlock().getTypeId());
+		return readBlocks().canStandIn(location.getBlockX(), location.getBlockY(), location.getBlockZ());
 	}
 
-
-	// HEURISTIC
-	protected double getHeuristicWeight(BlockPathNode node)
+	protected boolean isLadder(Location location)
 	{
-		return getEuclideanDistance(node);
+		return readBlocks().isLadder(location.getBlockX(), location.getBlockY(), location.getBlockZ());
 	}
 
-	@SuppressWarnings("unused") protected double getManhattanDistance(BlockPathNode node)
+	protected boolean isStair(BlockPathNode from, BlockPathNode to)
 	{
-		return Math.abs(node.x-this.endNode.x)+Math.abs(node.y-this.endNode.y)+Math.abs(node.z-this.endNode.z);
+		return readBlocks().isStair(from, to);
 	}
 
-	protected double getEuclideanDistance(BlockPathNode node)
+	private BlockAccess readBlocks()
 	{
-		int dX = this.endNode.x-node.x;
-		int dY = this.endNode.y-node.y;
-		int dZ = this.endNode.z-node.z;
-
-		return Math.sqrt(dX*dX+dY*dY+dZ*dZ);
+		this.blockLookups.increment();
+		return getBlockAccess();
 	}
 
-
-	// RETRY
-	protected void retry()
+	protected boolean hasBlockAccess()
 	{
-		lookForReason:
-		{
-			// the special abilities are sorted by likelyhood of appearance to further speed up the pathfinding
+		return this.blockAccess != null;
+	}
 
-			if(this.canUseDiagonalMovement && !this.moveDiagonally)
-			{
-				this.moveDiagonally = true;
-				break lookForReason;
-			}
+	/**
+	 * @return the source of the blocks read by the search, the world if none was set
+	 */
+	@API public BlockAccess getBlockAccess()
+	{
+		if(this.blockAccess == null)
+			this.blockAccess = new WorldBlockAccess(getWorld());
 
-			if(this.canUseLadders && !this.useLadders)
-			{
-				this.useLadders = true;
-				break lookForReason;
-			}
+		return this.blockAccess;
+	}
 
-			return;
-		}
 
-		reset();
-		findPath();
+	// HEURISTIC
+	protected double getHeuristicWeight(BlockPathNode node)
+	{
+		return getDistanceEstimate(node, this.endNode);
 	}
 
-	protected void reset()
+	protected double getDistanceEstimate(BlockPathNode from, BlockPathNode to)
 	{
-		this.endNode = null;
+		int dX = to.x-from.x;
+		int dY = to.y-from.y;
+		int dZ = to.z-from.z;
+		double euclideanDistance = Math.sqrt(dX*dX+dY*dY+dZ*dZ);
 
-		this.unvisitedNodes.clear();
-		this.visitedNodes.clear();
+		// the landmarks know about walls and levels the straight line goes through
+		if(this.landmarkRegion == null)
+			return euclideanDistance;
 
-		this.path = null;
-		this.failure = null;
+		return Math.max(euclideanDistance, this.landmarkRegion.getLowerBound(from, to));
+	}
+
+	@SuppressWarnings("unused") protected double getManhattanDistance(BlockPathNode node)
+	{
+		return Math.abs(node.x-this.endNode.x)+Math.abs(node.y-this.endNode.y)+Math.abs(node.z-this.endNode.z);
 	}
 
 }
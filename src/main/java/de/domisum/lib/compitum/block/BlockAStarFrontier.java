@@ -0,0 +1,58 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import de.domisum.lib.compitum.path.node.weighted.SortedWeightedNodeList;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The visited and unvisited nodes of one search direction, for the searches that don't run from the start to the target.
+ */
+class BlockAStarFrontier
+{
+
+	final SortedWeightedNodeList<BlockPathNode> unvisitedNodes;
+	final Set<BlockPathNode> visitedNodes;
+	private final Map<BlockPathNode, BlockPathNode> nodes; // <node, node>, visited and unvisited
+
+
+	// INIT
+	BlockAStarFrontier(int maxNodeVisits)
+	{
+		this.unvisitedNodes = new SortedWeightedNodeList<>(maxNodeVisits*3);
+		this.visitedNodes = new HashSet<>(maxNodeVisits);
+		this.nodes = new HashMap<>(maxNodeVisits*3);
+	}
+
+
+	// GETTERS
+	boolean contains(BlockPathNode node)
+	{
+		return this.nodes.containsKey(node);
+	}
+
+	BlockPathNode get(BlockPathNode node)
+	{
+		return this.nodes.get(node);
+	}
+
+
+	// CHANGERS
+	void add(BlockPathNode node)
+	{
+		this.nodes.put(node, node);
+		this.unvisitedNodes.addSorted(node);
+	}
+
+	BlockPathNode visitNextNode()
+	{
+		BlockPathNode node = this.unvisitedNodes.getAndRemoveFirst();
+		this.visitedNodes.add(node);
+
+		return node;
+	}
+
+}
@@ -0,0 +1,55 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.compitum.block.evaluator.MaterialEvaluator;
+import de.domisum.lib.compitum.block.evaluator.StairEvaluator;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import org.bukkit.Material;
+
+/**
+ * Provides the blocks the block pathfinding reads. Implementations that don't read the world directly (e.g. snapshots)
+ * allow the pathfinding to run off the main thread.
+ * <p>
+ * The pathfinding only asks for the walkability of the blocks, which is evaluated from the type and data of the blocks
+ * by default. Implementations which know the walkability already (e.g. a BakedWalkabilityMap) can answer directly.
+ */
+public interface BlockAccess
+{
+
+	int getTypeId(int x, int y, int z);
+
+	int getData(int x, int y, int z);
+
+
+	// WALKABILITY
+	default boolean canStandIn(int x, int y, int z)
+	{
+		return MaterialEvaluator.canStandIn(getTypeId(x, y, z));
+	}
+
+	default boolean canStandOn(int x, int y, int z)
+	{
+		return MaterialEvaluator.canStandOn(getTypeId(x, y, z));
+	}
+
+	/**
+	 * @return true if the feet and the head fit into the block and the one above it, and the block below can be stood on
+	 */
+	default boolean canStandAt(int x, int y, int z)
+	{
+		return canStandIn(x, y, z) && canStandIn(x, y+1, z) && canStandOn(x, y-1, z);
+	}
+
+	@SuppressWarnings("deprecation") default boolean isLadder(int x, int y, int z)
+	{
+		return getTypeId(x, y, z) == Material.LADDER.getId();
+	}
+
+	/**
+	 * @return true if the movement from one node to the other walks up the stair or slab below the second node
+	 */
+	default boolean isStair(BlockPathNode from, BlockPathNode to)
+	{
+		return StairEvaluator.isStair(from, to, getTypeId(to.x, to.y-1, to.z), getData(to.x, to.y-1, to.z));
+	}
+
+}
@@ -0,0 +1,277 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A copy of the blocks of the chunk sections read by the pathfinding, shared by all searches. Sections are read from
+ * the world on the main thread the first time a search needs them and can then be read from any thread without
+ * locking, through a CachedBlockAccess.
+ * <p>
+ * Sections are removed when one of their blocks changes, when their chunk or world is unloaded, and when the cache
+ * exceeds its memory budget, in which case the sections which weren't read for the longest time are removed. Block
+ * changes are seen through the events of the BlockChangeListener, blocks set by plugins without an event are only seen
+ * if the plugin reports them through CompitumLib.notifyBlockChange(..).
+ * <p>
+ * The blocks of the sections can be kept off the heap in an OffHeapSectionStore. Sections which don't fit into the
+ * store are kept on the heap.
+ */
+@API
+public class BlockCache implements BlockChangeObserver, Listener
+{
+
+	// CONSTANTS
+	// eviction removes a few more sections than necessary, so it isn't done again for every loaded chunk
+	private static final double EVICTION_TARGET = 0.9;
+
+	// PROPERTIES
+	private final long maxBytes;
+	private final OffHeapSectionStore offHeapStore;
+
+	// STATUS
+	private final Map<UUID, Map<Long, BlockCacheSection>> worlds = new ConcurrentHashMap<>(); // <world, <key, section>>
+	private final AtomicLong usedBytes = new AtomicLong();
+	private volatile long accessTime = 0; // advanced every time a chunk is loaded, only used to order the sections
+
+	private final AtomicLong loadedChunkCount = new AtomicLong();
+	private final AtomicLong evictedSectionCount = new AtomicLong();
+	private final AtomicLong invalidatedSectionCount = new AtomicLong();
+	private final AtomicLong heapFallbackCount = new AtomicLong();
+
+
+	// INIT
+	/**
+	 * @param maxBytes the memory budget of the cache in bytes, a section with blocks other than air takes about 8 KB
+	 */
+	@API public BlockCache(long maxBytes)
+	{
+		this(maxBytes, null);
+	}
+
+	/**
+	 * Creates a cache which keeps the blocks of its sections in the given store. The memory budget should not be
+	 * larger than the capacity of the store, otherwise the sections exceeding it are kept on the heap.
+	 *
+	 * @param maxBytes     the memory budget of the cache in bytes
+	 * @param offHeapStore the store for the blocks of the sections
+	 */
+	@API public BlockCache(long maxBytes, OffHeapSectionStore offHeapStore)
+	{
+		this.maxBytes = maxBytes;
+		this.offHeapStore = offHeapStore;
+	}
+
+
+	// GETTERS
+	@API public long getMaxBytes()
+	{
+		return this.maxBytes;
+	}
+
+	@API public long getUsedBytes()
+	{
+		return this.usedBytes.get();
+	}
+
+	@API public int getSectionCount()
+	{
+		int count = 0;
+		for(Map<Long, BlockCacheSection> sections : this.worlds.values())
+			count += sections.size();
+
+		return count;
+	}
+
+	@API public long getLoadedChunkCount()
+	{
+		return this.loadedChunkCount.get();
+	}
+
+	@API public long getEvictedSectionCount()
+	{
+		return this.evictedSectionCount.get();
+	}
+
+	@API public long getInvalidatedSectionCount()
+	{
+		return this.invalidatedSectionCount.get();
+	}
+
+	@API public OffHeapSectionStore getOffHeapStore()
+	{
+		return this.offHeapStore;
+	}
+
+	/**
+	 * @return the number of sections which were kept on the heap because the off-heap store was full
+	 */
+	@API public long getHeapFallbackCount()
+	{
+		return this.heapFallbackCount.get();
+	}
+
+
+	/**
+	 * @return the cached section, or null if it isn't cached
+	 */
+	BlockCacheSection getSection(World world, long key)
+	{
+		// looked up every time, so accesses created before the world was unloaded don't keep its old sections
+		Map<Long, BlockCacheSection> sections = this.worlds.get(world.getUID());
+		return sections == null ? null : sections.get(key);
+	}
+
+	long getAccessTime()
+	{
+		return this.accessTime;
+	}
+
+	static long getSectionKey(int chunkX, int sectionY, int chunkZ)
+	{
+		return ((chunkX&0x3FFFFFFL)<<30)|((chunkZ&0x3FFFFFFL)<<4)|(sectionY&0xF);
+	}
+
+
+	// LOADING
+	/**
+	 * Reads all sections of the chunk column containing the section from the world and adds the ones which aren't
+	 * cached yet. This has to be done on the main thread, the chunk is loaded if it isn't loaded already.
+	 *
+	 * @return the requested section, or null if the world is unloaded
+	 */
+	BlockCacheSection loadSection(World world, int chunkX, int sectionY, int chunkZ)
+	{
+		// the sections of an unloaded world would never be removed again
+		if(Bukkit.getWorld(world.getUID()) != world)
+			return null;
+
+		Map<Long, BlockCacheSection> sections = this.worlds
+				.computeIfAbsent(world.getUID(), (uid)->new ConcurrentHashMap<>());
+
+		Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+		ChunkSnapshot chunkSnapshot = chunk.getChunkSnapshot();
+		long accessTime = ++this.accessTime; // only written on the main thread
+		this.loadedChunkCount.incrementAndGet();
+
+		BlockCacheSection requestedSection = null;
+		for(int sY = 0; sY < world.getMaxHeight()>>4; sY++)
+		{
+			long key = getSectionKey(chunkX, sY, chunkZ);
+			BlockCacheSection section = sections.get(key);
+			if(section == null)
+			{
+				section = new BlockCacheSection(key, chunkSnapshot, sY, accessTime, this.offHeapStore);
+				if(this.offHeapStore != null && !section.isOffHeap() && !chunkSnapshot.isSectionEmpty(sY))
+					this.heapFallbackCount.incrementAndGet();
+
+				sections.put(key, section);
+				this.usedBytes.addAndGet(section.getBytes());
+			}
+
+			if(sY == sectionY)
+				requestedSection = section;
+		}
+
+		if(this.usedBytes.get() > this.maxBytes)
+			evict();
+
+		return requestedSection;
+	}
+
+	private void evict()
+	{
+		List<Map.Entry<Map<Long, BlockCacheSection>, BlockCacheSection>> entries = new ArrayList<>();
+		for(Map<Long, BlockCacheSection> sections : this.worlds.values())
+			for(BlockCacheSection section : sections.values())
+				entries.add(new AbstractMap.SimpleEntry<>(sections, section));
+
+		entries.sort(Comparator.comparingLong((e)->e.getValue().getLastAccess()));
+
+		long targetBytes = (long) (this.maxBytes*EVICTION_TARGET);
+		for(Map.Entry<Map<Long, BlockCacheSection>, BlockCacheSection> entry : entries)
+		{
+			if(this.usedBytes.get() <= targetBytes)
+				break;
+
+			if(remove(entry.getKey(), entry.getValue()))
+				this.evictedSectionCount.incrementAndGet();
+		}
+	}
+
+
+	// INVALIDATION
+	@Override public void onBlockChange(World world, int x, int y, int z)
+	{
+		Map<Long, BlockCacheSection> sections = this.worlds.get(world.getUID());
+		if(sections == null)
+			return;
+
+		BlockCacheSection section = sections.get(getSectionKey(x>>4, y>>4, z>>4));
+		if(section != null && remove(sections, section))
+			this.invalidatedSectionCount.incrementAndGet();
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void chunkUnload(ChunkUnloadEvent event)
+	{
+		Map<Long, BlockCacheSection> sections = this.worlds.get(event.getWorld().getUID());
+		if(sections == null)
+			return;
+
+		Chunk chunk = event.getChunk();
+		for(int sY = 0; sY < event.getWorld().getMaxHeight()>>4; sY++)
+		{
+			BlockCacheSection section = sections.get(getSectionKey(chunk.getX(), sY, chunk.getZ()));
+			if(section != null)
+				remove(sections, section);
+		}
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void worldUnload(WorldUnloadEvent event)
+	{
+		Map<Long, BlockCacheSection> sections = this.worlds.remove(event.getWorld().getUID());
+		if(sections == null)
+			return;
+
+		for(BlockCacheSection section : sections.values())
+			remove(sections, section);
+	}
+
+	@API public void clear()
+	{
+		for(Map<Long, BlockCacheSection> sections : this.worlds.values())
+			for(BlockCacheSection section : sections.values())
+				remove(sections, section);
+	}
+
+	private boolean remove(Map<Long, BlockCacheSection> sections, BlockCacheSection section)
+	{
+		// readers which already hold the section notice that it is outdated through the flag
+		section.invalidate();
+		if(!sections.remove(section.key, section))
+			return false;
+
+		this.usedBytes.addAndGet(-section.getBytes());
+		section.release();
+		return true;
+	}
+
+}
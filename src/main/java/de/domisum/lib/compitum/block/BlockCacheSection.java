@@ -0,0 +1,156 @@
+package de.domisum.lib.compitum.block;
+
+import org.bukkit.ChunkSnapshot;
+
+/**
+ * The blocks of a 16x16x16 section of a chunk, packed as (typeId<<4)|data, either in an array on the heap or in a slot
+ * of an OffHeapSectionStore. The blocks are never changed after the section was created, a changed section is replaced
+ * by a new one, so it can be read from any thread without locking.
+ */
+class BlockCacheSection
+{
+
+	// CONSTANTS
+	static final int BLOCK_COUNT = 16*16*16;
+	static final int UNAVAILABLE = -1; // the slot of the section was released while it was read
+
+	// the map entry, the section object and the array header
+	private static final long OVERHEAD_BYTES = 96;
+
+	// PROPERTIES
+	final long key;
+	private final short[] blocks; // null if the section only contains air or is stored off the heap
+	private final OffHeapSectionStore store;
+	private final int slot; // -1 if the section isn't stored off the heap
+	private final long slotStamp;
+
+	// STATUS
+	private volatile long lastAccess;
+	private volatile boolean invalidated = false;
+
+
+	// INIT
+	/**
+	 * @param store the store to put the blocks in, if null or full the blocks are kept on the heap
+	 */
+	BlockCacheSection(long key, ChunkSnapshot chunk, int sectionY, long accessTime, OffHeapSectionStore store)
+	{
+		this.key = key;
+		this.lastAccess = accessTime;
+
+		boolean empty = chunk.isSectionEmpty(sectionY);
+		this.store = store;
+		this.slot = empty || store == null ? -1 : store.allocate();
+		// taken before the blocks are written, so a release of the slot at any point afterwards invalidates the reads
+		this.slotStamp = this.slot != -1 ? store.getStamp(this.slot) : 0;
+		this.blocks = empty || this.slot != -1 ? null : new short[BLOCK_COUNT];
+		if(empty)
+			return;
+
+		int minY = sectionY<<4;
+		for(int x = 0; x < 16; x++)
+			for(int y = 0; y < 16; y++)
+				for(int z = 0; z < 16; z++)
+				{
+					int typeId = chunk.getBlockTypeId(x, minY+y, z);
+					short block = (short) ((typeId<<4)|chunk.getBlockData(x, minY+y, z));
+					if(this.blocks != null)
+						this.blocks[getIndex(x, y, z)] = block;
+					else
+						this.store.put(this.slot, getIndex(x, y, z), block);
+				}
+	}
+
+
+	// GETTERS
+	long getBytes()
+	{
+		return isEmpty() ? OVERHEAD_BYTES : OVERHEAD_BYTES+BLOCK_COUNT*2;
+	}
+
+	boolean isOffHeap()
+	{
+		return this.slot != -1;
+	}
+
+	private boolean isEmpty()
+	{
+		return this.blocks == null && this.slot == -1;
+	}
+
+	long getLastAccess()
+	{
+		return this.lastAccess;
+	}
+
+	boolean isInvalidated()
+	{
+		return this.invalidated;
+	}
+
+	private static int getIndex(int x, int y, int z)
+	{
+		return ((y&15)<<8)|((z&15)<<4)|(x&15);
+	}
+
+
+	// SETTERS
+	void touch(long accessTime)
+	{
+		// only written when the time changed, so readers of hot sections don't write to the same memory all the time
+		if(this.lastAccess != accessTime)
+			this.lastAccess = accessTime;
+	}
+
+	void invalidate()
+	{
+		this.invalidated = true;
+	}
+
+	/**
+	 * Gives the slot of the section back to the store. This may only be called once, after the section was invalidated
+	 * and removed from the cache. Readers still holding the section get UNAVAILABLE from then on.
+	 */
+	void release()
+	{
+		if(this.slot != -1)
+			this.store.release(this.slot);
+	}
+
+
+	// ACCESS
+	/**
+	 * @return the type id of the block, or UNAVAILABLE if the section was removed from the cache while it was read
+	 */
+	int getTypeId(int x, int y, int z)
+	{
+		int block = getBlock(x, y, z);
+		return block == UNAVAILABLE ? UNAVAILABLE : block>>4;
+	}
+
+	/**
+	 * @return the data of the block, or UNAVAILABLE if the section was removed from the cache while it was read
+	 */
+	int getData(int x, int y, int z)
+	{
+		int block = getBlock(x, y, z);
+		return block == UNAVAILABLE ? UNAVAILABLE : block&0xF;
+	}
+
+	private int getBlock(int x, int y, int z)
+	{
+		if(this.blocks != null)
+			return this.blocks[getIndex(x, y, z)]&0xFFFF;
+
+		if(this.slot != -1)
+		{
+			// the slot can get the blocks of another section once it is released, so the value is only valid if that
+			// didn't happen before it was read
+			short block = this.store.get(this.slot, getIndex(x, y, z));
+			return this.store.validate(this.slot, this.slotStamp) ? block&0xFFFF : UNAVAILABLE;
+		}
+
+		return 0;
+	}
+
+}
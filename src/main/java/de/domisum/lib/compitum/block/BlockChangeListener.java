@@ -0,0 +1,192 @@
+package de.domisum.lib.compitum.block;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.BlockState;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockBurnEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFadeEvent;
+import org.bukkit.event.block.BlockFormEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.LeavesDecayEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forwards the block changes relevant for the walkability of blocks to the registered BlockChangeObservers.
+ * <p>
+ * Only changes which cause an event are seen. Blocks set by plugins, e.g. through Block.setType(..), don't cause one,
+ * so the plugins have to report them through CompitumLib.notifyBlockChange(..).
+ */
+public class BlockChangeListener implements Listener
+{
+
+	// CONSTANTS
+	// pistons move their blocks over two ticks, the blocks are in their new position after that
+	private static final long PISTON_MOVE_TICKS = 3;
+	// the exploded blocks are removed after the event
+	private static final long EXPLOSION_TICKS = 1;
+
+	// REFERENCES
+	private final Plugin plugin;
+	private final List<BlockChangeObserver> observers;
+
+
+	// INIT
+	public BlockChangeListener(Plugin plugin, List<BlockChangeObserver> observers)
+	{
+		this.plugin = plugin;
+		this.observers = observers;
+	}
+
+
+	// EVENTS
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockPlace(BlockPlaceEvent event)
+	{
+		notifyObservers(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockBreak(BlockBreakEvent event)
+	{
+		notifyObservers(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockBurn(BlockBurnEvent event)
+	{
+		notifyObservers(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockFade(BlockFadeEvent event)
+	{
+		notifyObservers(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockForm(BlockFormEvent event)
+	{
+		notifyObservers(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockFromTo(BlockFromToEvent event)
+	{
+		notifyObservers(event.getToBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void leavesDecay(LeavesDecayEvent event)
+	{
+		notifyObservers(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void entityChangeBlock(EntityChangeBlockEvent event)
+	{
+		// endermen, falling blocks, silverfish and trampled farmland
+		notifyObservers(event.getBlock());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void structureGrow(StructureGrowEvent event)
+	{
+		for(BlockState blockState : event.getBlocks())
+			notifyObservers(blockState.getWorld(), blockState.getX(), blockState.getY(), blockState.getZ());
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void pistonExtend(BlockPistonExtendEvent event)
+	{
+		List<Block> changedBlocks = getMovedBlocks(event.getBlocks(), event.getDirection());
+		changedBlocks.add(event.getBlock().getRelative(event.getDirection()));
+
+		notifyObservers(changedBlocks);
+		notifyObserversLater(changedBlocks, PISTON_MOVE_TICKS);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void pistonRetract(BlockPistonRetractEvent event)
+	{
+		List<Block> changedBlocks = getMovedBlocks(event.getBlocks(), event.getDirection());
+		changedBlocks.add(event.getBlock().getRelative(event.getDirection()));
+
+		notifyObservers(changedBlocks);
+		notifyObserversLater(changedBlocks, PISTON_MOVE_TICKS);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void entityExplode(EntityExplodeEvent event)
+	{
+		List<Block> changedBlocks = new ArrayList<>(event.blockList());
+
+		notifyObservers(changedBlocks);
+		notifyObserversLater(changedBlocks, EXPLOSION_TICKS);
+	}
+
+	@EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+	public void blockExplode(BlockExplodeEvent event)
+	{
+		List<Block> changedBlocks = new ArrayList<>(event.blockList());
+		changedBlocks.add(event.getBlock());
+
+		notifyObservers(changedBlocks);
+		notifyObserversLater(changedBlocks, EXPLOSION_TICKS);
+	}
+
+
+	// NOTIFICATION
+	private List<Block> getMovedBlocks(List<Block> movedBlocks, BlockFace direction)
+	{
+		// the blocks are moved, so their old and their new position change
+		List<Block> changedBlocks = new ArrayList<>();
+		for(Block block : movedBlocks)
+		{
+			changedBlocks.add(block);
+			changedBlocks.add(block.getRelative(direction));
+		}
+
+		return changedBlocks;
+	}
+
+	private void notifyObserversLater(List<Block> blocks, long delayTicks)
+	{
+		// the observers are notified while the event is processed, before the blocks are changed, so anything read from
+		// the blocks in between is outdated and has to be invalidated again once the change is done
+		Bukkit.getScheduler().runTaskLater(this.plugin, ()->notifyObservers(blocks), delayTicks);
+	}
+
+	private void notifyObservers(List<Block> blocks)
+	{
+		for(Block block : blocks)
+			notifyObservers(block);
+	}
+
+	private void notifyObservers(Block block)
+	{
+		notifyObservers(block.getWorld(), block.getX(), block.getY(), block.getZ());
+	}
+
+	private void notifyObservers(World world, int x, int y, int z)
+	{
+		for(BlockChangeObserver observer : this.observers)
+			observer.onBlockChange(world, x, y, z);
+	}
+
+}
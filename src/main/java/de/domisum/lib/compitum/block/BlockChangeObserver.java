@@ -0,0 +1,18 @@
+package de.domisum.lib.compitum.block;
+
+import org.bukkit.World;
+
+/**
+ * Is notified by the BlockChangeListener about blocks that are changed in the world. The notification happens while the
+ * event is processed, so the block might still have its old type. Blocks moved by pistons or removed by explosions
+ * are reported again once the change is done.
+ * <p>
+ * Blocks changed without an event, e.g. set by plugins, are only reported if the plugin calls
+ * CompitumLib.notifyBlockChange(..).
+ */
+public interface BlockChangeObserver
+{
+
+	void onBlockChange(World world, int x, int y, int z);
+
+}
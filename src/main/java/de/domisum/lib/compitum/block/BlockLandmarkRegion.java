@@ -0,0 +1,405 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import de.domisum.lib.compitum.path.node.TransitionType;
+import de.domisum.lib.compitum.path.node.weighted.DistanceEntry;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A cuboid region of a world with precomputed walking distances from a few landmark blocks to every block in the region.
+ * The distances are calculated with the movement rules of BlockAStar, only using blocks inside of the region, so the
+ * region should contain the whole walkable area (e.g. a town) it is used for.
+ * <p>
+ * The landmarks are selected automatically by calculateLandmarksAsync(..), which has to be called after creating the
+ * region and again after larger changes to the blocks of the region. Until then, the region has no landmarks and only
+ * gives lower bounds of 0. The landmarks and their distances can be saved to a file and loaded again, so they only have
+ * to be calculated once. Loaded distances are memory-mapped and don't use heap memory. Regions in files ending with
+ * '.landmarks' in the directory 'landmarkRegions' in the data folder of the plugin enabling CompitumLib are registered
+ * automatically when CompitumLib is enabled.
+ */
+@API
+public class BlockLandmarkRegion
+{
+
+	// CONSTANTS
+	private static final int MAGIC_NUMBER = 0x43504C4D; // "CPLM"
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int LANDMARK_COUNT = 4;
+	private static final int MAX_VOLUME = 256*64*256;
+	private static final float UNREACHABLE = -1;
+
+	// PROPERTIES
+	private final World world;
+
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+
+	private final int sizeX;
+	private final int sizeY;
+	private final int sizeZ;
+
+	// STATUS
+	// replaced when the landmarks are calculated on another thread while searches are reading them
+	private volatile List<BlockPathNode> landmarks = new ArrayList<>();
+	private volatile FloatBuffer[] landmarkDistances = new FloatBuffer[0]; // <landmark, <block index, distance>>
+
+
+	// INIT
+	@API public BlockLandmarkRegion(Location corner1, Location corner2)
+	{
+		this(getWorld(corner1, corner2), Math.min(corner1.getBlockX(), corner2.getBlockX()),
+				Math.min(corner1.getBlockY(), corner2.getBlockY()), Math.min(corner1.getBlockZ(), corner2.getBlockZ()),
+				Math.abs(corner1.getBlockX()-corner2.getBlockX())+1,
+				Math.abs(corner1.getBlockY()-corner2.getBlockY())+1,
+				Math.abs(corner1.getBlockZ()-corner2.getBlockZ())+1);
+	}
+
+	private BlockLandmarkRegion(World world, int minX, int minY, int minZ, int sizeX, int sizeY, int sizeZ)
+	{
+		this.world = world;
+
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+
+		if((long) this.sizeX*this.sizeY*this.sizeZ > MAX_VOLUME)
+			throw new IllegalArgumentException("The region is too large (max volume is "+MAX_VOLUME+" blocks)");
+	}
+
+	private static World getWorld(Location corner1, Location corner2)
+	{
+		if(corner1.getWorld() != corner2.getWorld())
+			throw new IllegalArgumentException("The corners of the region are not in the same world!");
+
+		return corner1.getWorld();
+	}
+
+	/**
+	 * Loads a region with its landmarks from a file. The distances are memory-mapped, the file must not be changed
+	 * while the region is used.
+	 *
+	 * @param file the file written by save(..)
+	 * @return the region
+	 * @throws IOException if the file can't be read, isn't a landmark region or its world isn't loaded
+	 */
+	@API public static BlockLandmarkRegion load(File file) throws IOException
+	{
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+				FileChannel channel = randomAccessFile.getChannel())
+		{
+			if(randomAccessFile.readInt() != MAGIC_NUMBER)
+				throw new IOException("The file '"+file.getAbsolutePath()+"' is not a landmark region");
+
+			int formatVersion = randomAccessFile.readInt();
+			if(formatVersion != FORMAT_VERSION)
+				throw new IOException("The landmark region format version "+formatVersion+" is not supported");
+
+			String worldName = randomAccessFile.readUTF();
+			World world = Bukkit.getWorld(worldName);
+			if(world == null)
+				throw new IOException("The world '"+worldName+"' of the landmark region is not loaded");
+
+			int minX = randomAccessFile.readInt();
+			int minY = randomAccessFile.readInt();
+			int minZ = randomAccessFile.readInt();
+			int sizeX = randomAccessFile.readInt();
+			int sizeY = randomAccessFile.readInt();
+			int sizeZ = randomAccessFile.readInt();
+			if((long) sizeX*sizeY*sizeZ > MAX_VOLUME)
+				throw new IOException("The landmark region in the file '"+file.getAbsolutePath()+"' is too large");
+
+			BlockLandmarkRegion region = new BlockLandmarkRegion(world, minX, minY, minZ, sizeX, sizeY, sizeZ);
+
+			int landmarkCount = randomAccessFile.readInt();
+			List<BlockPathNode> landmarks = new ArrayList<>();
+			for(int i = 0; i < landmarkCount; i++)
+				landmarks.add(new BlockPathNode(randomAccessFile.readInt(), randomAccessFile.readInt(),
+						randomAccessFile.readInt()));
+
+			// the mapped buffers stay valid after the channel is closed
+			long distancesBytes = (long) sizeX*sizeY*sizeZ*Float.BYTES;
+			long position = randomAccessFile.getFilePointer();
+			FloatBuffer[] landmarkDistances = new FloatBuffer[landmarkCount];
+			for(int i = 0; i < landmarkCount; i++)
+				landmarkDistances[i] = channel
+						.map(FileChannel.MapMode.READ_ONLY, position+i*distancesBytes, distancesBytes).asFloatBuffer();
+
+			region.landmarks = landmarks;
+			region.landmarkDistances = landmarkDistances;
+			return region;
+		}
+	}
+
+
+	// GETTERS
+	@API public List<BlockPathNode> getLandmarks()
+	{
+		return this.landmarks;
+	}
+
+	@API public boolean contains(Location location)
+	{
+		if(location.getWorld() != this.world)
+			return false;
+
+		return contains(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+	}
+
+	private boolean contains(int x, int y, int z)
+	{
+		return x >= this.minX && x < this.minX+this.sizeX && y >= this.minY && y < this.minY+this.sizeY && z >= this.minZ
+				&& z < this.minZ+this.sizeZ;
+	}
+
+	private int getIndex(int x, int y, int z)
+	{
+		return ((x-this.minX)*this.sizeY+(y-this.minY))*this.sizeZ+(z-this.minZ);
+	}
+
+	private BlockPathNode getNode(int index)
+	{
+		int z = index%this.sizeZ;
+		int y = (index/this.sizeZ)%this.sizeY;
+		int x = index/this.sizeZ/this.sizeY;
+
+		return new BlockPathNode(this.minX+x, this.minY+y, this.minZ+z);
+	}
+
+
+	// HEURISTIC
+	/**
+	 * Returns a lower bound for the walking distance between two blocks. Since the movement is not symmetric (jumping up
+	 * costs more than walking down), only the distances from the landmarks are used: the distance from a landmark to the
+	 * target can't be longer than the distance from the landmark to the start plus the distance from the start to the
+	 * target.
+	 *
+	 * @param from the node the movement starts at
+	 * @param to   the node the movement ends at
+	 * @return the lower bound of the distance, 0 if one of the nodes is outside of the region
+	 */
+	public double getLowerBound(BlockPathNode from, BlockPathNode to)
+	{
+		if(!contains(from.x, from.y, from.z) || !contains(to.x, to.y, to.z))
+			return 0;
+
+		int fromIndex = getIndex(from.x, from.y, from.z);
+		int toIndex = getIndex(to.x, to.y, to.z);
+
+		double lowerBound = 0;
+		for(FloatBuffer distances : this.landmarkDistances)
+		{
+			float fromDistance = distances.get(fromIndex);
+			float toDistance = distances.get(toIndex);
+			if(fromDistance == UNREACHABLE || toDistance == UNREACHABLE)
+				continue;
+
+			lowerBound = Math.max(lowerBound, toDistance-fromDistance);
+		}
+
+		return lowerBound;
+	}
+
+
+	// LANDMARKS
+	/**
+	 * Selects the landmarks and calculates the distances from them on another thread. Only the snapshot of the chunks
+	 * is taken on the calling thread, which has to be the main thread. The chunks of the region have to be loaded.
+	 *
+	 * @param seed a walkable location in the region, all blocks that can't be reached from it are ignored
+	 * @return the future which is completed when the new landmarks are used
+	 */
+	@API public CompletableFuture<Void> calculateLandmarksAsync(Location seed)
+	{
+		if(!contains(seed))
+			throw new IllegalArgumentException("The seed has to be inside of the region");
+
+		// the transitions at the border of the region read the blocks next to it
+		Location corner1 = new Location(this.world, this.minX-1, this.minY, this.minZ-1);
+		Location corner2 = new Location(this.world, this.minX+this.sizeX, this.minY+this.sizeY-1, this.minZ+this.sizeZ);
+		BlockSnapshot snapshot = new BlockSnapshot(corner1, corner2);
+
+		BlockPathNode seedNode = new BlockPathNode(seed.getBlockX(), seed.getBlockY(), seed.getBlockZ());
+		return CompletableFuture.runAsync(()->calculateLandmarks(snapshot, seedNode));
+	}
+
+	/**
+	 * Selects the landmarks and calculates the distances from them. Every new landmark is the block that is the
+	 * farthest away from all landmarks selected before. This reads all walkable blocks of the region and keeps one
+	 * distance for every block of the region per landmark on the heap while calculating, up to about 80 MB for the
+	 * largest regions, so it should not be called on the main thread.
+	 *
+	 * @param blockAccess the source of the blocks, e.g. a BlockSnapshot of the region
+	 * @param seed        a walkable block in the region, all blocks that can't be reached from it are ignored
+	 */
+	@API public void calculateLandmarks(BlockAccess blockAccess, BlockPathNode seed)
+	{
+		if(!contains(seed.x, seed.y, seed.z))
+			throw new IllegalArgumentException("The seed has to be inside of the region");
+
+		Location seedLocation = seed.getLocation(this.world);
+		BlockAStar movementRules = new BlockAStar(seedLocation, seedLocation);
+		movementRules.setBlockAccess(blockAccess);
+
+		List<BlockPathNode> newLandmarks = new ArrayList<>();
+		List<FloatBuffer> newLandmarkDistances = new ArrayList<>();
+
+		float[] selectionDistances = calculateDistances(movementRules, seed);
+		for(int i = 0; i < LANDMARK_COUNT; i++)
+		{
+			int farthestIndex = -1;
+			for(int index = 0; index < selectionDistances.length; index++)
+				if(selectionDistances[index] > 0 && (farthestIndex == -1
+						|| selectionDistances[index] > selectionDistances[farthestIndex]))
+					farthestIndex = index;
+
+			if(farthestIndex == -1)
+				break;
+
+			BlockPathNode landmark = getNode(farthestIndex);
+			float[] distances = calculateDistances(movementRules, landmark);
+			newLandmarks.add(landmark);
+			newLandmarkDistances.add(FloatBuffer.wrap(distances));
+
+			// for the next selection only the distance to the closest landmark counts
+			if(i == 0)
+				selectionDistances = distances.clone();
+			else
+				for(int index = 0; index < selectionDistances.length; index++)
+					selectionDistances[index] = Math.min(selectionDistances[index], distances[index]);
+		}
+
+		this.landmarks = newLandmarks;
+		this.landmarkDistances = newLandmarkDistances.toArray(new FloatBuffer[newLandmarkDistances.size()]);
+	}
+
+	/**
+	 * Writes the region with its current landmarks to a file, so they can be loaded instead of calculated again.
+	 *
+	 * @param file the file the region is written to, it is replaced if it exists
+	 * @throws IOException if the file can't be written
+	 */
+	@API public void save(File file) throws IOException
+	{
+		List<BlockPathNode> landmarksToSave = this.landmarks;
+		FloatBuffer[] distancesToSave = this.landmarkDistances;
+
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+				FileChannel channel = randomAccessFile.getChannel())
+		{
+			randomAccessFile.setLength(0);
+			randomAccessFile.writeInt(MAGIC_NUMBER);
+			randomAccessFile.writeInt(FORMAT_VERSION);
+			randomAccessFile.writeUTF(this.world.getName());
+			randomAccessFile.writeInt(this.minX);
+			randomAccessFile.writeInt(this.minY);
+			randomAccessFile.writeInt(this.minZ);
+			randomAccessFile.writeInt(this.sizeX);
+			randomAccessFile.writeInt(this.sizeY);
+			randomAccessFile.writeInt(this.sizeZ);
+
+			randomAccessFile.writeInt(landmarksToSave.size());
+			for(BlockPathNode landmark : landmarksToSave)
+			{
+				randomAccessFile.writeInt(landmark.x);
+				randomAccessFile.writeInt(landmark.y);
+				randomAccessFile.writeInt(landmark.z);
+			}
+
+			long distancesBytes = (long) this.sizeX*this.sizeY*this.sizeZ*Float.BYTES;
+			long position = randomAccessFile.getFilePointer();
+			for(int i = 0; i < distancesToSave.length; i++)
+			{
+				// the buffers are shared with the searches, so they are copied through a duplicate
+				FloatBuffer source = distancesToSave[i].duplicate();
+				source.rewind();
+
+				channel.map(FileChannel.MapMode.READ_WRITE, position+i*distancesBytes, distancesBytes).asFloatBuffer()
+						.put(source);
+			}
+		}
+	}
+
+	private float[] calculateDistances(BlockAStar movementRules, BlockPathNode source)
+	{
+		float[] distances = new float[this.sizeX*this.sizeY*this.sizeZ];
+		Arrays.fill(distances, UNREACHABLE);
+
+		PriorityQueue<DistanceEntry<BlockPathNode>> queue = new PriorityQueue<>();
+		distances[getIndex(source.x, source.y, source.z)] = 0;
+		queue.add(new DistanceEntry<>(source, 0));
+		while(!queue.isEmpty())
+		{
+			DistanceEntry<BlockPathNode> entry = queue.poll();
+			BlockPathNode node = entry.element;
+			if(entry.distance > distances[getIndex(node.x, node.y, node.z)])
+				continue;
+
+			for(int dX = -1; dX <= 1; dX++)
+				for(int dZ = -1; dZ <= 1; dZ++)
+					for(int dY = -1; dY <= 1; dY++)
+					{
+						if(!movementRules.isOffsetAllowed(dX, dY, dZ))
+							continue;
+
+						BlockPathNode neighbor = new BlockPathNode(node.x+dX, node.y+dY, node.z+dZ);
+						if(!contains(neighbor.x, neighbor.y, neighbor.z))
+							continue;
+
+						int transitionType = movementRules.getTransitionType(node, neighbor);
+						if(transitionType == BlockAStar.NO_TRANSITION)
+							continue;
+
+						relax(queue, distances, neighbor,
+								entry.distance+movementRules.getTransitionWeight(node, neighbor, transitionType));
+					}
+
+			// ladders are always included, the distances have to be lower bounds even for pathfinders using them
+			for(int dY = -1; dY <= 1; dY += 2)
+			{
+				BlockPathNode neighbor = new BlockPathNode(node.x, node.y+dY, node.z);
+				if(!contains(neighbor.x, neighbor.y, neighbor.z))
+					continue;
+
+				if(!movementRules.isLadder(neighbor.getLocation(this.world)))
+					continue;
+
+				relax(queue, distances, neighbor,
+						entry.distance+movementRules.getTransitionWeight(node, neighbor, TransitionType.CLIMB));
+			}
+		}
+
+		return distances;
+	}
+
+	private void relax(PriorityQueue<DistanceEntry<BlockPathNode>> queue, float[] distances, BlockPathNode node,
+			double distance)
+	{
+		int index = getIndex(node.x, node.y, node.z);
+		if(distances[index] != UNREACHABLE && distances[index] <= distance)
+			return;
+
+		distances[index] = (float) distance;
+		queue.add(new DistanceEntry<>(node, (float) distance));
+	}
+
+}
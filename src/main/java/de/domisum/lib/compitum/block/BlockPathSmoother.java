@@ -1,19 +1,33 @@
 package de.domisum.lib.compitum.block;
 
 import de.domisum.lib.auxilium.data.container.math.Vector3D;
-import de.domisum.lib.compitum.path.node.BlockPathNode;
+import de.domisum.lib.auxilium.util.java.annotations.API;
 import de.domisum.lib.compitum.path.BlockPath;
 import de.domisum.lib.compitum.path.Path;
 import de.domisum.lib.compitum.path.PathWaypoint;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import de.domisum.lib.compitum.path.node.TransitionType;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Converts a BlockPath into waypoints at the centers of the blocks. If the blocks can be read, waypoints on flat ground
+ * are left out where the straight line between their neighbors can be walked, so only the corners of the path remain.
+ * The nodes before and after jumps, climbs and height changes are always kept.
+ */
 public class BlockPathSmoother
 {
 
+	// CONSTANTS
+	private static final double DEFAULT_AGENT_RADIUS = 0.3; // players and most mobs are 0.6 blocks wide
+
+	// PROPERTIES
+	private double agentRadius = DEFAULT_AGENT_RADIUS;
+
 	// INPUT
 	private BlockPath blockPath;
+	private BlockAccess blockAccess;
 
 	// OUTPUT
 	private Path smoothPath;
@@ -21,8 +35,14 @@ public class BlockPathSmoother
 
 	// INIT
 	public BlockPathSmoother(BlockPath blockPath)
+	{
+		this(blockPath, null);
+	}
+
+	@API public BlockPathSmoother(BlockPath blockPath, BlockAccess blockAccess)
 	{
 		this.blockPath = blockPath;
+		this.blockAccess = blockAccess;
 	}
 
 
@@ -33,15 +53,193 @@ public class BlockPathSmoother
 	}
 
 
+	// SETTERS
+	/**
+	 * Sets the half of the width of the agent, the straight lines between the waypoints keep this distance to solid
+	 * blocks. Since the waypoints are at the centers of blocks, the radius has to be smaller than half a block.
+	 *
+	 * @param agentRadius the half of the width of the agent
+	 */
+	@API public void setAgentRadius(double agentRadius)
+	{
+		if(agentRadius < 0 || agentRadius >= 0.5)
+			throw new IllegalArgumentException("The agent radius has to be between 0 and 0.5, was "+agentRadius);
+
+		this.agentRadius = agentRadius;
+	}
+
+
 	// CONVERSION
 	public void convert()
 	{
+		List<BlockPathNode> nodes = this.blockPath.getNodes();
+
 		List<PathWaypoint> pathWaypoints = new ArrayList<>();
-		for(BlockPathNode blockPathNode : this.blockPath.getNodes())
+		BlockPathNode lineStart = null;
+		for(int i = 0; i < nodes.size(); i++)
+		{
+			BlockPathNode blockPathNode = nodes.get(i);
+			BlockPathNode nextNode = i+1 < nodes.size() ? nodes.get(i+1) : null;
+
+			// the node is left out if the line from the last waypoint to the next node can be walked
+			if(lineStart != null && nextNode != null && canBeSkipped(lineStart, blockPathNode, nextNode))
+				continue;
+
 			pathWaypoints.add(new PathWaypoint(new Vector3D(blockPathNode.x+0.5, blockPathNode.y, blockPathNode.z+0.5),
 					blockPathNode.getTransitionType()));
+			lineStart = blockPathNode;
+		}
 
 		this.smoothPath = new Path(pathWaypoints);
 	}
 
+	private boolean canBeSkipped(BlockPathNode lineStart, BlockPathNode node, BlockPathNode nextNode)
+	{
+		if(this.blockAccess == null)
+			return false;
+
+		// the movement into and out of the node has to be walking on the same height
+		if(node.getTransitionType() != TransitionType.WALK || nextNode.getTransitionType() != TransitionType.WALK)
+			return false;
+
+		if(lineStart.y != node.y || node.y != nextNode.y)
+			return false;
+
+		return isWalkableLine(lineStart, nextNode);
+	}
+
+
+	// LINE OF SIGHT
+	/**
+	 * Checks that the agent can walk the straight line between the centers of two blocks on the same height. Besides
+	 * the line itself, the lines of the four corners of the square the agent covers are followed. A block is at least
+	 * as wide as the distance between these lines, so every block the agent touches on the way is on one of them.
+	 */
+	private boolean isWalkableLine(BlockPathNode from, BlockPathNode to)
+	{
+		if(!isWalkableCenterLine(from, to))
+			return false;
+
+		if(this.agentRadius == 0)
+			return true;
+
+		for(int cornerX = -1; cornerX <= 1; cornerX += 2)
+			for(int cornerZ = -1; cornerZ <= 1; cornerZ += 2)
+			{
+				double offsetX = 0.5+cornerX*this.agentRadius;
+				double offsetZ = 0.5+cornerZ*this.agentRadius;
+				if(!isWalkableLine(from.x+offsetX, from.z+offsetZ, to.x+offsetX, to.z+offsetZ, from.y))
+					return false;
+			}
+
+		return true;
+	}
+
+	/**
+	 * Walks the blocks the straight line between the centers of two blocks on the same height passes through, using
+	 * a grid traversal. Where the line passes exactly through a corner, both blocks touching the corner have to be free.
+	 */
+	private boolean isWalkableCenterLine(BlockPathNode from, BlockPathNode to)
+	{
+		int absDX = Math.abs(to.x-from.x);
+		int absDZ = Math.abs(to.z-from.z);
+		int stepX = Integer.signum(to.x-from.x);
+		int stepZ = Integer.signum(to.z-from.z);
+
+		int x = from.x;
+		int z = from.z;
+		int y = from.y;
+
+		// the distances along the line to the next block borders, scaled by 2*absDX*absDZ to stay integers
+		long nextBorderX = absDZ;
+		long nextBorderZ = absDX;
+		while(x != to.x || z != to.z)
+		{
+			if(nextBorderX < nextBorderZ)
+			{
+				x += stepX;
+				nextBorderX += 2L*absDZ;
+			}
+			else if(nextBorderZ < nextBorderX)
+			{
+				z += stepZ;
+				nextBorderZ += 2L*absDX;
+			}
+			else
+			{
+				if(!canStandAt(x+stepX, y, z) || !canStandAt(x, y, z+stepZ))
+					return false;
+
+				x += stepX;
+				z += stepZ;
+				nextBorderX += 2L*absDZ;
+				nextBorderZ += 2L*absDX;
+			}
+
+			if(!canStandAt(x, y, z))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Walks the blocks an arbitrary straight line on one height passes through, like isWalkableCenterLine(..).
+	 */
+	private boolean isWalkableLine(double fromX, double fromZ, double toX, double toZ, int y)
+	{
+		int x = (int) Math.floor(fromX);
+		int z = (int) Math.floor(fromZ);
+		int endX = (int) Math.floor(toX);
+		int endZ = (int) Math.floor(toZ);
+		if(!canStandAt(x, y, z))
+			return false;
+
+		double dX = toX-fromX;
+		double dZ = toZ-fromZ;
+		int stepX = (int) Math.signum(dX);
+		int stepZ = (int) Math.signum(dZ);
+
+		// the fractions of the line at which it crosses the next block borders
+		double nextBorderX = stepX == 0 ? Double.POSITIVE_INFINITY : ((stepX > 0 ? x+1 : x)-fromX)/dX;
+		double nextBorderZ = stepZ == 0 ? Double.POSITIVE_INFINITY : ((stepZ > 0 ? z+1 : z)-fromZ)/dZ;
+		double borderDistanceX = stepX == 0 ? Double.POSITIVE_INFINITY : 1/Math.abs(dX);
+		double borderDistanceZ = stepZ == 0 ? Double.POSITIVE_INFINITY : 1/Math.abs(dZ);
+
+		// the fraction check ends the walk even if rounding errors make it miss the last block
+		while((x != endX || z != endZ) && Math.min(nextBorderX, nextBorderZ) <= 1)
+		{
+			if(nextBorderX < nextBorderZ)
+			{
+				x += stepX;
+				nextBorderX += borderDistanceX;
+			}
+			else if(nextBorderZ < nextBorderX)
+			{
+				z += stepZ;
+				nextBorderZ += borderDistanceZ;
+			}
+			else
+			{
+				if(!canStandAt(x+stepX, y, z) || !canStandAt(x, y, z+stepZ))
+					return false;
+
+				x += stepX;
+				z += stepZ;
+				nextBorderX += borderDistanceX;
+				nextBorderZ += borderDistanceZ;
+			}
+
+			if(!canStandAt(x, y, z))
+				return false;
+		}
+
+		return true;
+	}
+
+	private boolean canStandAt(int x, int y, int z)
+	{
+		return this.blockAccess.canStandAt(x, y, z);
+	}
+
 }
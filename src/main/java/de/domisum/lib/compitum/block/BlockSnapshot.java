@@ -0,0 +1,226 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.Collection;
+
+/**
+ * An immutable copy of the chunks around a cuboid region, along a line or of a set of chunks in a world, which can be
+ * read from any thread. Blocks in chunks which are not part of the snapshot or weren't loaded when it was taken are
+ * treated as solid, so pathfinding doesn't leave the snapshot.
+ */
+@API
+public class BlockSnapshot implements BlockAccess
+{
+
+	// CONSTANTS
+	@SuppressWarnings("deprecation") private static final int OUTSIDE_TYPE_ID = Material.STONE.getId();
+
+	// PROPERTIES
+	private final int minChunkX;
+	private final int minChunkZ;
+	private final int chunkCountX;
+	private final int chunkCountZ;
+	private final int maxHeight;
+
+	// STATUS
+	private final ChunkSnapshot[] chunks;
+
+
+	// INIT
+	/**
+	 * Takes the snapshot of all loaded chunks touching the region between the corners. This has to be done on the main
+	 * thread.
+	 *
+	 * @param corner1 a corner of the region
+	 * @param corner2 the opposite corner of the region
+	 */
+	@API public BlockSnapshot(Location corner1, Location corner2)
+	{
+		this(getWorld(corner1, corner2), Math.min(corner1.getBlockX(), corner2.getBlockX()),
+				Math.min(corner1.getBlockZ(), corner2.getBlockZ()), Math.max(corner1.getBlockX(), corner2.getBlockX()),
+				Math.max(corner1.getBlockZ(), corner2.getBlockZ()));
+
+		World world = corner1.getWorld();
+		for(int cX = 0; cX < this.chunkCountX; cX++)
+			for(int cZ = 0; cZ < this.chunkCountZ; cZ++)
+				takeChunk(world, cX, cZ);
+	}
+
+	private BlockSnapshot(World world, int minX, int minZ, int maxX, int maxZ)
+	{
+		this.minChunkX = minX>>4;
+		this.minChunkZ = minZ>>4;
+		this.chunkCountX = (maxX>>4)-this.minChunkX+1;
+		this.chunkCountZ = (maxZ>>4)-this.minChunkZ+1;
+		this.maxHeight = world.getMaxHeight();
+
+		this.chunks = new ChunkSnapshot[this.chunkCountX*this.chunkCountZ];
+	}
+
+	/**
+	 * Takes the snapshot of the loaded chunks along the line between two locations. For locations far apart this is a
+	 * lot less than the whole region between them. This has to be done on the main thread.
+	 *
+	 * @param from   one end of the line
+	 * @param to     the other end of the line
+	 * @param radius the horizontal distance from the line up to which the blocks are included
+	 * @return the snapshot of the chunks along the line
+	 */
+	@API public static BlockSnapshot ofCorridor(Location from, Location to, double radius)
+	{
+		World world = getWorld(from, to);
+		int margin = (int) Math.ceil(radius);
+		BlockSnapshot snapshot = new BlockSnapshot(world, Math.min(from.getBlockX(), to.getBlockX())-margin,
+				Math.min(from.getBlockZ(), to.getBlockZ())-margin, Math.max(from.getBlockX(), to.getBlockX())+margin,
+				Math.max(from.getBlockZ(), to.getBlockZ())+margin);
+
+		// a chunk touches the corridor if its center is closer to the line than the radius plus half of its diagonal
+		double maxCenterDistance = radius+8*Math.sqrt(2);
+		for(int cX = 0; cX < snapshot.chunkCountX; cX++)
+			for(int cZ = 0; cZ < snapshot.chunkCountZ; cZ++)
+			{
+				double centerX = ((snapshot.minChunkX+cX)<<4)+8;
+				double centerZ = ((snapshot.minChunkZ+cZ)<<4)+8;
+				if(getDistanceToLine(centerX, centerZ, from, to) <= maxCenterDistance)
+					snapshot.takeChunk(world, cX, cZ);
+			}
+
+		return snapshot;
+	}
+
+	/**
+	 * Takes the snapshot of the given chunks which are loaded. Chunks between them which are not given are left out, so
+	 * one snapshot can be shared by work on several parts of the world. This has to be done on the main thread.
+	 *
+	 * @param world     the world of the chunks
+	 * @param chunkKeys the keys of the chunks to take, see getChunkKey(..), at least one
+	 * @return the snapshot of the chunks
+	 */
+	@API public static BlockSnapshot ofChunks(World world, Collection<Long> chunkKeys)
+	{
+		if(chunkKeys.isEmpty())
+			throw new IllegalArgumentException("The snapshot needs at least one chunk!");
+
+		int minChunkX = Integer.MAX_VALUE;
+		int minChunkZ = Integer.MAX_VALUE;
+		int maxChunkX = Integer.MIN_VALUE;
+		int maxChunkZ = Integer.MIN_VALUE;
+		for(long chunkKey : chunkKeys)
+		{
+			minChunkX = Math.min(minChunkX, getChunkX(chunkKey));
+			minChunkZ = Math.min(minChunkZ, getChunkZ(chunkKey));
+			maxChunkX = Math.max(maxChunkX, getChunkX(chunkKey));
+			maxChunkZ = Math.max(maxChunkZ, getChunkZ(chunkKey));
+		}
+
+		BlockSnapshot snapshot = new BlockSnapshot(world, minChunkX<<4, minChunkZ<<4, maxChunkX<<4, maxChunkZ<<4);
+		for(long chunkKey : chunkKeys)
+			snapshot.takeChunk(world, getChunkX(chunkKey)-minChunkX, getChunkZ(chunkKey)-minChunkZ);
+
+		return snapshot;
+	}
+
+	private static World getWorld(Location corner1, Location corner2)
+	{
+		if(corner1.getWorld() != corner2.getWorld())
+			throw new IllegalArgumentException("The corners of the snapshot are not in the same world!");
+
+		return corner1.getWorld();
+	}
+
+	private static double getDistanceToLine(double x, double z, Location from, Location to)
+	{
+		double lineX = to.getX()-from.getX();
+		double lineZ = to.getZ()-from.getZ();
+		double lengthSquared = lineX*lineX+lineZ*lineZ;
+
+		double progress = 0;
+		if(lengthSquared > 0)
+			progress = ((x-from.getX())*lineX+(z-from.getZ())*lineZ)/lengthSquared;
+		progress = Math.max(0, Math.min(1, progress));
+
+		double dX = from.getX()+lineX*progress-x;
+		double dZ = from.getZ()+lineZ*progress-z;
+		return Math.sqrt(dX*dX+dZ*dZ);
+	}
+
+	private void takeChunk(World world, int cX, int cZ)
+	{
+		int chunkX = this.minChunkX+cX;
+		int chunkZ = this.minChunkZ+cZ;
+
+		// loading chunks just for the snapshot would take far longer than the pathfinding
+		if(world.isChunkLoaded(chunkX, chunkZ))
+			this.chunks[cX*this.chunkCountZ+cZ] = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot();
+	}
+
+
+	// GETTERS
+	@API public static long getChunkKey(int chunkX, int chunkZ)
+	{
+		return ((long) chunkX<<32)|(chunkZ&0xFFFFFFFFL);
+	}
+
+	@API public static int getChunkX(long chunkKey)
+	{
+		return (int) (chunkKey>>32);
+	}
+
+	@API public static int getChunkZ(long chunkKey)
+	{
+		return (int) chunkKey;
+	}
+
+	/**
+	 * @return the number of chunks in the snapshot, which doesn't include unloaded chunks, chunks outside of the
+	 * corridor of a snapshot taken with ofCorridor(..) and chunks which were not given to ofChunks(..)
+	 */
+	@API public int getChunkCount()
+	{
+		int chunkCount = 0;
+		for(ChunkSnapshot chunk : this.chunks)
+			if(chunk != null)
+				chunkCount++;
+
+		return chunkCount;
+	}
+
+	private ChunkSnapshot getChunk(int x, int y, int z)
+	{
+		if(y < 0 || y >= this.maxHeight)
+			return null;
+
+		int cX = (x>>4)-this.minChunkX;
+		int cZ = (z>>4)-this.minChunkZ;
+		if(cX < 0 || cX >= this.chunkCountX || cZ < 0 || cZ >= this.chunkCountZ)
+			return null;
+
+		return this.chunks[cX*this.chunkCountZ+cZ];
+	}
+
+
+	// ACCESS
+	@Override public int getTypeId(int x, int y, int z)
+	{
+		ChunkSnapshot chunk = getChunk(x, y, z);
+		if(chunk == null)
+			return OUTSIDE_TYPE_ID;
+
+		return chunk.getBlockTypeId(x&15, y, z&15);
+	}
+
+	@Override public int getData(int x, int y, int z)
+	{
+		ChunkSnapshot chunk = getChunk(x, y, z);
+		if(chunk == null)
+			return 0;
+
+		return chunk.getBlockData(x&15, y, z&15);
+	}
+
+}
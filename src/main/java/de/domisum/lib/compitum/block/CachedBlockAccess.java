@@ -0,0 +1,100 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads the blocks of a world through the shared BlockCache. Sections which aren't cached yet are read from the world
+ * on the main thread. On other threads they can't be read, so their blocks are treated as solid, like blocks outside
+ * of a BlockSnapshot. After the world was unloaded, all of its blocks are treated as solid.
+ */
+@API
+public class CachedBlockAccess implements BlockAccess
+{
+
+	// CONSTANTS
+	@SuppressWarnings("deprecation") private static final int UNAVAILABLE_TYPE_ID = Material.STONE.getId();
+
+	// REFERENCES
+	private final BlockCache cache;
+	private final World world;
+	private final int maxHeight;
+
+	// STATUS
+	private volatile BlockCacheSection lastSection; // most reads are in the same section as the one before
+	private final LongAdder hitCount = new LongAdder();
+
+
+	// INIT
+	@API public CachedBlockAccess(BlockCache cache, World world)
+	{
+		this.cache = cache;
+		this.world = world;
+		this.maxHeight = world.getMaxHeight();
+	}
+
+
+	// GETTERS
+	/**
+	 * @return the number of blocks read from sections which were already cached
+	 */
+	@API public long getHitCount()
+	{
+		return this.hitCount.sum();
+	}
+
+	private BlockCacheSection getSection(int x, int y, int z)
+	{
+		long key = BlockCache.getSectionKey(x>>4, y>>4, z>>4);
+
+		BlockCacheSection section = this.lastSection;
+		if(section == null || section.key != key || section.isInvalidated())
+			section = this.cache.getSection(this.world, key);
+
+		if(section != null && !section.isInvalidated())
+		{
+			this.hitCount.increment();
+			section.touch(this.cache.getAccessTime());
+		}
+		else if(Bukkit.isPrimaryThread())
+			section = this.cache.loadSection(this.world, x>>4, y>>4, z>>4);
+		else
+			return null;
+
+		this.lastSection = section;
+		return section;
+	}
+
+
+	// ACCESS
+	@Override public int getTypeId(int x, int y, int z)
+	{
+		if(y < 0 || y >= this.maxHeight)
+			return 0;
+
+		BlockCacheSection section = getSection(x, y, z);
+		if(section == null)
+			return UNAVAILABLE_TYPE_ID;
+
+		int typeId = section.getTypeId(x, y, z);
+		return typeId == BlockCacheSection.UNAVAILABLE ? UNAVAILABLE_TYPE_ID : typeId;
+	}
+
+	@Override public int getData(int x, int y, int z)
+	{
+		if(y < 0 || y >= this.maxHeight)
+			return 0;
+
+		BlockCacheSection section = getSection(x, y, z);
+		if(section == null)
+			return 0;
+
+		int data = section.getData(x, y, z);
+		return data == BlockCacheSection.UNAVAILABLE ? 0 : data;
+	}
+
+}
@@ -0,0 +1,429 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import de.domisum.lib.compitum.path.node.TransitionType;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * A BlockAStar that keeps its search state after the path was found and repairs the path when blocks change instead of
+ * searching again. It uses D* Lite: the search runs backwards from the target, so the distances to the target stay
+ * valid while the agent moves along the path, and after a block change only the nodes whose distance changed are
+ * visited again.
+ * <p>
+ * The block changes are reported through onBlockChange(..), e.g. by registering the pathfinder with
+ * CompitumLib.registerBlockChangeObserver(..), which doesn't see blocks set by plugins without an event unless they are
+ * reported through CompitumLib.notifyBlockChange(..). They are applied when the search is continued, which happens on
+ * updatePath() or on the next step(..) after prepareRepair(). The repair depends on the estimates never being too high,
+ * so the heuristic importance and the landmark region are ignored (the landmark distances were calculated on the blocks
+ * before they changed) and the straight line distance is scaled down to the cost of the movement along it.
+ */
+@API
+public class IncrementalBlockAStar extends BlockAStar implements BlockChangeObserver
+{
+
+	// CONSTANTS
+	private static final double INFINITY = Double.POSITIVE_INFINITY;
+
+	// the transitions of a node depend on blocks up to one block to the side and two blocks above and below it, so a
+	// changed block can change the transitions of the nodes up to this far away
+	private static final int CHANGE_RADIUS_HORIZONTAL = 2;
+	private static final int CHANGE_RADIUS_BELOW = 3;
+	private static final int CHANGE_RADIUS_ABOVE = 2;
+
+	// diagonal movement costs 1.41 instead of sqrt(2) and 1.73 instead of sqrt(3), so the straight line distance is
+	// scaled down to never be more than the cost of the movement along it
+	private static final double DISTANCE_ESTIMATE_FACTOR = 1.41/Math.sqrt(2);
+
+	// STATUS
+	private Map<BlockPathNode, NodeState> states = new HashMap<>();
+	private PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+	private double keyModifier = 0;
+	private BlockPathNode lastStartNode;
+
+	private Set<BlockPathNode> changedBlocks = new HashSet<>();
+	private int visitedNodeCount = 0;
+	private int repairCount = 0;
+
+	// bounds of the nodes with a state, to ignore changes far away quickly
+	private int minX = Integer.MAX_VALUE;
+	private int minY = Integer.MAX_VALUE;
+	private int minZ = Integer.MAX_VALUE;
+	private int maxX = Integer.MIN_VALUE;
+	private int maxY = Integer.MIN_VALUE;
+	private int maxZ = Integer.MIN_VALUE;
+
+
+	// INIT
+	@API public IncrementalBlockAStar(Location startLocation, Location endLocation)
+	{
+		super(startLocation, endLocation);
+	}
+
+
+	// GETTERS
+	@Override public int getVisitedNodeCount()
+	{
+		return this.visitedNodeCount;
+	}
+
+	@Override public int getUnvisitedNodeCount()
+	{
+		return this.queue.size();
+	}
+
+	@API public int getRepairCount()
+	{
+		return this.repairCount;
+	}
+
+	@API public boolean needsRepair()
+	{
+		return !this.changedBlocks.isEmpty() || (this.lastStartNode != null && !this.lastStartNode.equals(this.startNode));
+	}
+
+	@Override public String getDiagnose()
+	{
+		String diagnose = super.getDiagnose();
+
+		diagnose += "nodeStates="+this.states.size()+", ";
+		diagnose += "repairs="+this.repairCount+", ";
+
+		return diagnose;
+	}
+
+
+	private NodeState getState(BlockPathNode node)
+	{
+		NodeState state = this.states.get(node);
+		if(state != null)
+			return state;
+
+		// the nodes passed in have parents, the key shouldn't keep them referenced
+		BlockPathNode key = new BlockPathNode(node.x, node.y, node.z);
+		state = new NodeState(key);
+		this.states.put(key, state);
+
+		this.minX = Math.min(this.minX, node.x);
+		this.minY = Math.min(this.minY, node.y);
+		this.minZ = Math.min(this.minZ, node.z);
+		this.maxX = Math.max(this.maxX, node.x);
+		this.maxY = Math.max(this.maxY, node.y);
+		this.maxZ = Math.max(this.maxZ, node.z);
+
+		return state;
+	}
+
+	private double getG(BlockPathNode node)
+	{
+		NodeState state = this.states.get(node);
+		return state == null ? INFINITY : state.g;
+	}
+
+
+	// SETTERS
+	/**
+	 * Moves the start of the path to the current location of the agent. The path is updated on the next repair.
+	 *
+	 * @param location the location of the agent
+	 */
+	@API public void setAgentLocation(Location location)
+	{
+		if(this.startNode == null)
+			throw new IllegalStateException("The search has to be started before the agent can move");
+
+		BlockPathNode agentNode = new BlockPathNode(location.getBlockX(), location.getBlockY(), location.getBlockZ());
+		agentNode.setParent(null, TransitionType.WALK, 0);
+		this.startNode = agentNode;
+	}
+
+
+	// REPAIR
+	@Override public void onBlockChange(World world, int x, int y, int z)
+	{
+		if(world != getWorld())
+			return;
+
+		if(x < this.minX-CHANGE_RADIUS_HORIZONTAL || x > this.maxX+CHANGE_RADIUS_HORIZONTAL)
+			return;
+		if(y < this.minY-CHANGE_RADIUS_ABOVE || y > this.maxY+CHANGE_RADIUS_BELOW)
+			return;
+		if(z < this.minZ-CHANGE_RADIUS_HORIZONTAL || z > this.maxZ+CHANGE_RADIUS_HORIZONTAL)
+			return;
+
+		this.changedBlocks.add(new BlockPathNode(x, y, z));
+	}
+
+	/**
+	 * Makes the finished search continuable if blocks changed or the agent moved, so the repair can be spread over
+	 * multiple ticks with step(..).
+	 *
+	 * @return true if the path has to be repaired, false if it is still valid
+	 */
+	@API public boolean prepareRepair()
+	{
+		if(!isFinished() || !needsRepair())
+			return false;
+
+		resumeSearch();
+		this.repairCount++;
+		return true;
+	}
+
+	/**
+	 * Repairs the path if blocks changed or the agent moved since the path was found.
+	 */
+	@API public void updatePath()
+	{
+		if(prepareRepair())
+			findPath();
+	}
+
+	@Override protected void resumeSearch()
+	{
+		super.resumeSearch();
+		this.visitedNodeCount = 0;
+	}
+
+	private void applyChanges()
+	{
+		// the keys in the queue were calculated with the distances to the old start, the modifier keeps them comparable
+		if(!this.lastStartNode.equals(this.startNode))
+		{
+			this.keyModifier += getDistanceEstimate(this.lastStartNode, this.startNode);
+			this.lastStartNode = this.startNode;
+		}
+
+		for(BlockPathNode changedBlock : this.changedBlocks)
+			for(int dX = -CHANGE_RADIUS_HORIZONTAL; dX <= CHANGE_RADIUS_HORIZONTAL; dX++)
+				for(int dZ = -CHANGE_RADIUS_HORIZONTAL; dZ <= CHANGE_RADIUS_HORIZONTAL; dZ++)
+					for(int dY = -CHANGE_RADIUS_BELOW; dY <= CHANGE_RADIUS_ABOVE; dY++)
+					{
+						// nodes which became walkable have no state yet, they have to be added so the search can
+						// find the new shortcuts through them
+						BlockPathNode node = new BlockPathNode(changedBlock.x+dX, changedBlock.y+dY, changedBlock.z+dZ);
+						if(this.states.containsKey(node) || canBeReachedForward(node))
+							updateNode(node);
+					}
+
+		this.changedBlocks.clear();
+	}
+
+
+	// PATHFINDING
+	@Override protected void startSearch()
+	{
+		this.lastStartNode = this.startNode;
+
+		NodeState targetState = getState(this.endNode);
+		targetState.rhs = 0;
+		insert(targetState);
+	}
+
+	@Override protected boolean continueSearch(int maxNodeVisitsInStep, long deadlineNano)
+	{
+		applyChanges();
+
+		for(int i = 0; i < maxNodeVisitsInStep; i++)
+		{
+			if(i > 0 && isDeadlineReached(deadlineNano))
+				return false;
+
+			QueueEntry entry = peekQueue();
+			NodeState startState = getState(this.startNode);
+			boolean startKeyReached = entry == null || entry.compareTo(calculateKey(startState)) >= 0;
+			if(startKeyReached && startState.g == startState.rhs)
+				return true;
+
+			if(entry == null)
+			{
+				this.failure = "No unvisted nodes left";
+				return true;
+			}
+
+			if(this.visitedNodeCount >= getMaxNodeVisits())
+			{
+				this.failure = "Number of nodes visited exceeds maximum";
+				return true;
+			}
+
+			this.queue.poll();
+			visitNode(entry);
+		}
+
+		return false;
+	}
+
+	private void visitNode(QueueEntry entry)
+	{
+		NodeState state = entry.state;
+		state.queueEntry = null;
+		this.visitedNodeCount++;
+
+		QueueEntry newEntry = calculateKey(state);
+		if(entry.compareTo(newEntry) < 0)
+		{
+			// the start moved since the node was added, so its key is outdated
+			insert(state);
+		}
+		else if(state.g > state.rhs)
+		{
+			state.g = state.rhs;
+			for(BlockPathNode predecessor : getPredecessorNodes(state.node))
+				updateNode(predecessor);
+		}
+		else
+		{
+			state.g = INFINITY;
+			updateNode(state.node);
+			for(BlockPathNode predecessor : getPredecessorNodes(state.node))
+				updateNode(predecessor);
+		}
+	}
+
+	private void updateNode(BlockPathNode node)
+	{
+		NodeState state = getState(node);
+		if(!state.node.equals(this.endNode))
+		{
+			double rhs = INFINITY;
+			for(BlockPathNode successor : getSuccessorNodes(state.node))
+				rhs = Math.min(rhs, successor.getWeightFromParent()+getG(successor));
+
+			state.rhs = rhs;
+		}
+
+		// the old queue entry is skipped when it is polled
+		state.queueEntry = null;
+		if(state.g != state.rhs)
+			insert(state);
+	}
+
+	@Override protected BlockPathNode getPathEndNode()
+	{
+		if(this.failure != null)
+			return null;
+
+		if(getG(this.startNode) == INFINITY)
+		{
+			this.failure = "No unvisted nodes left";
+			return null;
+		}
+
+		// following the smallest distance to the target, the parents are set by getSuccessorNodes
+		BlockPathNode current = this.startNode;
+		int stepCount = 0;
+		while(!current.equals(this.endNode))
+		{
+			BlockPathNode next = null;
+			double nextDistance = INFINITY;
+			for(BlockPathNode successor : getSuccessorNodes(current))
+			{
+				double distance = successor.getWeightFromParent()+getG(successor);
+				if(distance < nextDistance)
+				{
+					next = successor;
+					nextDistance = distance;
+				}
+			}
+
+			if(next == null || stepCount++ > this.states.size())
+			{
+				this.failure = "The path could not be followed to the target";
+				return null;
+			}
+
+			current = next;
+		}
+
+		return current;
+	}
+
+
+	@Override protected double getDistanceEstimate(BlockPathNode from, BlockPathNode to)
+	{
+		int dX = to.x-from.x;
+		int dY = to.y-from.y;
+		int dZ = to.z-from.z;
+
+		return Math.sqrt(dX*dX+dY*dY+dZ*dZ)*DISTANCE_ESTIMATE_FACTOR;
+	}
+
+
+	// QUEUE
+	private QueueEntry calculateKey(NodeState state)
+	{
+		double distance = Math.min(state.g, state.rhs);
+		return new QueueEntry(state, distance+getDistanceEstimate(this.startNode, state.node)+this.keyModifier, distance);
+	}
+
+	private void insert(NodeState state)
+	{
+		QueueEntry entry = calculateKey(state);
+		state.queueEntry = entry;
+		this.queue.add(entry);
+	}
+
+	private QueueEntry peekQueue()
+	{
+		// entries of nodes that were updated since they were added are skipped
+		while(!this.queue.isEmpty() && this.queue.peek().state.queueEntry != this.queue.peek())
+			this.queue.poll();
+
+		return this.queue.peek();
+	}
+
+
+	private static class NodeState
+	{
+
+		private final BlockPathNode node;
+
+		private double g = INFINITY; // distance to the target
+		private double rhs = INFINITY; // distance to the target calculated from the successors
+		private QueueEntry queueEntry;
+
+
+		// INIT
+		private NodeState(BlockPathNode node)
+		{
+			this.node = node;
+		}
+
+	}
+
+	private static class QueueEntry implements Comparable<QueueEntry>
+	{
+
+		private final NodeState state;
+		private final double primaryKey;
+		private final double secondaryKey;
+
+
+		// INIT
+		private QueueEntry(NodeState state, double primaryKey, double secondaryKey)
+		{
+			this.state = state;
+			this.primaryKey = primaryKey;
+			this.secondaryKey = secondaryKey;
+		}
+
+		@Override public int compareTo(QueueEntry other)
+		{
+			int primaryComparison = Double.compare(this.primaryKey, other.primaryKey);
+			if(primaryComparison != 0)
+				return primaryComparison;
+
+			return Double.compare(this.secondaryKey, other.secondaryKey);
+		}
+
+	}
+
+}
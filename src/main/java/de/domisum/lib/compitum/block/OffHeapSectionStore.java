@@ -0,0 +1,208 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Fixed-size slots outside of the Java heap, each holding the blocks of one chunk section of the BlockCache. The slots
+ * are either in direct ByteBuffers or in a memory-mapped file, so a large cache doesn't lengthen the garbage
+ * collection pauses.
+ * <p>
+ * Reading uses absolute positions only, so any number of threads can read at the same time. A section gets a stamp of
+ * its slot when it is stored, and releasing the slot makes the stamp invalid. A reader validates the stamp after every
+ * read, so it can't use a value which was written by the next section in the same slot.
+ */
+@API
+public class OffHeapSectionStore
+{
+
+	// CONSTANTS
+	static final int SLOT_BYTES = BlockCacheSection.BLOCK_COUNT*2;
+	private static final int SLOTS_PER_BUFFER = 4096; // 32 MB, a ByteBuffer can't be larger than 2 GB
+
+	// PROPERTIES
+	private final ByteBuffer[] buffers;
+	private final int slotCount;
+
+	// STATUS
+	// only used for their stamps, the write lock is taken for a moment when a slot is released
+	private final StampedLock[] slotLocks;
+	private final int[] freeSlots;
+	private int freeSlotCount;
+
+
+	// INIT
+	private OffHeapSectionStore(ByteBuffer[] buffers, int slotCount)
+	{
+		this.buffers = buffers;
+		this.slotCount = slotCount;
+
+		this.slotLocks = new StampedLock[slotCount];
+		for(int i = 0; i < slotCount; i++)
+			this.slotLocks[i] = new StampedLock();
+
+		this.freeSlots = new int[slotCount];
+		for(int i = 0; i < slotCount; i++)
+			this.freeSlots[i] = slotCount-1-i;
+		this.freeSlotCount = slotCount;
+	}
+
+	/**
+	 * Allocates the slots in direct ByteBuffers.
+	 *
+	 * @param capacityBytes the memory available for the slots
+	 * @return the store
+	 */
+	@API public static OffHeapSectionStore allocateDirect(long capacityBytes)
+	{
+		int slotCount = getSlotCount(capacityBytes);
+
+		ByteBuffer[] buffers = new ByteBuffer[getBufferCount(slotCount)];
+		for(int i = 0; i < buffers.length; i++)
+			buffers[i] = ByteBuffer.allocateDirect(getBufferSlotCount(slotCount, i)*SLOT_BYTES);
+
+		return new OffHeapSectionStore(buffers, slotCount);
+	}
+
+	/**
+	 * Maps the slots to a file, so the operating system can write rarely used sections to disk instead of keeping them
+	 * in memory. The content of the file is overwritten, it is only used as a scratch space.
+	 *
+	 * @param file          the file the slots are mapped to
+	 * @param capacityBytes the size of the file
+	 * @return the store
+	 * @throws IOException if the file can't be mapped
+	 */
+	@API public static OffHeapSectionStore map(File file, long capacityBytes) throws IOException
+	{
+		int slotCount = getSlotCount(capacityBytes);
+
+		ByteBuffer[] buffers = new ByteBuffer[getBufferCount(slotCount)];
+		// the mapped buffers stay valid after the channel is closed
+		try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+				FileChannel channel = randomAccessFile.getChannel())
+		{
+			for(int i = 0; i < buffers.length; i++)
+			{
+				long position = (long) i*SLOTS_PER_BUFFER*SLOT_BYTES;
+				buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, position,
+						(long) getBufferSlotCount(slotCount, i)*SLOT_BYTES);
+			}
+		}
+
+		return new OffHeapSectionStore(buffers, slotCount);
+	}
+
+	private static int getSlotCount(long capacityBytes)
+	{
+		long slotCount = capacityBytes/SLOT_BYTES;
+		if(slotCount <= 0 || slotCount > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The capacity has to be between "+SLOT_BYTES+" bytes and "
+					+((long) Integer.MAX_VALUE*SLOT_BYTES)+" bytes");
+
+		return (int) slotCount;
+	}
+
+	private static int getBufferCount(int slotCount)
+	{
+		return (slotCount+SLOTS_PER_BUFFER-1)/SLOTS_PER_BUFFER;
+	}
+
+	private static int getBufferSlotCount(int slotCount, int bufferIndex)
+	{
+		return Math.min(SLOTS_PER_BUFFER, slotCount-bufferIndex*SLOTS_PER_BUFFER);
+	}
+
+
+	// GETTERS
+	@API public int getSlotCount()
+	{
+		return this.slotCount;
+	}
+
+	@API public long getCapacityBytes()
+	{
+		return (long) this.slotCount*SLOT_BYTES;
+	}
+
+	/**
+	 * @return the number of slots which hold a section
+	 */
+	@API public synchronized int getUsedSlotCount()
+	{
+		return this.slotCount-this.freeSlotCount;
+	}
+
+	@API public long getUsedBytes()
+	{
+		return (long) getUsedSlotCount()*SLOT_BYTES;
+	}
+
+
+	// ALLOCATION
+	/**
+	 * @return the index of a free slot, or -1 if all slots are used
+	 */
+	synchronized int allocate()
+	{
+		if(this.freeSlotCount == 0)
+			return -1;
+
+		return this.freeSlots[--this.freeSlotCount];
+	}
+
+	/**
+	 * Makes the stamps of the slot invalid and gives the slot back, so it can be used for another section right away.
+	 */
+	void release(int slot)
+	{
+		StampedLock slotLock = this.slotLocks[slot];
+		slotLock.unlockWrite(slotLock.writeLock());
+
+		synchronized(this)
+		{
+			this.freeSlots[this.freeSlotCount++] = slot;
+		}
+	}
+
+
+	// ACCESS
+	/**
+	 * @return the stamp of the current content of the slot, for validating the reads from it
+	 */
+	long getStamp(int slot)
+	{
+		return this.slotLocks[slot].tryOptimisticRead();
+	}
+
+	/**
+	 * @return true if the slot wasn't released since the stamp was taken, so the values read before are the ones of the
+	 * section the stamp belongs to
+	 */
+	boolean validate(int slot, long stamp)
+	{
+		return this.slotLocks[slot].validate(stamp);
+	}
+
+	short get(int slot, int index)
+	{
+		return this.buffers[slot/SLOTS_PER_BUFFER].getShort(getPosition(slot, index));
+	}
+
+	void put(int slot, int index, short value)
+	{
+		this.buffers[slot/SLOTS_PER_BUFFER].putShort(getPosition(slot, index), value);
+	}
+
+	private static int getPosition(int slot, int index)
+	{
+		return (slot%SLOTS_PER_BUFFER)*SLOT_BYTES+index*2;
+	}
+
+}
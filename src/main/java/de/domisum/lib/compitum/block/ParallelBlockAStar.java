@@ -0,0 +1,265 @@
+package de.domisum.lib.compitum.block;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import de.domisum.lib.compitum.path.node.TransitionType;
+import org.bukkit.Location;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches from the start and from the end at the same time on two threads of a ForkJoinPool. The threads share the
+ * nodes they found and the cost of the best connection found so far, each search stops as soon as it can't find a
+ * shorter connection anymore.
+ * <p>
+ * Unless another BlockAccess is set, the blocks are read from a BlockSnapshot of the chunks along the line between the
+ * start and the end, which is taken on the main thread when the search starts. To keep that snapshot small, the start
+ * and the end can be at most MAX_SNAPSHOT_DISTANCE blocks apart. Stepping the search doesn't visit nodes on the
+ * calling thread, it only checks whether the threads are done.
+ * <p>
+ * The pool doesn't have to run both sides at the same time. Each side knows the first node of the other one, so it
+ * finds a path on its own if the other side doesn't run yet.
+ * <p>
+ * A search which isn't needed anymore should be cancelled, otherwise the threads keep searching until the search ends
+ * by itself.
+ */
+@API
+public class ParallelBlockAStar extends BlockAStar
+{
+
+	// CONSTANTS
+	@API public static final double MAX_SNAPSHOT_DISTANCE = 192; // about 60 chunks along a diagonal line
+	private static final double SNAPSHOT_RADIUS = 32;
+
+	// PROPERTIES
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	// STATUS
+	private final Map<BlockPathNode, BlockPathNode> forwardNodes = new ConcurrentHashMap<>();
+	private final Map<BlockPathNode, BlockPathNode> backwardNodes = new ConcurrentHashMap<>();
+	private final AtomicInteger visitedNodeCount = new AtomicInteger();
+
+	private final Object meetingLock = new Object();
+	private volatile double meetingCost = Double.MAX_VALUE;
+	private BlockPathNode meetingForwardNode;
+	private BlockPathNode meetingBackwardNode;
+
+	private volatile boolean searchEnded = false;
+	private volatile String searchFailure;
+	private CompletableFuture<Void> searchFuture;
+
+
+	// INIT
+	@API public ParallelBlockAStar(Location startLocation, Location endLocation)
+	{
+		super(startLocation, endLocation);
+	}
+
+
+	// GETTERS
+	@Override public int getVisitedNodeCount()
+	{
+		return this.visitedNodeCount.get();
+	}
+
+	@Override public int getUnvisitedNodeCount()
+	{
+		return this.forwardNodes.size()+this.backwardNodes.size()-this.visitedNodeCount.get();
+	}
+
+
+	// SETTERS
+	@API public void setPool(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+
+	// CANCELLATION
+	/**
+	 * Stops the threads of the search. The search finishes without a path on the next step.
+	 */
+	@API public void cancel()
+	{
+		endSearch("The search was cancelled");
+		if(this.searchFuture != null)
+			this.searchFuture.cancel(false);
+	}
+
+
+	// PATHFINDING
+	@Override protected void startSearch()
+	{
+		// a block access set from outside has to be readable from multiple threads itself
+		if(!hasBlockAccess())
+		{
+			Location start = getStartLocation();
+			Location end = this.endNode.getLocation(getWorld());
+
+			double dX = end.getX()-start.getX();
+			double dZ = end.getZ()-start.getZ();
+			if(dX*dX+dZ*dZ > MAX_SNAPSHOT_DISTANCE*MAX_SNAPSHOT_DISTANCE)
+			{
+				this.failure = "Start and end are too far apart for the block snapshot";
+				return;
+			}
+
+			setBlockAccess(BlockSnapshot.ofCorridor(start, end, SNAPSHOT_RADIUS));
+		}
+
+		if(this.startNode.equals(this.endNode) || this.searchEnded)
+			return;
+
+		BlockPathNode backwardStartNode = new BlockPathNode(this.endNode.x, this.endNode.y, this.endNode.z);
+		backwardStartNode.setParent(null, TransitionType.WALK, 0);
+
+		// each side ends by itself when it reaches the first node of the other side, even if the pool has only one free
+		// thread and runs the sides one after the other
+		this.forwardNodes.put(this.startNode, this.startNode);
+		this.backwardNodes.put(backwardStartNode, backwardStartNode);
+
+		ForkJoinTask<?> forwardTask = ForkJoinTask.adapt(()->search(this.startNode, true));
+		ForkJoinTask<?> backwardTask = ForkJoinTask.adapt(()->search(backwardStartNode, false));
+		this.searchFuture = CompletableFuture.runAsync(()->ForkJoinTask.invokeAll(forwardTask, backwardTask), this.pool);
+	}
+
+	@Override protected boolean continueSearch(int maxNodeVisitsInStep, long deadlineNano)
+	{
+		if(this.searchFuture == null)
+		{
+			// cancelled before the search was started
+			if(this.searchEnded && this.failure == null)
+				this.failure = this.searchFailure;
+
+			return true;
+		}
+
+		try
+		{
+			// a step only checks the threads, waiting for them would keep the calling thread busy without doing any work
+			boolean finishSearch = deadlineNano == Long.MAX_VALUE && maxNodeVisitsInStep == Integer.MAX_VALUE;
+			if(!finishSearch && !this.searchFuture.isDone())
+				return false;
+
+			this.searchFuture.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			this.searchEnded = true;
+			this.failure = "Interrupted while waiting for the search";
+			return true;
+		}
+		catch(ExecutionException e)
+		{
+			this.failure = "The search failed: "+e.getCause();
+			return true;
+		}
+		catch(CancellationException e)
+		{
+			this.failure = this.searchFailure;
+			return true;
+		}
+
+		if(this.meetingForwardNode == null)
+			this.failure = this.searchFailure;
+
+		return true;
+	}
+
+	@Override protected BlockPathNode getPathEndNode()
+	{
+		if(this.startNode.equals(this.endNode))
+			return this.startNode;
+
+		if(this.meetingForwardNode == null)
+			return null;
+
+		return joinBackwardChain(this.meetingForwardNode, this.meetingBackwardNode);
+	}
+
+
+	private void search(BlockPathNode firstNode, boolean forward)
+	{
+		Map<BlockPathNode, BlockPathNode> ownNodes = forward ? this.forwardNodes : this.backwardNodes;
+		Map<BlockPathNode, BlockPathNode> otherNodes = forward ? this.backwardNodes : this.forwardNodes;
+
+		// the unvisited nodes are only used by this thread, the shared map is only used to find the meeting nodes
+		BlockAStarFrontier frontier = new BlockAStarFrontier(getMaxNodeVisits());
+		addNode(frontier, ownNodes, otherNodes, firstNode, forward);
+
+		while(!this.searchEnded)
+		{
+			if(frontier.unvisitedNodes.getSize() == 0)
+			{
+				// this side is enclosed, the other side can't find anything either
+				endSearch("No unvisted nodes left");
+				return;
+			}
+
+			// no path through the unvisited nodes of this side can be shorter than the one found already
+			if(frontier.unvisitedNodes.getFirst().getFValue() >= this.meetingCost)
+			{
+				endSearch(null);
+				return;
+			}
+
+			if(this.visitedNodeCount.incrementAndGet() > getMaxNodeVisits())
+			{
+				endSearch("Number of nodes visited exceeds maximum");
+				return;
+			}
+
+			BlockPathNode node = frontier.visitNextNode();
+			List<BlockPathNode> newNodes = forward ? getSuccessorNodes(node) : getPredecessorNodes(node);
+			for(BlockPathNode newNode : newNodes)
+				if(!frontier.contains(newNode))
+					addNode(frontier, ownNodes, otherNodes, newNode, forward);
+		}
+	}
+
+	private void addNode(BlockAStarFrontier frontier, Map<BlockPathNode, BlockPathNode> ownNodes,
+			Map<BlockPathNode, BlockPathNode> otherNodes, BlockPathNode node, boolean forward)
+	{
+		// the backward search estimates the distance still needed to get from the start to the node
+		double distanceEstimate = forward ?
+				getDistanceEstimate(node, this.endNode) :
+				getDistanceEstimate(this.startNode, node);
+		node.setHeuristicWeight(distanceEstimate*getHeuristicImportance());
+
+		frontier.add(node);
+		ownNodes.put(node, node);
+
+		BlockPathNode otherNode = otherNodes.get(node);
+		if(otherNode == null)
+			return;
+
+		double cost = node.getGValue()+otherNode.getGValue();
+		synchronized(this.meetingLock)
+		{
+			if(cost >= this.meetingCost)
+				return;
+
+			this.meetingForwardNode = forward ? node : otherNode;
+			this.meetingBackwardNode = forward ? otherNode : node;
+			this.meetingCost = cost;
+		}
+	}
+
+	private void endSearch(String failure)
+	{
+		if(failure != null)
+			this.searchFailure = failure;
+
+		this.searchEnded = true;
+	}
+
+}
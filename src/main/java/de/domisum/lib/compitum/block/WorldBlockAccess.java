@@ -0,0 +1,33 @@
+package de.domisum.lib.compitum.block;
+
+import org.bukkit.World;
+
+/**
+ * Reads the blocks directly from the world, so it can only be used on the main thread.
+ */
+public class WorldBlockAccess implements BlockAccess
+{
+
+	// REFERENCES
+	private final World world;
+
+
+	// INIT
+	public WorldBlockAccess(World world)
+	{
+		this.world = world;
+	}
+
+
+	// ACCESS
+	@SuppressWarnings("deprecation") @Override public int getTypeId(int x, int y, int z)
+	{
+		return this.world.getBlockAt(x, y, z).getTypeId();
+	}
+
+	@SuppressWarnings("deprecation") @Override public int getData(int x, int y, int z)
+	{
+		return this.world.getBlockAt(x, y, z).getData();
+	}
+
+}
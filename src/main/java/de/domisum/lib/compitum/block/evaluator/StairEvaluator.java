@@ -21,6 +21,7 @@ public class StairEvaluator
 	 * 3: -z
 	 */
 	private static boolean[][][] isStair; // <id, subId, direction>
+	private static int[][] directionBits; // <id, subId>, the directions as bits
 
 	// STATUS
 	private static boolean ready = false;
@@ -88,6 +89,13 @@ public class StairEvaluator
 				isStair[mat.getId()] = noneForEverySubId;
 		}
 
+		directionBits = new int[maxId+1][subIds];
+		for(int id = 0; id <= maxId; id++)
+			for(int subId = 0; subId < subIds; subId++)
+				for(int direction = 0; direction < 4; direction++)
+					if(isStair[id][subId][direction])
+						directionBits[id][subId] |= 1<<direction;
+
 		ready = true;
 	}
 
@@ -100,20 +108,40 @@ public class StairEvaluator
 
 		Location stairLocation = to.getLocation(world).add(0, -1, 0);
 		Block stairBlock = stairLocation.getBlock();
-		int stairBlockTypeId = stairBlock.getType().getId();
-		int stairBlockSubId = stairBlock.getData();
 
-		boolean[] directions = isStair[stairBlockTypeId][stairBlockSubId];
+		return isStair(from, to, stairBlock.getType().getId(), stairBlock.getData());
+	}
+
+	public static boolean isStair(BlockPathNode from, BlockPathNode to, int stairBlockTypeId, int stairBlockSubId)
+	{
+		return isStair(from, to, getDirectionBits(stairBlockTypeId, stairBlockSubId));
+	}
+
+	/**
+	 * @param stairBlockTypeId the type id of the block
+	 * @param stairBlockSubId  the data of the block
+	 * @return the directions in which the block can be walked up, as bits in the order of the directions above
+	 */
+	public static int getDirectionBits(int stairBlockTypeId, int stairBlockSubId)
+	{
+		if(!ready)
+			throw new IllegalStateException("CompitumLib has to be enabled before usage!");
+
+		return directionBits[stairBlockTypeId][stairBlockSubId];
+	}
+
+	public static boolean isStair(BlockPathNode from, BlockPathNode to, int directionBits)
+	{
 		int dX = to.x-from.x;
 		int dZ = to.z-from.z;
 
-		if(dX == 1 && directions[0])
+		if(dX == 1 && (directionBits&1) != 0)
 			return true;
-		if(dZ == 1 && directions[1])
+		if(dZ == 1 && (directionBits&2) != 0)
 			return true;
-		if(dX == -1 && directions[2])
+		if(dX == -1 && (directionBits&4) != 0)
 			return true;
-		if(dZ == -1 && directions[3])
+		if(dZ == -1 && (directionBits&8) != 0)
 			return true;
 
 		return false;
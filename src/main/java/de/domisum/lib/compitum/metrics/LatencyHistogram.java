@@ -0,0 +1,100 @@
+package de.domisum.lib.compitum.metrics;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts durations in buckets which double in size, so recording is a single increment and the memory doesn't grow with
+ * the number of recorded values. Percentiles are only accurate to the bucket size, which is enough to see trends.
+ */
+@API
+public class LatencyHistogram
+{
+
+	// CONSTANTS
+	private static final int BUCKET_COUNT = 64; // bucket i contains durations in [2^(i-1), 2^i)
+
+	// STATUS
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sumNano = new LongAdder();
+
+
+	// GETTERS
+	@API public long getCount()
+	{
+		return this.count.sum();
+	}
+
+	@API public double getMeanNano()
+	{
+		long count = getCount();
+		return count == 0 ? 0 : this.sumNano.sum()/(double) count;
+	}
+
+	/**
+	 * Returns the upper end of the bucket which contains the given percentile.
+	 *
+	 * @param percentile the percentile in [0;1]
+	 * @return the upper bound of the percentile in nanoseconds, 0 if nothing was recorded
+	 */
+	@API public long getPercentileNano(double percentile)
+	{
+		long[] bucketCounts = getBucketCounts();
+		long total = 0;
+		for(long bucketCount : bucketCounts)
+			total += bucketCount;
+
+		if(total == 0)
+			return 0;
+
+		long rank = (long) Math.ceil(percentile*total);
+		long seen = 0;
+		for(int i = 0; i < bucketCounts.length; i++)
+		{
+			seen += bucketCounts[i];
+			if(seen >= rank && seen > 0)
+				return getBucketUpperBound(i);
+		}
+
+		return Long.MAX_VALUE;
+	}
+
+	@API public long[] getBucketCounts()
+	{
+		long[] bucketCounts = new long[BUCKET_COUNT];
+		for(int i = 0; i < BUCKET_COUNT; i++)
+			bucketCounts[i] = this.buckets.get(i);
+
+		return bucketCounts;
+	}
+
+	@API public static long getBucketUpperBound(int bucket)
+	{
+		return bucket >= BUCKET_COUNT-1 ? Long.MAX_VALUE : 1L<<bucket;
+	}
+
+
+	// RECORDING
+	@API public void record(long nanos)
+	{
+		long value = Math.max(nanos, 0);
+		int bucket = Math.min(64-Long.numberOfLeadingZeros(value), BUCKET_COUNT-1);
+
+		this.buckets.incrementAndGet(bucket);
+		this.count.increment();
+		this.sumNano.add(value);
+	}
+
+	@API public void reset()
+	{
+		for(int i = 0; i < BUCKET_COUNT; i++)
+			this.buckets.set(i, 0);
+
+		this.count.reset();
+		this.sumNano.reset();
+	}
+
+}
@@ -0,0 +1,101 @@
+package de.domisum.lib.compitum.metrics;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the stats of all pathfindings into counters and latency histograms, which can be polled by other plugins
+ * to export them to a monitoring system. Recording only increments existing counters, so it can stay enabled all the
+ * time. All methods can be called from any thread.
+ */
+@API
+public class PathfindingMetrics
+{
+
+	// STATUS
+	private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+	private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+
+	// GETTERS
+	/**
+	 * @return the current values of all counters, sorted by name
+	 */
+	@API public Map<String, Long> getCounters()
+	{
+		Map<String, Long> values = new TreeMap<>();
+		for(Map.Entry<String, LongAdder> entry : this.counters.entrySet())
+			values.put(entry.getKey(), entry.getValue().sum());
+
+		return values;
+	}
+
+	@API public long getCounter(String name)
+	{
+		LongAdder counter = this.counters.get(name);
+		return counter == null ? 0 : counter.sum();
+	}
+
+	@API public Set<String> getHistogramNames()
+	{
+		return Collections.unmodifiableSet(new TreeMap<>(this.histograms).keySet());
+	}
+
+	@API public LatencyHistogram getHistogram(String name)
+	{
+		return this.histograms.get(name);
+	}
+
+
+	// RECORDING
+	/**
+	 * Adds the stats of a finished pathfinding. The counters and histograms are named after the pathfinder, e.g.
+	 * "block.requests" or "navMesh.total".
+	 *
+	 * @param stats the stats of the pathfinding
+	 */
+	@API public void record(PathfindingStats stats)
+	{
+		String prefix = stats.getPathfinderName()+".";
+
+		addToCounter(prefix+"requests", 1);
+		if(stats.isPathFound())
+			addToCounter(prefix+"found", 1);
+		if(stats.isPathPartial())
+			addToCounter(prefix+"partial", 1);
+
+		addToCounter(prefix+"visitedNodes", stats.getVisitedNodes());
+		addToCounter(prefix+"blockLookups", stats.getBlockLookups());
+		addToCounter(prefix+"cacheHits", stats.getCacheHits());
+
+		for(Map.Entry<String, Long> entry : stats.getPhaseNanos().entrySet())
+			recordLatency(prefix+entry.getKey(), entry.getValue());
+		recordLatency(prefix+"total", stats.getTotalNanos());
+	}
+
+	@API public void addToCounter(String name, long value)
+	{
+		this.counters.computeIfAbsent(name, n->new LongAdder()).add(value);
+	}
+
+	@API public void recordLatency(String name, long nanos)
+	{
+		this.histograms.computeIfAbsent(name, n->new LatencyHistogram()).record(nanos);
+	}
+
+	@API public void reset()
+	{
+		for(LongAdder counter : this.counters.values())
+			counter.reset();
+
+		for(LatencyHistogram histogram : this.histograms.values())
+			histogram.reset();
+	}
+
+}
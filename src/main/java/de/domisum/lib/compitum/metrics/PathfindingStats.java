@@ -0,0 +1,149 @@
+package de.domisum.lib.compitum.metrics;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The cost of one pathfinding: how many nodes were processed, how many blocks were read and how long each phase took.
+ */
+@API
+public class PathfindingStats
+{
+
+	// PROPERTIES
+	private final String pathfinderName;
+
+	// STATUS
+	private boolean pathFound;
+	private boolean pathPartial;
+
+	private int visitedNodes;
+	private int openSetPeak;
+	private long blockLookups;
+	private long cacheHits;
+
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<>(); // <phase, duration>
+
+
+	// INIT
+	public PathfindingStats(String pathfinderName)
+	{
+		this.pathfinderName = pathfinderName;
+	}
+
+	@Override public String toString()
+	{
+		String string = "pathfinder="+this.pathfinderName+", ";
+		string += "found="+this.pathFound+", ";
+		if(this.pathPartial)
+			string += "partial=true, ";
+
+		string += "visitedNodes="+this.visitedNodes+", ";
+		string += "openSetPeak="+this.openSetPeak+", ";
+		string += "blockLookups="+this.blockLookups+", ";
+		string += "cacheHits="+this.cacheHits+", ";
+		for(Map.Entry<String, Long> entry : this.phaseNanos.entrySet())
+			string += entry.getKey()+"Nanos="+entry.getValue()+", ";
+
+		return string;
+	}
+
+
+	// GETTERS
+	@API public String getPathfinderName()
+	{
+		return this.pathfinderName;
+	}
+
+	@API public boolean isPathFound()
+	{
+		return this.pathFound;
+	}
+
+	@API public boolean isPathPartial()
+	{
+		return this.pathPartial;
+	}
+
+	@API public int getVisitedNodes()
+	{
+		return this.visitedNodes;
+	}
+
+	@API public int getOpenSetPeak()
+	{
+		return this.openSetPeak;
+	}
+
+	/**
+	 * @return the number of walkability queries of the search, a query reads up to three blocks (e.g. whether an agent
+	 * can stand at a position)
+	 */
+	@API public long getBlockLookups()
+	{
+		return this.blockLookups;
+	}
+
+	/**
+	 * @return the number of blocks read from a cache instead of the world
+	 */
+	@API public long getCacheHits()
+	{
+		return this.cacheHits;
+	}
+
+	@API public Map<String, Long> getPhaseNanos()
+	{
+		return Collections.unmodifiableMap(this.phaseNanos);
+	}
+
+	@API public long getTotalNanos()
+	{
+		long totalNanos = 0;
+		for(long nanos : this.phaseNanos.values())
+			totalNanos += nanos;
+
+		return totalNanos;
+	}
+
+
+	// SETTERS
+	public void setPathFound(boolean pathFound)
+	{
+		this.pathFound = pathFound;
+	}
+
+	public void setPathPartial(boolean pathPartial)
+	{
+		this.pathPartial = pathPartial;
+	}
+
+	public void setVisitedNodes(int visitedNodes)
+	{
+		this.visitedNodes = visitedNodes;
+	}
+
+	public void setOpenSetPeak(int openSetPeak)
+	{
+		this.openSetPeak = openSetPeak;
+	}
+
+	public void setBlockLookups(long blockLookups)
+	{
+		this.blockLookups = blockLookups;
+	}
+
+	public void setCacheHits(long cacheHits)
+	{
+		this.cacheHits = cacheHits;
+	}
+
+	public void addPhaseNanos(String phase, long nanos)
+	{
+		this.phaseNanos.merge(phase, nanos, Long::sum);
+	}
+
+}
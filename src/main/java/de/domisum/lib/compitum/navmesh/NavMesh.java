@@ -5,19 +5,30 @@ import de.domisum.lib.auxilium.data.container.math.Vector3D;
 import de.domisum.lib.auxilium.util.java.annotations.API;
 import de.domisum.lib.auxilium.util.keys.Base64Key;
 import de.domisum.lib.auxiliumspigot.util.LocationUtil;
+import de.domisum.lib.compitum.CompitumLib;
 import de.domisum.lib.compitum.navmesh.geometry.NavMeshPoint;
 import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
+import de.domisum.lib.compitum.navmesh.pathfinding.NavMeshFlowField;
+import de.domisum.lib.compitum.navmesh.pathfinding.NavMeshLandmarks;
 import de.domisum.lib.compitum.navmesh.transition.NavMeshLadder;
 import de.domisum.lib.compitum.navmesh.transition.NavMeshTrianglePortal;
+import de.domisum.lib.compitum.navmesh.transition.NavMeshTriangleTransition;
 import org.bukkit.Location;
 import org.bukkit.World;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.stream.IntStream;
 
 public class NavMesh
 {
@@ -25,6 +36,11 @@ public class NavMesh
 	// CONSTANTS
 	private static final int KEY_LENGTH = 5;
 
+	private static final int HEURISTIC_CENTER_ITERATIONS = 20;
+	private static final double HEURISTIC_CENTER_FACTOR = 0.1;
+	private static final int HEURISTIC_CENTER_EDIT_RADIUS = 2; // neighbor steps around an edit that are relaxed again
+	private static final int PARALLEL_RELAXATION_THRESHOLD = 1024;
+
 	// PROPERTIES
 	private String id;
 	private Vector3D rangeCenter;
@@ -32,8 +48,13 @@ public class NavMesh
 
 	// REFERENCES
 	private World world;
-	private Map<String, NavMeshPoint> points = new HashMap<>(); // <id, point>
-	private Map<String, NavMeshTriangle> triangles = new HashMap<>(); // <id, triangle>
+	// the maps are replaced instead of changed, so they can be read from other threads without locking
+	private volatile Map<String, NavMeshPoint> points = Collections.emptyMap(); // <id, point>
+	private volatile Map<String, NavMeshTriangle> triangles = Collections.emptyMap(); // <id, triangle>
+
+	// STATUS
+	private volatile NavMeshSnapshot snapshot;
+	private final AtomicBoolean selectingLandmarks = new AtomicBoolean();
 
 
 	// INIT
@@ -45,13 +66,27 @@ public class NavMesh
 		this.range = range;
 
 		this.world = world;
+
+		Map<String, NavMeshPoint> pointMap = new HashMap<>();
 		for(NavMeshPoint p : points)
-			this.points.put(p.getId(), p);
+			pointMap.put(p.getId(), p);
+		this.points = Collections.unmodifiableMap(pointMap);
+
+		Map<String, NavMeshTriangle> triangleMap = new HashMap<>();
 		for(NavMeshTriangle t : triangles)
-			this.triangles.put(t.id, t);
+			triangleMap.put(t.id, t);
+		this.triangles = Collections.unmodifiableMap(triangleMap);
+
+		linkNeighbors(this.triangles.values());
 
-		fillInNeighbors();
-		determineHeuristicTriangleCenters();
+		// heuristic centers loaded from the file are kept, only new triangles have to be relaxed
+		Set<NavMeshTriangle> trianglesWithoutHeuristicCenter = new HashSet<>();
+		for(NavMeshTriangle triangle : this.triangles.values())
+			if(!triangle.hasHeuristicCenter())
+				trianglesWithoutHeuristicCenter.add(triangle);
+
+		determineHeuristicTriangleCenters(trianglesWithoutHeuristicCenter);
+		publishSnapshot();
 	}
 
 
@@ -121,56 +156,115 @@ public class NavMesh
 		return this.triangles.get(id);
 	}
 
+	/**
+	 * Returns the current version of the triangles and their connections. Pathfinding should use one snapshot from
+	 * start to end, it stays unchanged while the mesh is edited.
+	 *
+	 * @return the current snapshot of this mesh
+	 */
+	@API public NavMeshSnapshot getSnapshot()
+	{
+		return this.snapshot;
+	}
+
+	/**
+	 * Returns the landmarks of the current snapshot. If the mesh was changed since they were last selected, they are
+	 * selected again in the background and the landmarks of an earlier snapshot are returned until then.
+	 *
+	 * @return the landmarks of this mesh, null if none were selected yet
+	 */
+	public NavMeshLandmarks getLandmarks()
+	{
+		return this.snapshot.getLandmarks();
+	}
+
+	/**
+	 * Returns the flow field towards the given target triangle on the current snapshot. The flow fields are kept until
+	 * the mesh is changed, so many agents heading to the same target share one calculation.
+	 *
+	 * @param targetTriangle the triangle the flow field leads to
+	 * @return the flow field towards the target triangle
+	 */
+	@API public NavMeshFlowField getFlowField(NavMeshTriangle targetTriangle)
+	{
+		return this.snapshot.getFlowField(targetTriangle);
+	}
+
 	public NavMeshTriangle getTriangleAt(Location location)
 	{
 		// TODO optimize this, might become bottleneck with thousands of triangles
 
-		for(NavMeshTriangle triangle : this.triangles.values())
-			if(triangle.doesContain(location))
-				return triangle;
+		return this.snapshot.getTriangleAt(location);
+	}
 
-		return null;
+
+	// SETTERS
+	public synchronized void setLandmarks(NavMeshLandmarks landmarks)
+	{
+		// landmarks which don't match the triangles (e.g. from an outdated file) are selected again on next use
+		if(!landmarks.isValidFor(getTriangles()))
+			return;
+
+		this.snapshot.setLandmarks(landmarks);
 	}
 
 
 	// POINT
-	@API public NavMeshPoint createPoint(double x, double y, double z)
+	@API public synchronized NavMeshPoint createPoint(double x, double y, double z)
 	{
 		NavMeshPoint point = new NavMeshPoint(getUnusedId(), x, y, z);
 
-		this.points.put(point.getId(), point);
+		Map<String, NavMeshPoint> newPoints = new HashMap<>(this.points);
+		newPoints.put(point.getId(), point);
+		this.points = Collections.unmodifiableMap(newPoints);
+
 		return point;
 	}
 
-	@API public void removePoint(NavMeshPoint point)
+	@API public synchronized void removePoint(NavMeshPoint point)
 	{
 		for(NavMeshTriangle t : getTrianglesUsingPoint(point))
 			deleteTriangle(t);
 
-		this.points.remove(point.getId());
+		Map<String, NavMeshPoint> newPoints = new HashMap<>(this.points);
+		newPoints.remove(point.getId());
+		this.points = Collections.unmodifiableMap(newPoints);
 	}
 
 
 	// TRIANGLE
-	@API public NavMeshTriangle createTriangle(NavMeshPoint point1, NavMeshPoint point2, NavMeshPoint point3)
+	@API public synchronized NavMeshTriangle createTriangle(NavMeshPoint point1, NavMeshPoint point2, NavMeshPoint point3)
 	{
 		NavMeshTriangle triangle = new NavMeshTriangle(getUnusedId(), point1, point2, point3);
-		this.triangles.put(triangle.id, triangle);
+
+		Map<String, NavMeshTriangle> newTriangles = new HashMap<>(this.triangles);
+		newTriangles.put(triangle.id, triangle);
+		this.triangles = Collections.unmodifiableMap(newTriangles);
 
 		fillInNeighborsFor(triangle);
+		updateHeuristicTriangleCentersAround(triangle);
+		publishSnapshot();
 
 		return triangle;
 	}
 
-	@API public void deleteTriangle(NavMeshTriangle triangle)
+	@API public synchronized void deleteTriangle(NavMeshTriangle triangle)
 	{
-		this.triangles.remove(triangle.id);
+		Set<NavMeshTriangle> formerNeighbors = new HashSet<>(triangle.getNeighbors().keySet());
+
+		Map<String, NavMeshTriangle> newTriangles = new HashMap<>(this.triangles);
+		newTriangles.remove(triangle.id);
+		this.triangles = Collections.unmodifiableMap(newTriangles);
 		triangle.clearNeighbors();
+
+		for(NavMeshTriangle formerNeighbor : formerNeighbors)
+			updateHeuristicTriangleCentersAround(formerNeighbor);
+		publishSnapshot();
 	}
 
 
 	// LADDER
-	@API public void createLadder(NavMeshTriangle triangle1, Vector3D position1, NavMeshTriangle triangle2,
+	@API public synchronized void createLadder(NavMeshTriangle triangle1, Vector3D position1, NavMeshTriangle triangle2,
 			Vector3D position2, Direction2D ladderDirection)
 	{
 		NavMeshLadder ladder;
@@ -180,19 +274,143 @@ public class NavMesh
 			ladder = new NavMeshLadder(triangle2, position2, triangle1, position1, ladderDirection);
 
 		triangle1.makeNeighbors(triangle2, ladder);
+		updateHeuristicTriangleCentersAround(triangle1);
+		updateHeuristicTriangleCentersAround(triangle2);
+		publishSnapshot();
 	}
 
-	@API public void removeLadder(NavMeshLadder ladder)
+	/**
+	 * Adds a ladder loaded together with the heuristic centers of the triangles, so the centers are not changed.
+	 *
+	 * @param ladder the loaded ladder
+	 */
+	public synchronized void addLoadedLadder(NavMeshLadder ladder)
+	{
+		ladder.getTriangleBottom().makeNeighbors(ladder.getTriangleTop(), ladder);
+		publishSnapshot();
+	}
+
+	@API public synchronized void removeLadder(NavMeshLadder ladder)
 	{
 		ladder.getTriangleBottom().removeNeighbor(ladder.getTriangleTop());
+		updateHeuristicTriangleCentersAround(ladder.getTriangleBottom());
+		updateHeuristicTriangleCentersAround(ladder.getTriangleTop());
+		publishSnapshot();
+	}
+
+
+	// BULK EDIT
+	/**
+	 * Replaces a part of the mesh in one step, so pathfinding only ever sees the mesh before or after the replacement.
+	 * Snapshots published before keep the removed triangles and their connections, since they copy the neighbors of
+	 * the triangles. The neighbors of the added triangles are only searched among the added triangles and the given
+	 * candidates.
+	 * <p>
+	 * The points of the removed triangles are removed as well, unless an added triangle or a candidate uses them.
+	 *
+	 * @param removedTriangles   the triangles to remove
+	 * @param addedTriangles     the triangles to add
+	 * @param addedLadders       the ladders to add, between added triangles or between added triangles and candidates
+	 * @param neighborCandidates the triangles which can be neighbors of the added triangles
+	 */
+	protected synchronized void replaceTriangles(Collection<NavMeshTriangle> removedTriangles,
+			Collection<NavMeshTriangle> addedTriangles, Collection<NavMeshLadder> addedLadders,
+			Collection<NavMeshTriangle> neighborCandidates)
+	{
+		for(NavMeshTriangle triangle : removedTriangles)
+			triangle.clearNeighbors();
+
+		Map<String, NavMeshTriangle> newTriangles = new HashMap<>(this.triangles);
+		for(NavMeshTriangle triangle : removedTriangles)
+			newTriangles.remove(triangle.id);
+		for(NavMeshTriangle triangle : addedTriangles)
+			newTriangles.put(triangle.id, triangle);
+		this.triangles = Collections.unmodifiableMap(newTriangles);
+
+		Map<String, NavMeshPoint> newPoints = new HashMap<>(this.points);
+		for(NavMeshTriangle triangle : removedTriangles)
+			for(NavMeshPoint point : getPoints(triangle))
+				newPoints.remove(point.getId());
+		List<NavMeshTriangle> trianglesToLink = new ArrayList<>(addedTriangles);
+		trianglesToLink.addAll(neighborCandidates);
+		for(NavMeshTriangle triangle : trianglesToLink)
+			for(NavMeshPoint point : getPoints(triangle))
+				newPoints.put(point.getId(), point);
+		this.points = Collections.unmodifiableMap(newPoints);
+
+		linkNeighbors(trianglesToLink);
+		for(NavMeshLadder ladder : addedLadders)
+			if(!ladder.getTriangleBottom().getNeighbors().containsKey(ladder.getTriangleTop()))
+				ladder.getTriangleBottom().makeNeighbors(ladder.getTriangleTop(), ladder);
+
+		Set<NavMeshTriangle> trianglesToRelax = new HashSet<>(addedTriangles);
+		for(NavMeshTriangle triangle : addedTriangles)
+			trianglesToRelax.addAll(triangle.getNeighbors().keySet());
+		determineHeuristicTriangleCenters(trianglesToRelax);
+		publishSnapshot();
 	}
 
 
 	// PATHFINDING
-	private void fillInNeighbors()
+	private void publishSnapshot()
 	{
-		for(NavMeshTriangle triangle : this.triangles.values())
-			fillInNeighborsFor(triangle);
+		// the landmarks and flow fields of the old snapshot don't fit the new connections, the new one calculates them
+		// again when they are needed and uses the old landmarks until then
+		this.snapshot = new NavMeshSnapshot(this, this.snapshot, this.triangles);
+	}
+
+	/**
+	 * Selects the landmarks of the snapshot on another thread. Only one selection runs at a time, snapshots which are
+	 * used while it runs start their own selection on their next use after it.
+	 */
+	void selectLandmarks(NavMeshSnapshot snapshot)
+	{
+		if(!this.selectingLandmarks.compareAndSet(false, true))
+			return;
+
+		CompletableFuture.supplyAsync(()->NavMeshLandmarks.select(snapshot)).whenComplete((landmarks, throwable)->
+		{
+			this.selectingLandmarks.set(false);
+			if(throwable != null)
+			{
+				CompitumLib.getLogger()
+						.log(Level.WARNING, "Failed to select the landmarks of NavMesh '"+getId()+"'", throwable);
+				return;
+			}
+
+			snapshot.setLandmarks(landmarks);
+			// snapshots published during the selection are closer to these landmarks than to the ones they inherited
+			this.snapshot.inheritLandmarks(landmarks);
+		});
+	}
+
+	/**
+	 * Makes all of the given triangles which have two common points and aren't connected yet neighbors.
+	 */
+	private void linkNeighbors(Collection<NavMeshTriangle> trianglesToLink)
+	{
+		// triangles with two common points share an edge, so only the triangles along the same edge have to be compared
+		Map<String, List<NavMeshTriangle>> trianglesByEdge = new HashMap<>();
+		for(NavMeshTriangle triangle : trianglesToLink)
+			for(String edgeKey : getEdgeKeys(triangle))
+				trianglesByEdge.computeIfAbsent(edgeKey, k->new ArrayList<>()).add(triangle);
+
+		for(List<NavMeshTriangle> edgeTriangles : trianglesByEdge.values())
+			for(int i = 0; i < edgeTriangles.size(); i++)
+				for(int j = i+1; j < edgeTriangles.size(); j++)
+				{
+					NavMeshTriangle triangle1 = edgeTriangles.get(i);
+					NavMeshTriangle triangle2 = edgeTriangles.get(j);
+					if(triangle1.getNeighbors().containsKey(triangle2))
+						continue;
+
+					Set<NavMeshPoint> commonPoints = getCommonPoints(triangle1, triangle2);
+					if(commonPoints.size() != 2)
+						continue;
+
+					NavMeshTrianglePortal portal = new NavMeshTrianglePortal(triangle1, triangle2, commonPoints);
+					triangle1.makeNeighbors(triangle2, portal);
+				}
 	}
 
 	private void fillInNeighborsFor(NavMeshTriangle triangle)
@@ -213,33 +431,86 @@ public class NavMesh
 	}
 
 
-	private void determineHeuristicTriangleCenters()
+	private void updateHeuristicTriangleCentersAround(NavMeshTriangle triangle)
 	{
-		for(int i = 0; i < 20; i++)
-			reduceHeuristicCenterDistances(0.1);
+		Set<NavMeshTriangle> trianglesAround = new HashSet<>();
+		trianglesAround.add(triangle);
+
+		Set<NavMeshTriangle> border = new HashSet<>(trianglesAround);
+		for(int i = 0; i < HEURISTIC_CENTER_EDIT_RADIUS; i++)
+		{
+			Set<NavMeshTriangle> newBorder = new HashSet<>();
+			for(NavMeshTriangle t : border)
+				for(NavMeshTriangle neighbor : t.getNeighbors().keySet())
+					if(trianglesAround.add(neighbor))
+						newBorder.add(neighbor);
+
+			border = newBorder;
+		}
+
+		// triangles that were deleted in the meantime are not part of the mesh anymore
+		trianglesAround.removeIf(t->!this.triangles.containsKey(t.id));
+		determineHeuristicTriangleCenters(trianglesAround);
 	}
 
-	private void reduceHeuristicCenterDistances(double factor)
+	private void determineHeuristicTriangleCenters(Collection<NavMeshTriangle> trianglesToRelax)
 	{
-		for(NavMeshTriangle triangle : this.triangles.values())
-		{
-			Set<NavMeshTriangle> neighbors = triangle.neighbors.keySet();
-			if(neighbors.size() <= 1)
-				continue;
+		if(trianglesToRelax.isEmpty())
+			return;
 
-			Vector3D neighborSum = new Vector3D();
-			for(NavMeshTriangle n : neighbors)
-				neighborSum = neighborSum.add(n.getHeuristicCenter());
+		List<NavMeshTriangle> triangleList = new ArrayList<>(trianglesToRelax);
+		for(int i = 0; i < HEURISTIC_CENTER_ITERATIONS; i++)
+			reduceHeuristicCenterDistances(triangleList, HEURISTIC_CENTER_FACTOR);
 
-			Vector3D neighborAverage = neighborSum.divide(neighbors.size());
-			Vector3D currentHeuristicCenter = triangle.getHeuristicCenter();
-			Vector3D fromCurrentToAverage = neighborAverage.subtract(currentHeuristicCenter);
+		for(NavMeshTriangle triangle : triangleList)
+			for(NavMeshTriangleTransition transition : triangle.getNeighbors().values())
+				if(transition instanceof NavMeshTrianglePortal)
+					((NavMeshTrianglePortal) transition).resetWeight();
+	}
 
-			Vector3D newHeuristicCenter = currentHeuristicCenter
-					.moveTowards(neighborAverage, fromCurrentToAverage.length()*factor);
-			if(triangle.doesContain(newHeuristicCenter))
-				triangle.setHeuristicCenter(newHeuristicCenter);
+	private void reduceHeuristicCenterDistances(List<NavMeshTriangle> triangles, double factor)
+	{
+		// all new centers are calculated from the current ones before any of them is changed (jacobi style),
+		// this way the triangles don't depend on each other and large meshes can be processed in parallel
+		Vector3D[] newHeuristicCenters = new Vector3D[triangles.size()];
+
+		IntStream indices = IntStream.range(0, triangles.size());
+		if(triangles.size() >= PARALLEL_RELAXATION_THRESHOLD)
+			indices = indices.parallel();
+		indices.forEach(i->newHeuristicCenters[i] = getReducedHeuristicCenter(triangles.get(i), factor));
+
+		for(int i = 0; i < triangles.size(); i++)
+			if(newHeuristicCenters[i] != null)
+				triangles.get(i).setHeuristicCenter(newHeuristicCenters[i]);
+	}
+
+	private Vector3D getReducedHeuristicCenter(NavMeshTriangle triangle, double factor)
+	{
+		Set<NavMeshTriangle> neighbors = triangle.getNeighbors().keySet();
+		if(neighbors.size() <= 1)
+			return null;
+
+		double neighborSumX = 0;
+		double neighborSumY = 0;
+		double neighborSumZ = 0;
+		for(NavMeshTriangle n : neighbors)
+		{
+			Vector3D neighborHeuristicCenter = n.getHeuristicCenter();
+			neighborSumX += neighborHeuristicCenter.x;
+			neighborSumY += neighborHeuristicCenter.y;
+			neighborSumZ += neighborHeuristicCenter.z;
 		}
+
+		// move the center the given fraction of the way towards the average of the neighbors
+		Vector3D currentHeuristicCenter = triangle.getHeuristicCenter();
+		double newX = currentHeuristicCenter.x+(neighborSumX/neighbors.size()-currentHeuristicCenter.x)*factor;
+		double newY = currentHeuristicCenter.y+(neighborSumY/neighbors.size()-currentHeuristicCenter.y)*factor;
+		double newZ = currentHeuristicCenter.z+(neighborSumZ/neighbors.size()-currentHeuristicCenter.z)*factor;
+
+		if(!triangle.doesContain(newX, newY, newZ))
+			return null;
+
+		return new Vector3D(newX, newY, newZ);
 	}
 
 
@@ -254,6 +525,24 @@ public class NavMesh
 		return id;
 	}
 
+	private NavMeshPoint[] getPoints(NavMeshTriangle triangle)
+	{
+		return new NavMeshPoint[] {triangle.point1, triangle.point2, triangle.point3};
+	}
+
+	private String[] getEdgeKeys(NavMeshTriangle triangle)
+	{
+		return new String[] {getEdgeKey(triangle.point1, triangle.point2), getEdgeKey(triangle.point2, triangle.point3),
+				getEdgeKey(triangle.point3, triangle.point1)};
+	}
+
+	private String getEdgeKey(NavMeshPoint point1, NavMeshPoint point2)
+	{
+		String id1 = point1.getId();
+		String id2 = point2.getId();
+		return id1.compareTo(id2) < 0 ? id1+"/"+id2 : id2+"/"+id1;
+	}
+
 	private Set<NavMeshPoint> getCommonPoints(NavMeshTriangle triangle1, NavMeshTriangle triangle2)
 	{
 		NavMeshPoint[] triangle1Points = new NavMeshPoint[] {triangle1.point1, triangle1.point2, triangle1.point3};
@@ -1,12 +1,14 @@
 package de.domisum.lib.compitum.navmesh;
 
 import de.domisum.lib.auxilium.util.FileUtil;
+import de.domisum.lib.auxilium.util.java.annotations.API;
 import de.domisum.lib.auxilium.util.json.GsonUtil;
 import de.domisum.lib.compitum.CompitumLib;
 import de.domisum.lib.compitum.navmesh.json.SerializationNavMesh;
 import org.bukkit.Location;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -18,7 +20,8 @@ public class NavMeshManager
 	private static final String NAV_MESH_FILE_EXTENSION = ".navMesh.json";
 
 	// REFERENCES
-	private Set<NavMesh> meshes = new HashSet<>();
+	// replaced instead of changed, so meshes can be registered while other threads look up meshes
+	private volatile Set<NavMesh> meshes = Collections.emptySet();
 
 
 	/*
@@ -32,6 +35,10 @@ public class NavMeshManager
 	public void terminate()
 	{
 		// don't save the meshes by default
+
+		for(NavMesh navMesh : this.meshes)
+			if(navMesh instanceof TiledNavMesh)
+				((TiledNavMesh) navMesh).stopRebuilding();
 	}
 
 
@@ -64,7 +71,7 @@ public class NavMeshManager
 			{
 				SerializationNavMesh serializationNavMesh = GsonUtil.get().fromJson(content, SerializationNavMesh.class);
 				navMesh = serializationNavMesh.convertToNavMesh(navMeshId);
-				this.meshes.add(navMesh);
+				registerNavMesh(navMesh);
 
 				CompitumLib
 						.getLogger()
@@ -121,4 +128,26 @@ public class NavMeshManager
 	}
 
 
+	// SETTERS
+	/**
+	 * Adds a NavMesh which wasn't loaded from a file (e.g. a generated one), so it is used for pathfinding and saved
+	 * with the other meshes.
+	 *
+	 * @param navMesh the NavMesh to add
+	 */
+	@API public synchronized void registerNavMesh(NavMesh navMesh)
+	{
+		Set<NavMesh> newMeshes = new HashSet<>(this.meshes);
+		newMeshes.add(navMesh);
+		this.meshes = Collections.unmodifiableSet(newMeshes);
+	}
+
+	@API public synchronized void unregisterNavMesh(NavMesh navMesh)
+	{
+		Set<NavMesh> newMeshes = new HashSet<>(this.meshes);
+		newMeshes.remove(navMesh);
+		this.meshes = Collections.unmodifiableSet(newMeshes);
+	}
+
+
 }
@@ -0,0 +1,201 @@
+package de.domisum.lib.compitum.navmesh;
+
+import de.domisum.lib.auxilium.data.container.math.Vector3D;
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
+import de.domisum.lib.compitum.navmesh.pathfinding.NavMeshFlowField;
+import de.domisum.lib.compitum.navmesh.pathfinding.NavMeshLandmarks;
+import de.domisum.lib.compitum.navmesh.transition.NavMeshTrianglePortal;
+import de.domisum.lib.compitum.navmesh.transition.NavMeshTriangleTransition;
+import org.bukkit.Location;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable version of the triangles of a NavMesh and their connections. Every edit of the NavMesh publishes a new
+ * snapshot, pathfinding started on one snapshot keeps using it, so it can run on any thread without locking the mesh.
+ * <p>
+ * The triangle objects are shared between the snapshots, only their neighbors and heuristic centers are copied when
+ * the snapshot is published. The getters of the triangles always return the current ones, so pathfinding has to read
+ * them through the snapshot. Triangles added by later edits are not part of the snapshot and have no neighbors in it.
+ * <p>
+ * The landmarks and flow fields depend on the connections, so they are calculated and cached per snapshot. The
+ * landmarks are selected in the background, until then the ones of the previous snapshot are used.
+ */
+@API
+public class NavMeshSnapshot
+{
+
+	// CONSTANTS
+	private static final int MAX_CACHED_FLOW_FIELDS = 16;
+
+	// PROPERTIES
+	private final long version;
+
+	// REFERENCES
+	private final NavMesh navMesh;
+	private final Map<String, NavMeshTriangle> triangles; // <id, triangle>
+	private final Map<NavMeshTriangle, Map<NavMeshTriangle, NavMeshTriangleTransition>> neighbors;
+	private final Map<NavMeshTriangle, Vector3D> heuristicCenters;
+
+	// STATUS
+	private volatile NavMeshLandmarks landmarks; // can be the ones of an earlier snapshot until own ones are selected
+	private volatile boolean landmarksSelected;
+	private final Map<NavMeshTriangle, NavMeshFlowField> flowFields = new LinkedHashMap<>(16, 0.75f, true);
+
+
+	// INIT
+	NavMeshSnapshot(NavMesh navMesh, NavMeshSnapshot previousSnapshot, Map<String, NavMeshTriangle> triangles)
+	{
+		this.navMesh = navMesh;
+		this.version = previousSnapshot == null ? 0 : previousSnapshot.version+1;
+		this.triangles = triangles;
+		this.landmarks = previousSnapshot == null ? null : previousSnapshot.landmarks;
+
+		// the neighbor maps of the triangles are replaced instead of changed, so they only have to be referenced
+		Map<NavMeshTriangle, Map<NavMeshTriangle, NavMeshTriangleTransition>> neighbors = new HashMap<>();
+		Map<NavMeshTriangle, Vector3D> heuristicCenters = new HashMap<>();
+		for(NavMeshTriangle triangle : triangles.values())
+		{
+			neighbors.put(triangle, triangle.getNeighbors());
+			heuristicCenters.put(triangle, triangle.getHeuristicCenter());
+		}
+
+		this.neighbors = Collections.unmodifiableMap(neighbors);
+		this.heuristicCenters = Collections.unmodifiableMap(heuristicCenters);
+	}
+
+
+	// GETTERS
+	@API public long getVersion()
+	{
+		return this.version;
+	}
+
+	@API public Collection<NavMeshTriangle> getTriangles()
+	{
+		return this.triangles.values();
+	}
+
+	@API public NavMeshTriangle getTriangle(String id)
+	{
+		return this.triangles.get(id);
+	}
+
+	/**
+	 * @param triangle the triangle to check
+	 * @return whether the triangle was part of the mesh when this snapshot was published
+	 */
+	@API public boolean contains(NavMeshTriangle triangle)
+	{
+		return this.neighbors.containsKey(triangle);
+	}
+
+	public NavMeshTriangle getTriangleAt(Location location)
+	{
+		for(NavMeshTriangle triangle : this.triangles.values())
+			if(triangle.doesContain(location))
+				return triangle;
+
+		return null;
+	}
+
+	public Map<NavMeshTriangle, NavMeshTriangleTransition> getNeighbors(NavMeshTriangle triangle)
+	{
+		Map<NavMeshTriangle, NavMeshTriangleTransition> triangleNeighbors = this.neighbors.get(triangle);
+		return triangleNeighbors == null ? Collections.emptyMap() : triangleNeighbors;
+	}
+
+	public NavMeshTriangleTransition getTransition(NavMeshTriangle from, NavMeshTriangle to)
+	{
+		return getNeighbors(from).get(to);
+	}
+
+	public Vector3D getHeuristicCenter(NavMeshTriangle triangle)
+	{
+		Vector3D heuristicCenter = this.heuristicCenters.get(triangle);
+		return heuristicCenter == null ? triangle.getHeuristicCenter() : heuristicCenter;
+	}
+
+	/**
+	 * Returns the weight of the transition between two neighboring triangles. The weight of portals is calculated from
+	 * the heuristic centers of this snapshot, since the ones of the triangles can be moved by later edits.
+	 *
+	 * @param from the triangle the transition starts at
+	 * @param to   the triangle the transition ends at
+	 * @return the weight of the transition
+	 */
+	public double getWeight(NavMeshTriangle from, NavMeshTriangle to)
+	{
+		NavMeshTriangleTransition transition = getTransition(from, to);
+		if(transition instanceof NavMeshTrianglePortal)
+			return getHeuristicCenter(to).subtract(getHeuristicCenter(from)).length();
+
+		return transition.getWeight();
+	}
+
+
+	// PATHFINDING
+	/**
+	 * Returns the landmarks used for the pathfinding heuristic. Unless they were loaded with the mesh, they are
+	 * selected in the background on the first use of this snapshot, so the pathfinding doesn't wait for them.
+	 * <p>
+	 * Until then the landmarks of an earlier snapshot are returned. They have no distances for the triangles added
+	 * since, so the heuristic falls back to the straight line distance there. If connections were added since, their
+	 * lower bounds can be too high, which can make the paths found in the meantime slightly longer than the shortest.
+	 *
+	 * @return the landmarks of this snapshot or an earlier one, null if none were selected yet
+	 */
+	public NavMeshLandmarks getLandmarks()
+	{
+		if(!this.landmarksSelected)
+			this.navMesh.selectLandmarks(this);
+
+		return this.landmarks;
+	}
+
+	void setLandmarks(NavMeshLandmarks landmarks)
+	{
+		this.landmarks = landmarks;
+		this.landmarksSelected = true;
+	}
+
+	void inheritLandmarks(NavMeshLandmarks landmarks)
+	{
+		if(!this.landmarksSelected)
+			this.landmarks = landmarks;
+	}
+
+	/**
+	 * Returns the flow field towards the given target triangle. The flow fields of the most recently used targets are
+	 * kept, so many agents heading to the same target share one calculation.
+	 *
+	 * @param targetTriangle the triangle the flow field leads to
+	 * @return the flow field towards the target triangle
+	 */
+	public NavMeshFlowField getFlowField(NavMeshTriangle targetTriangle)
+	{
+		synchronized(this.flowFields)
+		{
+			NavMeshFlowField flowField = this.flowFields.get(targetTriangle);
+			if(flowField != null)
+				return flowField;
+		}
+
+		// calculated outside of the lock, if two threads calculate the same field at the same time one of them is kept
+		NavMeshFlowField flowField = new NavMeshFlowField(this, targetTriangle);
+		synchronized(this.flowFields)
+		{
+			this.flowFields.put(targetTriangle, flowField);
+			if(this.flowFields.size() > MAX_CACHED_FLOW_FIELDS)
+				this.flowFields.remove(this.flowFields.keySet().iterator().next());
+		}
+
+		return flowField;
+	}
+
+}
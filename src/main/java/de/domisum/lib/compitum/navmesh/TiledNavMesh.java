@@ -0,0 +1,331 @@
+package de.domisum.lib.compitum.navmesh;
+
+import de.domisum.lib.auxilium.data.container.math.Vector3D;
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.CompitumLib;
+import de.domisum.lib.compitum.block.BlockChangeObserver;
+import de.domisum.lib.compitum.block.BlockSnapshot;
+import de.domisum.lib.compitum.navmesh.generation.NavMeshGenerator;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshPoint;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
+import de.domisum.lib.compitum.navmesh.transition.NavMeshLadder;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * A NavMesh generated by a NavMeshGenerator which is split into tiles of one chunk. The triangles of a tile only cover
+ * the blocks of its chunk, and the triangles of neighboring tiles use the same points along the border between them, so
+ * the portals between the tiles are found like all other portals.
+ * <p>
+ * When blocks in the region of the mesh change, only the tiles around them are generated again. Blocks set by plugins
+ * without an event are only seen if they are reported through CompitumLib.notifyBlockChange(..). The new triangles of
+ * a tile reuse the points of the tiles around it and replace the old ones in one step. Pathfinding which started on the
+ * snapshot from before the replacement keeps the old triangles and connections, the new triangles are not part of it.
+ * <p>
+ * Triangles added by hand are not part of any tile and are not replaced.
+ */
+@API
+public class TiledNavMesh extends NavMesh implements BlockChangeObserver
+{
+
+	// CONSTANTS
+	private static final int REBUILD_INTERVAL_TICKS = 20; // changes made within this time are rebuilt together
+	private static final int MAX_TILES_PER_REBUILD = 8; // limits the chunks copied on the main thread per rebuild
+
+	// PROPERTIES
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int maxX;
+	private final int maxY;
+	private final int maxZ;
+
+	// REFERENCES
+	// replaced instead of changed, so it can be read from other threads without locking
+	private volatile Map<Long, List<NavMeshTriangle>> tiles; // <tile key, triangles of the tile>
+
+	// STATUS
+	private final Set<Long> changedTiles = new HashSet<>();
+	private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+	private BukkitTask rebuildTask;
+	private int rebuildCount = 0;
+	private long rebuiltTileCount = 0;
+
+
+	// INIT
+	/**
+	 * The triangles are assigned to the tile their center is in. The region is the one the mesh was generated for.
+	 */
+	public TiledNavMesh(String id, Vector3D rangeCenter, double range, World world, Collection<NavMeshPoint> points,
+			Collection<NavMeshTriangle> triangles, int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+	{
+		super(id, rangeCenter, range, world, points, triangles);
+
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+
+		Map<Long, List<NavMeshTriangle>> tileMap = new HashMap<>();
+		for(NavMeshTriangle triangle : triangles)
+		{
+			Vector3D center = triangle.getCenter();
+			long tileKey = getTileKey((int) Math.floor(center.x)>>4, (int) Math.floor(center.z)>>4);
+			tileMap.computeIfAbsent(tileKey, k->new ArrayList<>()).add(triangle);
+		}
+		this.tiles = Collections.unmodifiableMap(tileMap);
+	}
+
+
+	// GETTERS
+	@API public int getTileCount()
+	{
+		return this.tiles.size();
+	}
+
+	/**
+	 * @return the number of tiles which were generated again after blocks changed
+	 */
+	@API public synchronized long getRebuiltTileCount()
+	{
+		return this.rebuiltTileCount;
+	}
+
+	@API public boolean isRebuilding()
+	{
+		return this.rebuilding.get();
+	}
+
+	/**
+	 * @return the triangles of the tile of the chunk
+	 */
+	@API public List<NavMeshTriangle> getTileTriangles(int chunkX, int chunkZ)
+	{
+		List<NavMeshTriangle> tileTriangles = this.tiles.get(getTileKey(chunkX, chunkZ));
+		return tileTriangles == null ? Collections.emptyList() : tileTriangles;
+	}
+
+	/**
+	 * @return the triangles of the eight tiles around the tile of the chunk, they can share points with it
+	 */
+	@API public List<NavMeshTriangle> getTrianglesAroundTile(int chunkX, int chunkZ)
+	{
+		List<NavMeshTriangle> trianglesAround = new ArrayList<>();
+		for(int dX = -1; dX <= 1; dX++)
+			for(int dZ = -1; dZ <= 1; dZ++)
+				if(dX != 0 || dZ != 0)
+					trianglesAround.addAll(getTileTriangles(chunkX+dX, chunkZ+dZ));
+
+		return trianglesAround;
+	}
+
+	/**
+	 * @return the triangle of a tile which contains the position, or null if there is none
+	 */
+	@API public NavMeshTriangle getTileTriangleAt(Vector3D position)
+	{
+		int chunkX = (int) Math.floor(position.x)>>4;
+		int chunkZ = (int) Math.floor(position.z)>>4;
+		for(NavMeshTriangle triangle : getTileTriangles(chunkX, chunkZ))
+			if(triangle.doesContain(position))
+				return triangle;
+
+		return null;
+	}
+
+	private boolean isInRegion(int x, int z)
+	{
+		return x >= this.minX && x <= this.maxX && z >= this.minZ && z <= this.maxZ;
+	}
+
+	private static long getTileKey(int chunkX, int chunkZ)
+	{
+		return ((long) chunkX<<32)|(chunkZ&0xFFFFFFFFL);
+	}
+
+
+	// TILES
+	/**
+	 * Replaces the triangles of a tile in one step. The triangles have to use the points of the tiles around it along
+	 * the borders of the tile, otherwise they are not connected to them.
+	 *
+	 * @param chunkX    the x coordinate of the chunk of the tile
+	 * @param chunkZ    the z coordinate of the chunk of the tile
+	 * @param triangles the new triangles of the tile
+	 * @param ladders   the new ladders starting or ending at the tile
+	 */
+	@API public synchronized void replaceTile(int chunkX, int chunkZ, Collection<NavMeshTriangle> triangles,
+			Collection<NavMeshLadder> ladders)
+	{
+		replaceTriangles(getTileTriangles(chunkX, chunkZ), triangles, ladders, getTrianglesAroundTile(chunkX, chunkZ));
+
+		Map<Long, List<NavMeshTriangle>> newTiles = new HashMap<>(this.tiles);
+		if(triangles.isEmpty())
+			newTiles.remove(getTileKey(chunkX, chunkZ));
+		else
+			newTiles.put(getTileKey(chunkX, chunkZ), Collections.unmodifiableList(new ArrayList<>(triangles)));
+		this.tiles = Collections.unmodifiableMap(newTiles);
+
+		this.rebuiltTileCount++;
+	}
+
+
+	// REBUILDING
+	/**
+	 * Starts generating the tiles around changed blocks again. The changes are collected and rebuilt together
+	 * periodically, the generation itself runs on other threads.
+	 *
+	 * @param plugin the plugin the rebuilding task is registered for
+	 */
+	@API public void startRebuilding(Plugin plugin)
+	{
+		if(this.rebuildTask != null)
+			return;
+
+		CompitumLib.registerBlockChangeObserver(this);
+		this.rebuildTask = Bukkit.getScheduler()
+				.runTaskTimer(plugin, this::rebuildChangedTiles, REBUILD_INTERVAL_TICKS, REBUILD_INTERVAL_TICKS);
+	}
+
+	@API public void stopRebuilding()
+	{
+		if(this.rebuildTask == null)
+			return;
+
+		CompitumLib.unregisterBlockChangeObserver(this);
+		this.rebuildTask.cancel();
+		this.rebuildTask = null;
+	}
+
+	@Override public void onBlockChange(World world, int x, int y, int z)
+	{
+		if(world != getWorld() || y < this.minY-1 || y > this.maxY+1)
+			return;
+
+		// the cells of a column also change the points shared with the columns around it, which can be in other tiles
+		synchronized(this.changedTiles)
+		{
+			for(int dX = -1; dX <= 1; dX++)
+				for(int dZ = -1; dZ <= 1; dZ++)
+					if(isInRegion(x+dX, z+dZ))
+						this.changedTiles.add(getTileKey((x+dX)>>4, (z+dZ)>>4));
+		}
+	}
+
+	/**
+	 * Generates the tiles with changed blocks again. The blocks are read on the calling thread, which has to be the
+	 * main thread, the tiles are generated and replaced on another thread. At most MAX_TILES_PER_REBUILD tiles are
+	 * generated per call, the other changed tiles are kept for the next call, as are all of them if the previous
+	 * rebuild is still running.
+	 * <p>
+	 * Tiles next to unloaded chunks are kept until the chunks are loaded again. The unloaded blocks would be read as
+	 * solid, which moves the points along the border, so the tile wouldn't be connected to its neighbors anymore.
+	 */
+	@API public void rebuildChangedTiles()
+	{
+		List<Long> tileKeys = new ArrayList<>();
+		synchronized(this.changedTiles)
+		{
+			if(this.changedTiles.isEmpty() || !this.rebuilding.compareAndSet(false, true))
+				return;
+
+			Iterator<Long> iterator = this.changedTiles.iterator();
+			while(iterator.hasNext() && tileKeys.size() < MAX_TILES_PER_REBUILD)
+			{
+				long tileKey = iterator.next();
+				if(!areChunksLoaded(getChunkKeysAroundTile((int) (tileKey>>32), (int) tileKey)))
+					continue;
+
+				tileKeys.add(tileKey);
+				iterator.remove();
+			}
+		}
+
+		if(tileKeys.isEmpty())
+		{
+			this.rebuilding.set(false);
+			return;
+		}
+
+		// the tiles share the snapshot, so the chunks around several of them are only copied once
+		Set<Long> chunkKeys = new HashSet<>();
+		for(long tileKey : tileKeys)
+			chunkKeys.addAll(getChunkKeysAroundTile((int) (tileKey>>32), (int) tileKey));
+		BlockSnapshot snapshot = BlockSnapshot.ofChunks(getWorld(), chunkKeys);
+
+		String idPrefix = "r"+Integer.toString(this.rebuildCount++, 36)+"-";
+		List<NavMeshGenerator> generators = new ArrayList<>();
+		for(long tileKey : tileKeys)
+			generators.add(createTileGenerator((int) (tileKey>>32), (int) tileKey, snapshot,
+					idPrefix+generators.size()+"-"));
+
+		CompletableFuture.runAsync(()->
+		{
+			// the tiles are replaced one after the other, so each one uses the points of the ones replaced before
+			for(int i = 0; i < tileKeys.size(); i++)
+			{
+				long tileKey = tileKeys.get(i);
+				generators.get(i).generateTile(this, (int) (tileKey>>32), (int) tileKey);
+			}
+		}).whenComplete((result, throwable)->
+		{
+			this.rebuilding.set(false);
+			if(throwable != null)
+				CompitumLib.getLogger()
+						.log(Level.WARNING, "Failed to rebuild the tiles of NavMesh '"+getId()+"'", throwable);
+		});
+	}
+
+	private List<Long> getChunkKeysAroundTile(int chunkX, int chunkZ)
+	{
+		// the generation of a tile reads the columns next to it, but not further than the region
+		List<Long> chunkKeys = new ArrayList<>();
+		for(int cX = Math.max(chunkX-1, this.minX>>4); cX <= Math.min(chunkX+1, this.maxX>>4); cX++)
+			for(int cZ = Math.max(chunkZ-1, this.minZ>>4); cZ <= Math.min(chunkZ+1, this.maxZ>>4); cZ++)
+				chunkKeys.add(BlockSnapshot.getChunkKey(cX, cZ));
+
+		return chunkKeys;
+	}
+
+	private boolean areChunksLoaded(Collection<Long> chunkKeys)
+	{
+		for(long chunkKey : chunkKeys)
+			if(!getWorld().isChunkLoaded((int) (chunkKey>>32), (int) chunkKey))
+				return false;
+
+		return true;
+	}
+
+	private NavMeshGenerator createTileGenerator(int chunkX, int chunkZ, BlockSnapshot snapshot, String idPrefix)
+	{
+		// the columns around the tile are needed to connect the cells at its border to the tiles around it
+		int regionMinX = Math.max((chunkX<<4)-1, this.minX);
+		int regionMinZ = Math.max((chunkZ<<4)-1, this.minZ);
+		int regionMaxX = Math.min((chunkX<<4)+16, this.maxX);
+		int regionMaxZ = Math.min((chunkZ<<4)+16, this.maxZ);
+
+		NavMeshGenerator generator = new NavMeshGenerator(snapshot, getWorld(), regionMinX, this.minY, regionMinZ,
+				regionMaxX, this.maxY, regionMaxZ);
+		generator.setIdPrefix(idPrefix);
+
+		return generator;
+	}
+
+}
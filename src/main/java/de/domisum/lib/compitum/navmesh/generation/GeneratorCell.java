@@ -0,0 +1,42 @@
+package de.domisum.lib.compitum.navmesh.generation;
+
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+
+/**
+ * A block an agent can stand in, with the points at its four corners and the rectangle it was merged into.
+ */
+class GeneratorCell
+{
+
+	// PROPERTIES
+	final int x;
+	final int y;
+	final int z;
+
+	// STATUS
+	// the index of a corner is dx+2*dz, where dx and dz are the offset of the corner from the lowest corner of the cell
+	final GeneratorPoint[] corners = new GeneratorPoint[4];
+	GeneratorRectangle rectangle;
+
+
+	// INIT
+	GeneratorCell(int x, int y, int z)
+	{
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	@Override public String toString()
+	{
+		return "cell[x="+this.x+",y="+this.y+",z="+this.z+"]";
+	}
+
+
+	// GETTERS
+	BlockPathNode toNode()
+	{
+		return new BlockPathNode(this.x, this.y, this.z);
+	}
+
+}
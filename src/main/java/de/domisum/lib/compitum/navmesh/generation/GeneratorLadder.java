@@ -0,0 +1,73 @@
+package de.domisum.lib.compitum.navmesh.generation;
+
+import de.domisum.lib.auxilium.data.container.direction.Direction2D;
+
+/**
+ * A column of ladder blocks, from the lowest to the highest block.
+ */
+class GeneratorLadder
+{
+
+	// PROPERTIES
+	final int x;
+	final int bottomY;
+	final int topY;
+	final int z;
+
+	private final int data; // the side the ladder is attached to
+
+
+	// INIT
+	GeneratorLadder(int x, int bottomY, int topY, int z, int data)
+	{
+		this.x = x;
+		this.bottomY = bottomY;
+		this.topY = topY;
+		this.z = z;
+
+		this.data = data;
+	}
+
+
+	// GETTERS
+	/**
+	 * @return the direction from the ladder towards the block it is attached to, which the agent faces while climbing
+	 */
+	Direction2D getDirection()
+	{
+		switch(this.data)
+		{
+			case 2:
+				return Direction2D.SOUTH;
+			case 3:
+				return Direction2D.NORTH;
+			case 4:
+				return Direction2D.EAST;
+			case 5:
+				return Direction2D.WEST;
+			default:
+				return Direction2D.NORTH;
+		}
+	}
+
+	int getWallDX()
+	{
+		if(this.data == 4)
+			return 1;
+		if(this.data == 5)
+			return -1;
+
+		return 0;
+	}
+
+	int getWallDZ()
+	{
+		if(this.data == 2)
+			return 1;
+		if(this.data == 3)
+			return -1;
+
+		return 0;
+	}
+
+}
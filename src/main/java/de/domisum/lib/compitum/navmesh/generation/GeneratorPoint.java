@@ -0,0 +1,56 @@
+package de.domisum.lib.compitum.navmesh.generation;
+
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshPoint;
+
+/**
+ * A block corner shared by the cells around it which are connected to each other. Cells around the same block corner
+ * which are not connected (e.g. a floor and the top of a wall next to it) get different points, so the triangles of
+ * the cells only become neighbors where an agent can walk from one to the other.
+ */
+class GeneratorPoint
+{
+
+	// PROPERTIES
+	final int x;
+	final int z;
+	int y; // the highest cell of the point, the triangles form a ramp towards stairs and slabs
+
+	// STATUS
+	private boolean hasCell = false;
+	boolean step = false; // the cells of the point are not all at the same height
+	boolean essential = false; // the point is needed in the outline of the rectangles using it
+	NavMeshPoint navMeshPoint;
+
+
+	// INIT
+	GeneratorPoint(int x, int z)
+	{
+		this.x = x;
+		this.z = z;
+	}
+
+
+	// GETTERS
+	/**
+	 * @return true if the point is a corner of a rectangle, or the cells of the point are at different heights so the
+	 * outlines have to follow the step
+	 */
+	boolean isInOutline()
+	{
+		return this.essential || this.step;
+	}
+
+
+	// SETTERS
+	void addCell(GeneratorCell cell)
+	{
+		if(!this.hasCell)
+			this.y = cell.y;
+		else if(cell.y != this.y)
+			this.step = true;
+
+		this.y = Math.max(this.y, cell.y);
+		this.hasCell = true;
+	}
+
+}
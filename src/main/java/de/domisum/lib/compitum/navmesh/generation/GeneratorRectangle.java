@@ -0,0 +1,50 @@
+package de.domisum.lib.compitum.navmesh.generation;
+
+import de.domisum.lib.auxilium.data.container.math.Vector3D;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshPoint;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rectangle of cells at the same height inside of one tile, which is triangulated as a whole.
+ */
+class GeneratorRectangle
+{
+
+	// PROPERTIES
+	final int x;
+	final int y;
+	final int z;
+	final int sizeX;
+	final int sizeZ;
+
+	// STATUS
+	List<GeneratorPoint> outline;
+	NavMeshPoint center;
+	final List<NavMeshTriangle> triangles = new ArrayList<>();
+
+
+	// INIT
+	GeneratorRectangle(int x, int y, int z, int sizeX, int sizeZ)
+	{
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.sizeX = sizeX;
+		this.sizeZ = sizeZ;
+	}
+
+
+	// GETTERS
+	NavMeshTriangle getTriangleAt(Vector3D position)
+	{
+		for(NavMeshTriangle triangle : this.triangles)
+			if(triangle.doesContain(position))
+				return triangle;
+
+		return null;
+	}
+
+}
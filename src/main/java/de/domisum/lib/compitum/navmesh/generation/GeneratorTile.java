@@ -0,0 +1,32 @@
+package de.domisum.lib.compitum.navmesh.generation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The columns of one chunk inside of the region, every step of the generation processes the tiles in parallel.
+ */
+class GeneratorTile
+{
+
+	// PROPERTIES
+	final int minX;
+	final int minZ;
+	final int maxX;
+	final int maxZ;
+
+	// STATUS
+	final List<GeneratorRectangle> rectangles = new ArrayList<>();
+	final List<GeneratorLadder> ladders = new ArrayList<>();
+
+
+	// INIT
+	GeneratorTile(int minX, int minZ, int maxX, int maxZ)
+	{
+		this.minX = minX;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxZ = maxZ;
+	}
+
+}
@@ -0,0 +1,645 @@
+package de.domisum.lib.compitum.navmesh.generation;
+
+import de.domisum.lib.auxilium.data.container.math.Vector3D;
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.block.BlockAccess;
+import de.domisum.lib.compitum.block.BlockSnapshot;
+import de.domisum.lib.compitum.navmesh.NavMesh;
+import de.domisum.lib.compitum.navmesh.TiledNavMesh;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshPoint;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
+import de.domisum.lib.compitum.navmesh.transition.NavMeshLadder;
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates a NavMesh from the blocks of a cuboid region, using the same walkability rules as the block pathfinding.
+ * <p>
+ * The region is split into tiles of one chunk, which are processed in parallel in every step:
+ * <ol>
+ * <li>every block an agent can stand in becomes a cell</li>
+ * <li>the cells around every block corner which are connected (at the same height, or one block apart with a stair or
+ * slab in between) share a point, cells which are not connected get separate points</li>
+ * <li>the cells of a tile are merged into rectangles of cells at the same height</li>
+ * <li>the outline of every rectangle is simplified to the points which are also needed by other rectangles, and the
+ * outline is triangulated around the center of the rectangle</li>
+ * </ol>
+ * Since neighboring rectangles use the same points along their common edges, the triangles of connected cells become
+ * neighbors when the NavMesh is created. Ladders with a cell at the bottom and next to the top are added as well.
+ * <p>
+ * A generator generates once, either a whole NavMesh or one tile of a TiledNavMesh.
+ */
+@API
+public class NavMeshGenerator
+{
+
+	// CONSTANTS
+	private static final GeneratorCell[] NO_CELLS = new GeneratorCell[0];
+	// the corner index of the shared corner for the columns around it, in the order they are connected around it
+	private static final int[] CORNER_INDICES = {3, 2, 0, 1};
+
+	// PROPERTIES
+	private final BlockAccess blockAccess;
+	private final World world;
+
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int maxX;
+	private final int maxY;
+	private final int maxZ;
+
+	private boolean detectLadders = true;
+	private String idPrefix = "g";
+
+	// STATUS
+	private final GeneratorCell[][] columns; // <(x-minX)*sizeZ+(z-minZ), cells of the column from the bottom up>
+	private final Map<Long, NavMeshPoint> existingPoints = new HashMap<>(); // <point key, point of the mesh>
+	private final AtomicInteger idCounter = new AtomicInteger();
+	private boolean generated = false;
+	private boolean tiled = false;
+
+
+	// INIT
+	/**
+	 * @param blockAccess the source of the blocks, it is read from several threads at the same time
+	 * @param world       the world of the NavMesh
+	 * @param minX        the lowest x coordinate of the region
+	 * @param minY        the lowest y coordinate an agent can stand at
+	 * @param minZ        the lowest z coordinate of the region
+	 * @param maxX        the highest x coordinate of the region
+	 * @param maxY        the highest y coordinate an agent can stand at
+	 * @param maxZ        the highest z coordinate of the region
+	 */
+	@API public NavMeshGenerator(BlockAccess blockAccess, World world, int minX, int minY, int minZ, int maxX, int maxY,
+			int maxZ)
+	{
+		this.blockAccess = blockAccess;
+		this.world = world;
+
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+
+		this.columns = new GeneratorCell[(maxX-minX+1)*(maxZ-minZ+1)][];
+	}
+
+	/**
+	 * Generates the NavMesh of the cuboid region between the corners on other threads. Only the snapshot of the chunks
+	 * is taken on the calling thread, which has to be the main thread. The chunks of the region have to be loaded.
+	 *
+	 * @param id      the id of the NavMesh
+	 * @param corner1 a corner of the region
+	 * @param corner2 the opposite corner of the region
+	 * @return the future of the generated NavMesh
+	 */
+	@API public static CompletableFuture<NavMesh> generateAsync(String id, Location corner1, Location corner2)
+	{
+		int minX = Math.min(corner1.getBlockX(), corner2.getBlockX());
+		int minY = Math.min(corner1.getBlockY(), corner2.getBlockY());
+		int minZ = Math.min(corner1.getBlockZ(), corner2.getBlockZ());
+		int maxX = Math.max(corner1.getBlockX(), corner2.getBlockX());
+		int maxY = Math.max(corner1.getBlockY(), corner2.getBlockY());
+		int maxZ = Math.max(corner1.getBlockZ(), corner2.getBlockZ());
+
+		BlockSnapshot snapshot = new BlockSnapshot(corner1, corner2);
+		NavMeshGenerator generator = new NavMeshGenerator(snapshot, corner1.getWorld(), minX, minY, minZ, maxX, maxY,
+				maxZ);
+		return CompletableFuture.supplyAsync(()->generator.generate(id));
+	}
+
+
+	// GETTERS
+	private GeneratorCell[] getColumn(int x, int z)
+	{
+		if(x < this.minX || x > this.maxX || z < this.minZ || z > this.maxZ)
+			return NO_CELLS;
+
+		GeneratorCell[] column = this.columns[getColumnIndex(x, z)];
+		return column == null ? NO_CELLS : column;
+	}
+
+	private GeneratorCell getCell(int x, int y, int z)
+	{
+		for(GeneratorCell cell : getColumn(x, z))
+			if(cell.y == y)
+				return cell;
+
+		return null;
+	}
+
+	private int getColumnIndex(int x, int z)
+	{
+		return (x-this.minX)*(this.maxZ-this.minZ+1)+(z-this.minZ);
+	}
+
+	private String getUnusedId()
+	{
+		return this.idPrefix+Integer.toString(this.idCounter.getAndIncrement(), 36);
+	}
+
+
+	// SETTERS
+	@API public void setDetectLadders(boolean detectLadders)
+	{
+		this.detectLadders = detectLadders;
+	}
+
+	/**
+	 * Sets the start of the ids of the generated points and triangles, which has to be different from the ids already
+	 * in the mesh when a tile is generated again.
+	 *
+	 * @param idPrefix the start of the ids
+	 */
+	@API public void setIdPrefix(String idPrefix)
+	{
+		this.idPrefix = idPrefix;
+	}
+
+
+	// GENERATION
+	/**
+	 * Generates the NavMesh. This takes a while for large regions and should not be done on the main thread.
+	 *
+	 * @param id the id of the NavMesh
+	 * @return the generated NavMesh
+	 */
+	@API public synchronized NavMesh generate(String id)
+	{
+		startGeneration(false);
+		List<GeneratorTile> tiles = createTiles();
+		generateTriangles(tiles, tiles);
+
+		NavMesh navMesh = new NavMesh(id, getRangeCenter(), getRange(), this.world, getPoints(tiles),
+				getTriangles(tiles));
+		for(GeneratorTile tile : tiles)
+			for(GeneratorLadder ladder : tile.ladders)
+				addLadder(navMesh, createLadder(ladder, null));
+
+		return navMesh;
+	}
+
+	/**
+	 * Generates a NavMesh split into tiles of one chunk, which can be generated again one by one when blocks change.
+	 * All block corners on the borders of the tiles are part of the outlines along them, so a tile generated again uses
+	 * the same points at its borders as the tiles around it.
+	 *
+	 * @param id the id of the NavMesh
+	 * @return the generated NavMesh
+	 */
+	@API public synchronized TiledNavMesh generateTiled(String id)
+	{
+		startGeneration(true);
+		List<GeneratorTile> tiles = createTiles();
+		generateTriangles(tiles, tiles);
+
+		TiledNavMesh navMesh = new TiledNavMesh(id, getRangeCenter(), getRange(), this.world, getPoints(tiles),
+				getTriangles(tiles), this.minX, this.minY, this.minZ, this.maxX, this.maxY, this.maxZ);
+		for(GeneratorTile tile : tiles)
+			for(GeneratorLadder ladder : tile.ladders)
+				addLadder(navMesh, createLadder(ladder, null));
+
+		return navMesh;
+	}
+
+	/**
+	 * Generates one tile of a TiledNavMesh again and replaces the old tile with it. The region of the generator has to
+	 * contain the tile and the columns around it which are part of the region of the mesh, so the cells at the borders
+	 * of the tile are connected to the ones of the tiles around it like in the generation of the whole mesh.
+	 * <p>
+	 * The chunks of these columns have to be loaded when the blocks are read. Unloaded blocks are solid, so the points
+	 * along the border would be placed differently than in the tiles around it and the tile would be cut off from them.
+	 *
+	 * @param navMesh the mesh the tile is part of
+	 * @param chunkX  the x coordinate of the chunk of the tile
+	 * @param chunkZ  the z coordinate of the chunk of the tile
+	 */
+	@API public synchronized void generateTile(TiledNavMesh navMesh, int chunkX, int chunkZ)
+	{
+		startGeneration(true);
+		List<GeneratorTile> tiles = createTiles();
+		GeneratorTile tile = null;
+		for(GeneratorTile t : tiles)
+			if(t.minX>>4 == chunkX && t.minZ>>4 == chunkZ)
+				tile = t;
+		if(tile == null)
+			throw new IllegalArgumentException("The chunk "+chunkX+", "+chunkZ+" is not part of the region");
+
+		// the new triangles use the points of the tiles around at the borders, so they are connected to them
+		for(NavMeshTriangle triangle : navMesh.getTrianglesAroundTile(chunkX, chunkZ))
+			for(NavMeshPoint point : new NavMeshPoint[] {triangle.point1, triangle.point2, triangle.point3})
+				if(isOnTileBorder(point))
+				{
+					long pointKey = getPointKey((int) point.getX(), (int) point.getY(), (int) point.getZ());
+					this.existingPoints.put(pointKey, point);
+				}
+
+		List<GeneratorTile> generatedTiles = Collections.singletonList(tile);
+		generateTriangles(tiles, generatedTiles);
+
+		// the ladders of the columns around the tile are found as well, since their top can be in the tile
+		List<NavMeshLadder> ladders = new ArrayList<>();
+		for(GeneratorTile t : tiles)
+			for(GeneratorLadder ladder : t.ladders)
+			{
+				NavMeshLadder navMeshLadder = createLadder(ladder, navMesh);
+				if(navMeshLadder == null)
+					continue;
+
+				if(isInTile(navMeshLadder.getPositionBottom(), tile) || isInTile(navMeshLadder.getPositionTop(), tile))
+					ladders.add(navMeshLadder);
+			}
+
+		navMesh.replaceTile(chunkX, chunkZ, getTriangles(generatedTiles), ladders);
+	}
+
+	private void startGeneration(boolean tiled)
+	{
+		if(this.generated)
+			throw new IllegalStateException("A NavMeshGenerator can only generate once");
+
+		this.generated = true;
+		this.tiled = tiled;
+	}
+
+	/**
+	 * Finds the cells and points of all tiles, but only merges and triangulates the cells of the generated tiles.
+	 */
+	private void generateTriangles(List<GeneratorTile> tiles, List<GeneratorTile> generatedTiles)
+	{
+		// every step only depends on the results of the steps before, so the tiles of one step can run in parallel
+		tiles.parallelStream().forEach(this::findCells);
+		tiles.parallelStream().forEach(this::connectCorners);
+		generatedTiles.parallelStream().forEach(this::mergeRectangles);
+		createOutlines(generatedTiles);
+		generatedTiles.parallelStream().forEach(this::triangulate);
+	}
+
+	private Vector3D getRangeCenter()
+	{
+		return new Vector3D((this.minX+this.maxX+1)/2d, (this.minY+this.maxY+1)/2d, (this.minZ+this.maxZ+1)/2d);
+	}
+
+	private double getRange()
+	{
+		return new Vector3D(this.maxX+1, this.maxY+2, this.maxZ+1).subtract(getRangeCenter()).length();
+	}
+
+	private Collection<NavMeshPoint> getPoints(List<GeneratorTile> tiles)
+	{
+		Set<NavMeshPoint> points = new LinkedHashSet<>();
+		for(GeneratorTile tile : tiles)
+			for(GeneratorRectangle rectangle : tile.rectangles)
+			{
+				points.add(rectangle.center);
+				for(GeneratorPoint point : rectangle.outline)
+					points.add(point.navMeshPoint);
+			}
+
+		return points;
+	}
+
+	private List<NavMeshTriangle> getTriangles(List<GeneratorTile> tiles)
+	{
+		List<NavMeshTriangle> triangles = new ArrayList<>();
+		for(GeneratorTile tile : tiles)
+			for(GeneratorRectangle rectangle : tile.rectangles)
+				triangles.addAll(rectangle.triangles);
+
+		return triangles;
+	}
+
+	private List<GeneratorTile> createTiles()
+	{
+		List<GeneratorTile> tiles = new ArrayList<>();
+		for(int chunkX = this.minX>>4; chunkX <= this.maxX>>4; chunkX++)
+			for(int chunkZ = this.minZ>>4; chunkZ <= this.maxZ>>4; chunkZ++)
+			{
+				int tileMinX = Math.max(chunkX<<4, this.minX);
+				int tileMinZ = Math.max(chunkZ<<4, this.minZ);
+				int tileMaxX = Math.min((chunkX<<4)+15, this.maxX);
+				int tileMaxZ = Math.min((chunkZ<<4)+15, this.maxZ);
+				tiles.add(new GeneratorTile(tileMinX, tileMinZ, tileMaxX, tileMaxZ));
+			}
+
+		return tiles;
+	}
+
+
+	// CELLS
+	private void findCells(GeneratorTile tile)
+	{
+		int height = this.maxY-this.minY+3;
+		boolean[] canStandIn = new boolean[height]; // from minY-1 to maxY+1
+		boolean[] canStandOn = new boolean[height];
+		List<GeneratorCell> cells = new ArrayList<>();
+
+		for(int x = tile.minX; x <= tile.maxX; x++)
+			for(int z = tile.minZ; z <= tile.maxZ; z++)
+			{
+				// every block is read once per column instead of three times by canStandAt
+				for(int i = 0; i < height; i++)
+				{
+					canStandIn[i] = this.blockAccess.canStandIn(x, this.minY-1+i, z);
+					canStandOn[i] = this.blockAccess.canStandOn(x, this.minY-1+i, z);
+				}
+
+				cells.clear();
+				for(int y = this.minY; y <= this.maxY; y++)
+				{
+					int i = y-this.minY+1;
+					if(canStandIn[i] && canStandIn[i+1] && canStandOn[i-1])
+						cells.add(new GeneratorCell(x, y, z));
+
+					boolean ladderBottom = this.blockAccess.isLadder(x, y, z) && !this.blockAccess.isLadder(x, y-1, z);
+					if(this.detectLadders && ladderBottom)
+						tile.ladders.add(findLadder(x, y, z));
+				}
+
+				if(!cells.isEmpty())
+					this.columns[getColumnIndex(x, z)] = cells.toArray(NO_CELLS);
+			}
+	}
+
+	private boolean isConnected(GeneratorCell from, GeneratorCell to)
+	{
+		int dY = to.y-from.y;
+		if(dY == 0)
+			return true;
+		else if(dY == 1)
+			return this.blockAccess.isStair(from.toNode(), to.toNode());
+		else if(dY == -1)
+			return this.blockAccess.isStair(to.toNode(), from.toNode());
+
+		return false;
+	}
+
+
+	// POINTS
+	private void connectCorners(GeneratorTile tile)
+	{
+		// the corners on the highest edges of the region belong to the tiles at that edge
+		int maxCornerX = tile.maxX == this.maxX ? tile.maxX+1 : tile.maxX;
+		int maxCornerZ = tile.maxZ == this.maxZ ? tile.maxZ+1 : tile.maxZ;
+
+		for(int x = tile.minX; x <= maxCornerX; x++)
+			for(int z = tile.minZ; z <= maxCornerZ; z++)
+				connectCorner(x, z);
+	}
+
+	private void connectCorner(int x, int z)
+	{
+		GeneratorCell[][] columnsAround = {getColumn(x-1, z-1), getColumn(x, z-1), getColumn(x, z), getColumn(x-1, z)};
+
+		for(int i = 0; i < 4; i++)
+			for(GeneratorCell cell : columnsAround[i])
+				if(cell.corners[CORNER_INDICES[i]] == null)
+					addToPoint(new GeneratorPoint(x, z), columnsAround, i, cell);
+	}
+
+	private void addToPoint(GeneratorPoint point, GeneratorCell[][] columnsAround, int columnIndex, GeneratorCell cell)
+	{
+		cell.corners[CORNER_INDICES[columnIndex]] = point;
+		point.addCell(cell);
+
+		// the columns next to each other around the corner are the ones before and after in the array
+		for(int offset = 1; offset <= 3; offset += 2)
+		{
+			int neighborColumnIndex = (columnIndex+offset)%4;
+			for(GeneratorCell neighbor : columnsAround[neighborColumnIndex])
+				if(neighbor.corners[CORNER_INDICES[neighborColumnIndex]] == null && isConnected(cell, neighbor))
+					addToPoint(point, columnsAround, neighborColumnIndex, neighbor);
+		}
+	}
+
+	private boolean isInOutline(GeneratorPoint point)
+	{
+		if(point.isInOutline())
+			return true;
+
+		return this.tiled && ((point.x&15) == 0 || (point.z&15) == 0);
+	}
+
+	private static boolean isOnTileBorder(NavMeshPoint point)
+	{
+		boolean onBorderX = point.getX() == Math.floor(point.getX()) && ((int) point.getX()&15) == 0;
+		boolean onBorderZ = point.getZ() == Math.floor(point.getZ()) && ((int) point.getZ()&15) == 0;
+		return onBorderX || onBorderZ;
+	}
+
+	private static long getPointKey(int x, int y, int z)
+	{
+		return ((x&0x3FFFFFFL)<<38)|((z&0x3FFFFFFL)<<12)|(y&0xFFF);
+	}
+
+
+	// RECTANGLES
+	private void mergeRectangles(GeneratorTile tile)
+	{
+		for(int z = tile.minZ; z <= tile.maxZ; z++)
+			for(int x = tile.minX; x <= tile.maxX; x++)
+				for(GeneratorCell cell : getColumn(x, z))
+					if(cell.rectangle == null)
+						tile.rectangles.add(mergeRectangle(tile, cell));
+	}
+
+	private GeneratorRectangle mergeRectangle(GeneratorTile tile, GeneratorCell cell)
+	{
+		int sizeX = 1;
+		while(cell.x+sizeX <= tile.maxX && isUnmerged(cell.x+sizeX, cell.y, cell.z))
+			sizeX++;
+
+		int sizeZ = 1;
+		while(cell.z+sizeZ <= tile.maxZ && isRowUnmerged(cell.x, sizeX, cell.y, cell.z+sizeZ))
+			sizeZ++;
+
+		GeneratorRectangle rectangle = new GeneratorRectangle(cell.x, cell.y, cell.z, sizeX, sizeZ);
+		for(int x = cell.x; x < cell.x+sizeX; x++)
+			for(int z = cell.z; z < cell.z+sizeZ; z++)
+				getCell(x, cell.y, z).rectangle = rectangle;
+
+		// the corners of the rectangle are needed in the outlines of all rectangles along them
+		int maxX = cell.x+sizeX-1;
+		int maxZ = cell.z+sizeZ-1;
+		getCell(cell.x, cell.y, cell.z).corners[0].essential = true;
+		getCell(maxX, cell.y, cell.z).corners[1].essential = true;
+		getCell(cell.x, cell.y, maxZ).corners[2].essential = true;
+		getCell(maxX, cell.y, maxZ).corners[3].essential = true;
+
+		return rectangle;
+	}
+
+	private boolean isUnmerged(int x, int y, int z)
+	{
+		GeneratorCell cell = getCell(x, y, z);
+		return cell != null && cell.rectangle == null;
+	}
+
+	private boolean isRowUnmerged(int x, int sizeX, int y, int z)
+	{
+		for(int dX = 0; dX < sizeX; dX++)
+			if(!isUnmerged(x+dX, y, z))
+				return false;
+
+		return true;
+	}
+
+
+	// TRIANGLES
+	private void createOutlines(List<GeneratorTile> generatedTiles)
+	{
+		// the points along the tile borders are shared with other tiles, so they are created before the triangulation
+		for(GeneratorTile tile : generatedTiles)
+			for(GeneratorRectangle rectangle : tile.rectangles)
+			{
+				rectangle.outline = getOutline(rectangle);
+				for(GeneratorPoint point : rectangle.outline)
+					if(point.navMeshPoint == null)
+						point.navMeshPoint = createNavMeshPoint(point);
+			}
+	}
+
+	private NavMeshPoint createNavMeshPoint(GeneratorPoint point)
+	{
+		NavMeshPoint existingPoint = this.existingPoints.get(getPointKey(point.x, point.y, point.z));
+		if(existingPoint != null)
+			return existingPoint;
+
+		return new NavMeshPoint(getUnusedId(), point.x, point.y, point.z);
+	}
+
+	private void triangulate(GeneratorTile tile)
+	{
+		for(GeneratorRectangle rectangle : tile.rectangles)
+		{
+			rectangle.center = new NavMeshPoint(getUnusedId(), rectangle.x+rectangle.sizeX/2d, rectangle.y,
+					rectangle.z+rectangle.sizeZ/2d);
+
+			List<GeneratorPoint> outline = rectangle.outline;
+			for(int i = 0; i < outline.size(); i++)
+			{
+				NavMeshPoint point1 = outline.get(i).navMeshPoint;
+				NavMeshPoint point2 = outline.get((i+1)%outline.size()).navMeshPoint;
+				rectangle.triangles.add(new NavMeshTriangle(getUnusedId(), rectangle.center, point1, point2));
+			}
+		}
+	}
+
+	/**
+	 * The points along the edges of the rectangle, in order around it. Only the points which are in the outline of
+	 * every rectangle using them are kept, so the triangles on both sides of an edge use the same points.
+	 */
+	private List<GeneratorPoint> getOutline(GeneratorRectangle rectangle)
+	{
+		int maxX = rectangle.x+rectangle.sizeX-1;
+		int maxZ = rectangle.z+rectangle.sizeZ-1;
+
+		List<GeneratorPoint> outline = new ArrayList<>();
+		for(int x = rectangle.x; x <= maxX; x++)
+			addToOutline(outline, getCell(x, rectangle.y, rectangle.z).corners[0]);
+		for(int z = rectangle.z; z <= maxZ; z++)
+			addToOutline(outline, getCell(maxX, rectangle.y, z).corners[1]);
+		for(int x = maxX; x >= rectangle.x; x--)
+			addToOutline(outline, getCell(x, rectangle.y, maxZ).corners[3]);
+		for(int z = maxZ; z >= rectangle.z; z--)
+			addToOutline(outline, getCell(rectangle.x, rectangle.y, z).corners[2]);
+
+		return outline;
+	}
+
+	private void addToOutline(List<GeneratorPoint> outline, GeneratorPoint point)
+	{
+		if(isInOutline(point))
+			outline.add(point);
+	}
+
+
+	// LADDERS
+	private GeneratorLadder findLadder(int x, int bottomY, int z)
+	{
+		int topY = bottomY;
+		while(topY < this.maxY && this.blockAccess.isLadder(x, topY+1, z))
+			topY++;
+
+		return new GeneratorLadder(x, bottomY, topY, z, this.blockAccess.getData(x, bottomY, z));
+	}
+
+	/**
+	 * @param navMesh the mesh the triangles of cells outside of the generated tiles are taken from, or null
+	 * @return the ladder, or null if it can't be used or the triangles at its ends are connected already
+	 */
+	private NavMeshLadder createLadder(GeneratorLadder ladder, TiledNavMesh navMesh)
+	{
+		GeneratorCell bottom = getCell(ladder.x, ladder.bottomY, ladder.z);
+		GeneratorCell top = findLadderTop(ladder);
+		if(bottom == null || top == null)
+			return null;
+
+		Vector3D positionBottom = new Vector3D(bottom.x+0.5, bottom.y, bottom.z+0.5);
+		Vector3D positionTop = new Vector3D(top.x+0.5, top.y, top.z+0.5);
+		NavMeshTriangle triangleBottom = getTriangleAt(bottom, positionBottom, navMesh);
+		NavMeshTriangle triangleTop = getTriangleAt(top, positionTop, navMesh);
+		if(triangleBottom == null || triangleTop == null || triangleBottom == triangleTop)
+			return null;
+
+		// triangles which are already connected (e.g. around a ladder next to stairs) keep their portal
+		if(triangleBottom.getNeighbors().containsKey(triangleTop))
+			return null;
+
+		return new NavMeshLadder(triangleBottom, positionBottom, triangleTop, positionTop, ladder.getDirection());
+	}
+
+	private NavMeshTriangle getTriangleAt(GeneratorCell cell, Vector3D position, TiledNavMesh navMesh)
+	{
+		if(cell.rectangle != null)
+			return cell.rectangle.getTriangleAt(position);
+
+		return navMesh == null ? null : navMesh.getTileTriangleAt(position);
+	}
+
+	private void addLadder(NavMesh navMesh, NavMeshLadder ladder)
+	{
+		if(ladder == null)
+			return;
+
+		navMesh.createLadder(ladder.getTriangleBottom(), ladder.getPositionBottom(), ladder.getTriangleTop(),
+				ladder.getPositionTop(), ladder.getLadderDirection());
+	}
+
+	private boolean isInTile(Vector3D position, GeneratorTile tile)
+	{
+		int x = (int) Math.floor(position.x);
+		int z = (int) Math.floor(position.z);
+		return x >= tile.minX && x <= tile.maxX && z >= tile.minZ && z <= tile.maxZ;
+	}
+
+	private GeneratorCell findLadderTop(GeneratorLadder ladder)
+	{
+		// usually the ladder leads up a wall, so the agent leaves it onto the block it is attached to
+		int[][] offsets = {{ladder.getWallDX(), ladder.getWallDZ()}, {0, 0}, {1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+		for(int y = ladder.topY+1; y >= ladder.topY; y--)
+			for(int[] offset : offsets)
+			{
+				GeneratorCell cell = getCell(ladder.x+offset[0], y, ladder.z+offset[1]);
+				if(cell != null && cell.y > ladder.bottomY)
+					return cell;
+			}
+
+		return null;
+	}
+
+}
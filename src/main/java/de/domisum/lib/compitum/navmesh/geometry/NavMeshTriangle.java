@@ -7,6 +7,7 @@ import de.domisum.lib.compitum.navmesh.transition.NavMeshTriangleTransition;
 import lombok.Setter;
 import org.bukkit.Location;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -25,10 +26,11 @@ public class NavMeshTriangle
 	public final NavMeshPoint point2;
 	public final NavMeshPoint point3;
 
-	public final Map<NavMeshTriangle, NavMeshTriangleTransition> neighbors = new HashMap<>();
+	// replaced on every change, so readers on other threads always see a complete map
+	private volatile Map<NavMeshTriangle, NavMeshTriangleTransition> neighbors = Collections.emptyMap();
 
 	// STATUS
-	@Setter private Vector3D heuristicCenter;
+	@Setter private volatile Vector3D heuristicCenter;
 
 
 	// INIT
@@ -83,6 +85,11 @@ public class NavMeshTriangle
 		return this.heuristicCenter;
 	}
 
+	public boolean hasHeuristicCenter()
+	{
+		return this.heuristicCenter != null;
+	}
+
 
 	// relational
 	public boolean isUsingPoint(NavMeshPoint point)
@@ -90,6 +97,11 @@ public class NavMeshTriangle
 		return this.point1 == point || this.point2 == point || this.point3 == point;
 	}
 
+	public Map<NavMeshTriangle, NavMeshTriangleTransition> getNeighbors()
+	{
+		return this.neighbors;
+	}
+
 	public NavMeshTriangleTransition getTransitionTo(NavMeshTriangle other)
 	{
 		return this.neighbors.get(other);
@@ -104,16 +116,18 @@ public class NavMeshTriangle
 
 	public boolean doesContain(Vector3D point)
 	{
-		if(Math.abs(getCenter().y-point.y) >= 2)
-			return false;
+		return doesContain(point.x, point.y, point.z);
+	}
 
-		Vector3D a = this.point1.getPositionVector();
-		Vector3D b = this.point2.getPositionVector();
-		Vector3D c = this.point3.getPositionVector();
+	public boolean doesContain(double x, double y, double z)
+	{
+		double centerY = (this.point1.getY()+this.point2.getY()+this.point3.getY())/3;
+		if(Math.abs(centerY-y) >= 2)
+			return false;
 
-		double ab = sign(point, a, b);
-		double bc = sign(point, b, c);
-		double ca = sign(point, c, a);
+		double ab = sign(x, z, this.point1, this.point2);
+		double bc = sign(x, z, this.point2, this.point3);
+		double ca = sign(x, z, this.point3, this.point1);
 
 		if(Math.abs(ab) < CONTAINS_TOLERANCE)
 		{
@@ -158,14 +172,14 @@ public class NavMeshTriangle
 						.warning("Overridden NavMesh neighbor: "+currentTransition+"' overridden by '"+transition+"'");
 		}
 
-		this.neighbors.put(other, transition);
-		other.neighbors.put(this, transition);
+		putNeighbor(other, transition);
+		other.putNeighbor(this, transition);
 	}
 
 	public void removeNeighbor(NavMeshTriangle other)
 	{
-		this.neighbors.remove(other);
-		other.neighbors.remove(this);
+		removeNeighborEntry(other);
+		other.removeNeighborEntry(this);
 	}
 
 	public void clearNeighbors()
@@ -175,10 +189,28 @@ public class NavMeshTriangle
 	}
 
 
+	private void putNeighbor(NavMeshTriangle other, NavMeshTriangleTransition transition)
+	{
+		Map<NavMeshTriangle, NavMeshTriangleTransition> newNeighbors = new HashMap<>(this.neighbors);
+		newNeighbors.put(other, transition);
+		this.neighbors = Collections.unmodifiableMap(newNeighbors);
+	}
+
+	private void removeNeighborEntry(NavMeshTriangle other)
+	{
+		if(!this.neighbors.containsKey(other))
+			return;
+
+		Map<NavMeshTriangle, NavMeshTriangleTransition> newNeighbors = new HashMap<>(this.neighbors);
+		newNeighbors.remove(other);
+		this.neighbors = Collections.unmodifiableMap(newNeighbors);
+	}
+
+
 	// UTIL
-	private double sign(Vector3D p1, Vector3D p2, Vector3D p3)
+	private double sign(double x, double z, NavMeshPoint p2, NavMeshPoint p3)
 	{
-		return (p1.x-p3.x)*(p2.z-p3.z)-(p2.x-p3.x)*(p1.z-p3.z);
+		return (x-p3.getX())*(p2.getZ()-p3.getZ())-(p2.getX()-p3.getX())*(z-p3.getZ());
 	}
 
 }
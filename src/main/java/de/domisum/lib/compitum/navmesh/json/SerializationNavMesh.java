@@ -6,15 +6,19 @@ import de.domisum.lib.auxilium.util.java.annotations.InitByDeserialization;
 import de.domisum.lib.compitum.navmesh.NavMesh;
 import de.domisum.lib.compitum.navmesh.geometry.NavMeshPoint;
 import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
+import de.domisum.lib.compitum.navmesh.pathfinding.NavMeshLandmarks;
 import de.domisum.lib.compitum.navmesh.transition.NavMeshLadder;
 import de.domisum.lib.compitum.navmesh.transition.NavMeshTriangleTransition;
 import org.bukkit.Bukkit;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 public class SerializationNavMesh
 {
@@ -29,6 +33,10 @@ public class SerializationNavMesh
 	@InitByDeserialization private List<SerializationNavMeshTriangle> triangles = new ArrayList<>();
 	@InitByDeserialization private List<SerializationNavMeshLadder> ladders = new ArrayList<>();
 
+	// PATHFINDING
+	@InitByDeserialization private List<String> landmarks = new ArrayList<>();
+	@InitByDeserialization private Map<String, double[]> landmarkDistances = new TreeMap<>(); // <triangleId, distances>
+
 
 	// INIT
 	@DeserializationNoArgsConstructor public SerializationNavMesh()
@@ -49,7 +57,7 @@ public class SerializationNavMesh
 		{
 			this.triangles.add(new SerializationNavMeshTriangle(triangle));
 
-			for(NavMeshTriangleTransition transition : triangle.neighbors.values())
+			for(NavMeshTriangleTransition transition : triangle.getNeighbors().values())
 				if(transition instanceof NavMeshLadder)
 				{
 					NavMeshLadder navMeshLadder = (NavMeshLadder) transition;
@@ -63,6 +71,16 @@ public class SerializationNavMesh
 		this.points.sort(Comparator.comparing(NavMeshPoint::getId));
 		this.triangles.sort(Comparator.comparing(SerializationNavMeshTriangle::getId));
 		this.ladders.sort(Comparator.comparing(SerializationNavMeshLadder::getTriangleBottom));
+
+		// landmarks which were selected for an earlier version of the mesh are selected again after loading
+		NavMeshLandmarks navMeshLandmarks = mesh.getLandmarks();
+		if(navMeshLandmarks == null || !navMeshLandmarks.isValidFor(mesh.getTriangles()))
+			return;
+
+		for(NavMeshTriangle landmark : navMeshLandmarks.getLandmarks())
+			this.landmarks.add(landmark.id);
+		for(NavMeshTriangle triangle : mesh.getTriangles())
+			this.landmarkDistances.put(triangle.id, navMeshLandmarks.getDistances(triangle));
 	}
 
 	public NavMesh convertToNavMesh(String id)
@@ -74,12 +92,45 @@ public class SerializationNavMesh
 		NavMesh navMesh = new NavMesh(id, this.rangeCenter, this.range, Bukkit.getWorld(this.worldName), this.points, triangles);
 
 		for(SerializationNavMeshLadder serializationLadder : this.ladders)
+			navMesh.addLoadedLadder(serializationLadder.getNavMeshLadder(navMesh));
+
+		NavMeshLandmarks navMeshLandmarks = getNavMeshLandmarks(navMesh);
+		if(navMeshLandmarks != null)
+			navMesh.setLandmarks(navMeshLandmarks);
+
+		return navMesh;
+	}
+
+	/**
+	 * @return the stored landmarks, or null if there are none or they don't fit the triangles of the NavMesh (e.g. the
+	 * file was edited by hand), in which case they are selected again when needed
+	 */
+	private NavMeshLandmarks getNavMeshLandmarks(NavMesh navMesh)
+	{
+		if(this.landmarks.isEmpty())
+			return null;
+
+		List<NavMeshTriangle> navMeshLandmarks = new ArrayList<>();
+		for(String landmarkId : this.landmarks)
 		{
-			NavMeshLadder ladder = serializationLadder.getNavMeshLadder(navMesh);
-			ladder.getTriangleBottom().makeNeighbors(ladder.getTriangleTop(), ladder);
+			NavMeshTriangle landmark = navMesh.getTriangle(landmarkId);
+			if(landmark == null)
+				return null;
+
+			navMeshLandmarks.add(landmark);
 		}
 
-		return navMesh;
+		Map<NavMeshTriangle, double[]> distances = new HashMap<>();
+		for(Map.Entry<String, double[]> entry : this.landmarkDistances.entrySet())
+		{
+			NavMeshTriangle triangle = navMesh.getTriangle(entry.getKey());
+			if(triangle == null || entry.getValue().length != navMeshLandmarks.size())
+				return null;
+
+			distances.put(triangle, entry.getValue());
+		}
+
+		return new NavMeshLandmarks(navMeshLandmarks, distances);
 	}
 
 }
@@ -1,5 +1,6 @@
 package de.domisum.lib.compitum.navmesh.json;
 
+import de.domisum.lib.auxilium.data.container.math.Vector3D;
 import de.domisum.lib.auxilium.util.java.annotations.DeserializationNoArgsConstructor;
 import de.domisum.lib.auxilium.util.java.annotations.InitByDeserialization;
 import de.domisum.lib.compitum.navmesh.geometry.NavMeshPoint;
@@ -18,6 +19,8 @@ class SerializationNavMeshTriangle
 	@InitByDeserialization private String point2;
 	@InitByDeserialization private String point3;
 
+	@InitByDeserialization private Vector3D heuristicCenter;
+
 
 	// INIT
 	@DeserializationNoArgsConstructor public SerializationNavMeshTriangle()
@@ -32,14 +35,22 @@ class SerializationNavMeshTriangle
 		this.point1 = navMeshTriangle.point1.getId();
 		this.point2 = navMeshTriangle.point2.getId();
 		this.point3 = navMeshTriangle.point3.getId();
+
+		this.heuristicCenter = navMeshTriangle.getHeuristicCenter();
 	}
 
 
 	// GETTERS
 	protected NavMeshTriangle getNavMeshTriangle(Collection<NavMeshPoint> points)
 	{
-		return new NavMeshTriangle(this.id, getPoint(points, this.point1), getPoint(points, this.point2),
+		NavMeshTriangle triangle = new NavMeshTriangle(this.id, getPoint(points, this.point1), getPoint(points, this.point2),
 				getPoint(points, this.point3));
+
+		// files saved before the heuristic centers were stored don't have them, they are determined when loading the mesh
+		if(this.heuristicCenter != null)
+			triangle.setHeuristicCenter(this.heuristicCenter);
+
+		return triangle;
 	}
 
 	private NavMeshPoint getPoint(Collection<NavMeshPoint> points, String id)
@@ -0,0 +1,196 @@
+package de.domisum.lib.compitum.navmesh.pathfinding;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.auxilium.util.time.ProfilerStopWatch;
+import de.domisum.lib.auxiliumspigot.util.LocationUtil;
+import de.domisum.lib.compitum.navmesh.NavMesh;
+import de.domisum.lib.compitum.navmesh.NavMeshSnapshot;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
+import de.domisum.lib.compitum.navmesh.pathfinding.traversal.NavMeshTriangleTraverser;
+import de.domisum.lib.compitum.path.Path;
+import de.domisum.lib.compitum.path.node.weighted.DistanceEntry;
+import org.bukkit.Location;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Finds the paths from multiple starts to the same target on a NavMesh with one search running backwards from the target
+ * triangle. The search stops as soon as all start triangles are reached, the triangle sequences are read from the same
+ * search tree and traversed separately.
+ */
+@API
+public class NavMeshBatchPathfinder
+{
+
+	// PROPERTIES
+	private int maxNodeVisits = 1000;
+	private double agentRadius = 0;
+
+	// INPUT
+	private List<Location> startLocations;
+	private Location targetLocation;
+	private NavMesh navMesh;
+
+	// STATUS
+	private NavMeshSnapshot snapshot;
+	private Map<NavMeshTriangle, Double> distances = new HashMap<>();
+	private Map<NavMeshTriangle, NavMeshTriangle> nextTriangles = new HashMap<>(); // <triangle, next towards target>
+	private Set<NavMeshTriangle> settledTriangles = new HashSet<>(); // the distance is final
+	private int visitedNodeCount = 0;
+
+	private ProfilerStopWatch stopWatch = new ProfilerStopWatch("pathfinding.navMesh.batch");
+
+	// OUTPUT
+	private List<Path> paths;
+	private String failure;
+
+
+	// INIT
+	@API public NavMeshBatchPathfinder(List<Location> startLocations, Location targetLocation, NavMesh navMesh)
+	{
+		this.startLocations = startLocations;
+		this.targetLocation = targetLocation;
+
+		this.navMesh = navMesh;
+	}
+
+
+	// GETTERS
+	/**
+	 * @return the paths in the order of the start locations, null for the starts no path was found for, including the
+	 * ones the search didn't reach before the node visit limit
+	 */
+	@API public List<Path> getPaths()
+	{
+		return this.paths;
+	}
+
+	@API public String getFailure()
+	{
+		return this.failure;
+	}
+
+	@API public ProfilerStopWatch getStopWatch()
+	{
+		return this.stopWatch;
+	}
+
+
+	// SETTERS
+	@API public void setMaxNodeVisits(int maxNodeVisits)
+	{
+		this.maxNodeVisits = maxNodeVisits;
+	}
+
+	@API public void setAgentRadius(double agentRadius)
+	{
+		this.agentRadius = agentRadius;
+	}
+
+
+	// PATHFINDING
+	@API public void findPaths()
+	{
+		this.stopWatch.start();
+		this.snapshot = this.navMesh.getSnapshot();
+
+		NavMeshTriangle targetTriangle = this.snapshot.getTriangleAt(this.targetLocation);
+		if(targetTriangle == null)
+		{
+			this.failure = "Target location is not on NavMesh";
+			this.stopWatch.stop();
+			return;
+		}
+
+		List<NavMeshTriangle> startTriangles = new ArrayList<>();
+		for(Location startLocation : this.startLocations)
+			startTriangles.add(this.snapshot.getTriangleAt(startLocation));
+
+		Set<NavMeshTriangle> unreachedTriangles = new HashSet<>(startTriangles);
+		unreachedTriangles.remove(null);
+		searchBackwards(targetTriangle, unreachedTriangles);
+
+		int missingPathCount = 0;
+		this.paths = new ArrayList<>(this.startLocations.size());
+		for(int i = 0; i < this.startLocations.size(); i++)
+		{
+			Path path = extractPath(this.startLocations.get(i), startTriangles.get(i));
+			this.paths.add(path);
+
+			if(path == null)
+				missingPathCount++;
+		}
+
+		if(missingPathCount > 0)
+		{
+			this.failure = "No path found for "+missingPathCount+" start(s)";
+			if(this.visitedNodeCount >= this.maxNodeVisits)
+				this.failure += " before the node visit limit was reached";
+		}
+
+		this.stopWatch.stop();
+	}
+
+	private void searchBackwards(NavMeshTriangle targetTriangle, Set<NavMeshTriangle> unreachedTriangles)
+	{
+		PriorityQueue<DistanceEntry<NavMeshTriangle>> queue = new PriorityQueue<>();
+
+		this.distances.put(targetTriangle, 0d);
+		queue.add(new DistanceEntry<>(targetTriangle, 0));
+		while(!queue.isEmpty() && !unreachedTriangles.isEmpty() && this.visitedNodeCount < this.maxNodeVisits)
+		{
+			DistanceEntry<NavMeshTriangle> entry = queue.poll();
+			if(entry.distance > this.distances.get(entry.element))
+				continue;
+
+			// the distance of a triangle is final once it is taken from the queue
+			this.settledTriangles.add(entry.element);
+			unreachedTriangles.remove(entry.element);
+			this.visitedNodeCount++;
+
+			// the transitions have the same weight in both directions
+			for(NavMeshTriangle neighbor : this.snapshot.getNeighbors(entry.element).keySet())
+			{
+				double distance = entry.distance+this.snapshot.getWeight(entry.element, neighbor);
+
+				Double currentDistance = this.distances.get(neighbor);
+				if(currentDistance != null && currentDistance <= distance)
+					continue;
+
+				this.distances.put(neighbor, distance);
+				this.nextTriangles.put(neighbor, entry.element);
+				queue.add(new DistanceEntry<>(neighbor, distance));
+			}
+		}
+	}
+
+	private Path extractPath(Location startLocation, NavMeshTriangle startTriangle)
+	{
+		// if the search was stopped early, the distance of a triangle which wasn't settled is only tentative and the
+		// path to it might not be the shortest one, the triangles after a settled one are all settled as well
+		if(startTriangle == null || !this.settledTriangles.contains(startTriangle))
+			return null;
+
+		List<NavMeshTriangle> triangleSequence = new ArrayList<>();
+		NavMeshTriangle triangle = startTriangle;
+		while(triangle != null)
+		{
+			triangleSequence.add(triangle);
+			triangle = this.nextTriangles.get(triangle);
+		}
+
+		NavMeshTriangleTraverser triangleTraverser = new NavMeshTriangleTraverser(this.snapshot,
+				LocationUtil.toVector3D(startLocation),
+				LocationUtil.toVector3D(this.targetLocation), triangleSequence);
+		triangleTraverser.setAgentRadius(this.agentRadius);
+		triangleTraverser.traverseTriangles();
+		return triangleTraverser.getPath();
+	}
+
+}
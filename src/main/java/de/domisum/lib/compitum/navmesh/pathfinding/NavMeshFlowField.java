@@ -0,0 +1,193 @@
+package de.domisum.lib.compitum.navmesh.pathfinding;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.auxiliumspigot.util.LocationUtil;
+import de.domisum.lib.compitum.navmesh.NavMeshSnapshot;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
+import de.domisum.lib.compitum.navmesh.pathfinding.traversal.NavMeshTriangleTraverser;
+import de.domisum.lib.compitum.path.Path;
+import de.domisum.lib.compitum.path.node.weighted.DistanceEntry;
+import org.bukkit.Location;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The distance to a target triangle and the next triangle on the shortest way there, for every triangle of a NavMesh.
+ * It is calculated once with a Dijkstra search from the target, after that every agent heading to the target only has
+ * to look up the triangle it is in. Flow fields are shared by all agents heading to the same target, so they don't hold
+ * anything specific to an agent, the radius of the agent is passed when creating its path.
+ */
+@API
+public class NavMeshFlowField
+{
+
+	// CONSTANTS
+	private static final double UNREACHABLE = -1;
+
+	// INPUT
+	private final NavMeshSnapshot snapshot;
+	private final NavMeshTriangle targetTriangle;
+
+	// STATUS
+	private final Map<NavMeshTriangle, FlowEntry> entries = new HashMap<>();
+
+
+	// INIT
+	public NavMeshFlowField(NavMeshSnapshot snapshot, NavMeshTriangle targetTriangle)
+	{
+		this.snapshot = snapshot;
+		this.targetTriangle = targetTriangle;
+
+		calculate();
+	}
+
+
+	// GETTERS
+	@API public NavMeshSnapshot getSnapshot()
+	{
+		return this.snapshot;
+	}
+
+	@API public NavMeshTriangle getTargetTriangle()
+	{
+		return this.targetTriangle;
+	}
+
+	@API public boolean isReachable(NavMeshTriangle triangle)
+	{
+		return this.entries.containsKey(triangle);
+	}
+
+	/**
+	 * @param triangle the triangle to get the distance of
+	 * @return the distance from the triangle to the target, -1 if the target can't be reached from the triangle
+	 */
+	@API public double getDistance(NavMeshTriangle triangle)
+	{
+		FlowEntry entry = this.entries.get(triangle);
+		return entry == null ? UNREACHABLE : entry.distance;
+	}
+
+	/**
+	 * @param triangle the triangle the agent is in
+	 * @return the next triangle on the shortest way to the target, null if the triangle is the target or the target
+	 * can't be reached from the triangle
+	 */
+	@API public NavMeshTriangle getNextTriangle(NavMeshTriangle triangle)
+	{
+		FlowEntry entry = this.entries.get(triangle);
+		return entry == null ? null : entry.nextTriangle;
+	}
+
+	/**
+	 * @param startTriangle the triangle to start at
+	 * @return the triangles from the start triangle to the target triangle, null if the target can't be reached or the
+	 * start triangle is not part of the snapshot of this flow field
+	 */
+	@API public List<NavMeshTriangle> getTriangleSequence(NavMeshTriangle startTriangle)
+	{
+		if(!isReachable(startTriangle))
+			return null;
+
+		List<NavMeshTriangle> triangleSequence = new ArrayList<>();
+		for(NavMeshTriangle t = startTriangle; t != null; t = getNextTriangle(t))
+			triangleSequence.add(t);
+
+		return triangleSequence;
+	}
+
+
+	// PATH
+	/**
+	 * Creates the path from the start to the target by following the flow field and smoothing the triangle sequence
+	 * like the NavMeshPathfinder does. The path goes straight through the corners of the NavMesh.
+	 *
+	 * @param startLocation  the location to start at, inside of the start triangle
+	 * @param startTriangle  the triangle containing the start location
+	 * @param targetLocation the location to end at, inside of the target triangle
+	 * @return the path, null if the target can't be reached or the start triangle is not part of the snapshot of this
+	 * flow field
+	 */
+	@API public Path getPath(Location startLocation, NavMeshTriangle startTriangle, Location targetLocation)
+	{
+		return getPath(startLocation, startTriangle, targetLocation, 0);
+	}
+
+	/**
+	 * Creates the path like {@link #getPath(Location, NavMeshTriangle, Location)}, keeping the given distance to the
+	 * corners of the NavMesh.
+	 *
+	 * @param startLocation  the location to start at, inside of the start triangle
+	 * @param startTriangle  the triangle containing the start location
+	 * @param targetLocation the location to end at, inside of the target triangle
+	 * @param agentRadius    the radius of the agent walking the path
+	 * @return the path, null if the target can't be reached or the start triangle is not part of the snapshot of this
+	 * flow field
+	 */
+	@API public Path getPath(Location startLocation, NavMeshTriangle startTriangle, Location targetLocation,
+			double agentRadius)
+	{
+		List<NavMeshTriangle> triangleSequence = getTriangleSequence(startTriangle);
+		if(triangleSequence == null)
+			return null;
+
+		NavMeshTriangleTraverser triangleTraverser = new NavMeshTriangleTraverser(this.snapshot,
+				LocationUtil.toVector3D(startLocation),
+				LocationUtil.toVector3D(targetLocation), triangleSequence);
+		triangleTraverser.setAgentRadius(agentRadius);
+		triangleTraverser.traverseTriangles();
+		return triangleTraverser.getPath();
+	}
+
+
+	// CALCULATION
+	private void calculate()
+	{
+		PriorityQueue<FlowEntry> queue = new PriorityQueue<>();
+
+		FlowEntry targetEntry = new FlowEntry(this.targetTriangle, null, 0);
+		this.entries.put(this.targetTriangle, targetEntry);
+		queue.add(targetEntry);
+		while(!queue.isEmpty())
+		{
+			FlowEntry entry = queue.poll();
+			if(entry != this.entries.get(entry.element))
+				continue;
+
+			// the transitions have the same weight in both directions
+			for(NavMeshTriangle neighbor : this.snapshot.getNeighbors(entry.element).keySet())
+			{
+				double distance = entry.distance+this.snapshot.getWeight(entry.element, neighbor);
+
+				FlowEntry currentEntry = this.entries.get(neighbor);
+				if(currentEntry != null && currentEntry.distance <= distance)
+					continue;
+
+				FlowEntry newEntry = new FlowEntry(neighbor, entry.element, distance);
+				this.entries.put(neighbor, newEntry);
+				queue.add(newEntry);
+			}
+		}
+	}
+
+
+	private static class FlowEntry extends DistanceEntry<NavMeshTriangle>
+	{
+
+		private final NavMeshTriangle nextTriangle;
+
+
+		// INIT
+		private FlowEntry(NavMeshTriangle triangle, NavMeshTriangle nextTriangle, double distance)
+		{
+			super(triangle, distance);
+			this.nextTriangle = nextTriangle;
+		}
+
+	}
+
+}
@@ -0,0 +1,177 @@
+package de.domisum.lib.compitum.navmesh.pathfinding;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.navmesh.NavMeshSnapshot;
+import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
+import de.domisum.lib.compitum.path.node.weighted.DistanceEntry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Precomputed distances from a few landmark triangles to every triangle of a NavMesh. Because of the triangle inequality
+ * the difference of the distances of two triangles to a landmark is a lower bound for the distance between them, which
+ * is a lot tighter than the straight line distance around walls and between levels.
+ */
+public class NavMeshLandmarks
+{
+
+	// CONSTANTS
+	private static final int LANDMARK_COUNT = 4;
+	private static final double UNREACHABLE = -1;
+
+	// PROPERTIES
+	private final List<NavMeshTriangle> landmarks;
+	private final Map<NavMeshTriangle, double[]> distances; // <triangle, distance to each landmark>
+
+
+	// INIT
+	public NavMeshLandmarks(List<NavMeshTriangle> landmarks, Map<NavMeshTriangle, double[]> distances)
+	{
+		this.landmarks = landmarks;
+		this.distances = distances;
+	}
+
+	/**
+	 * Selects the landmarks by farthest point selection: every new landmark is the triangle that is the farthest away
+	 * from all landmarks selected before.
+	 *
+	 * @param snapshot the snapshot of the NavMesh
+	 * @return the landmarks of the NavMesh
+	 */
+	public static NavMeshLandmarks select(NavMeshSnapshot snapshot)
+	{
+		Collection<NavMeshTriangle> triangles = snapshot.getTriangles();
+
+		List<NavMeshTriangle> landmarks = new ArrayList<>();
+		List<Map<NavMeshTriangle, Double>> landmarkDistances = new ArrayList<>();
+		if(triangles.isEmpty())
+			return new NavMeshLandmarks(landmarks, new HashMap<>());
+
+		// the first landmark is the triangle farthest away from an arbitrary triangle
+		Map<NavMeshTriangle, Double> selectionDistances = calculateDistances(snapshot, triangles.iterator().next());
+		for(int i = 0; i < LANDMARK_COUNT; i++)
+		{
+			NavMeshTriangle farthest = null;
+			double farthestDistance = 0;
+			for(Map.Entry<NavMeshTriangle, Double> entry : selectionDistances.entrySet())
+				if(entry.getValue() > farthestDistance && !landmarks.contains(entry.getKey()))
+				{
+					farthest = entry.getKey();
+					farthestDistance = entry.getValue();
+				}
+
+			if(farthest == null)
+				break;
+
+			Map<NavMeshTriangle, Double> distances = calculateDistances(snapshot, farthest);
+			landmarks.add(farthest);
+			landmarkDistances.add(distances);
+
+			// for the next selection only the distance to the closest landmark counts
+			if(i == 0)
+				selectionDistances = new HashMap<>(distances);
+			else
+				for(Map.Entry<NavMeshTriangle, Double> entry : distances.entrySet())
+					selectionDistances.merge(entry.getKey(), entry.getValue(), Math::min);
+		}
+
+		Map<NavMeshTriangle, double[]> distances = new HashMap<>();
+		for(NavMeshTriangle triangle : triangles)
+		{
+			double[] triangleDistances = new double[landmarks.size()];
+			for(int i = 0; i < landmarks.size(); i++)
+				triangleDistances[i] = landmarkDistances.get(i).getOrDefault(triangle, UNREACHABLE);
+
+			distances.put(triangle, triangleDistances);
+		}
+
+		return new NavMeshLandmarks(landmarks, distances);
+	}
+
+
+	// GETTERS
+	@API public List<NavMeshTriangle> getLandmarks()
+	{
+		return Collections.unmodifiableList(this.landmarks);
+	}
+
+	public double[] getDistances(NavMeshTriangle triangle)
+	{
+		return this.distances.get(triangle);
+	}
+
+	public boolean isValidFor(Collection<NavMeshTriangle> triangles)
+	{
+		if(this.distances.size() != triangles.size())
+			return false;
+
+		for(NavMeshTriangle triangle : triangles)
+		{
+			double[] triangleDistances = this.distances.get(triangle);
+			if(triangleDistances == null || triangleDistances.length != this.landmarks.size())
+				return false;
+		}
+
+		return true;
+	}
+
+
+	// HEURISTIC
+	public double getLowerBound(NavMeshTriangle from, NavMeshTriangle to)
+	{
+		double[] fromDistances = this.distances.get(from);
+		double[] toDistances = this.distances.get(to);
+		if(fromDistances == null || toDistances == null)
+			return 0;
+
+		double lowerBound = 0;
+		for(int i = 0; i < fromDistances.length; i++)
+		{
+			if(fromDistances[i] == UNREACHABLE || toDistances[i] == UNREACHABLE)
+				continue;
+
+			// the transitions have the same weight in both directions, so the difference works both ways
+			lowerBound = Math.max(lowerBound, Math.abs(toDistances[i]-fromDistances[i]));
+		}
+
+		return lowerBound;
+	}
+
+
+	// DISTANCES
+	private static Map<NavMeshTriangle, Double> calculateDistances(NavMeshSnapshot snapshot, NavMeshTriangle landmark)
+	{
+		Map<NavMeshTriangle, Double> distances = new HashMap<>();
+		PriorityQueue<DistanceEntry<NavMeshTriangle>> queue = new PriorityQueue<>();
+
+		distances.put(landmark, 0d);
+		queue.add(new DistanceEntry<>(landmark, 0));
+		while(!queue.isEmpty())
+		{
+			DistanceEntry<NavMeshTriangle> entry = queue.poll();
+			if(entry.distance > distances.get(entry.element))
+				continue;
+
+			for(NavMeshTriangle neighbor : snapshot.getNeighbors(entry.element).keySet())
+			{
+				double distance = entry.distance+snapshot.getWeight(entry.element, neighbor);
+
+				Double currentDistance = distances.get(neighbor);
+				if(currentDistance != null && currentDistance <= distance)
+					continue;
+
+				distances.put(neighbor, distance);
+				queue.add(new DistanceEntry<>(neighbor, distance));
+			}
+		}
+
+		return distances;
+	}
+
+}
@@ -1,9 +1,12 @@
 package de.domisum.lib.compitum.navmesh.pathfinding;
 
+import de.domisum.lib.auxilium.data.container.math.Vector3D;
 import de.domisum.lib.auxilium.util.java.annotations.API;
 import de.domisum.lib.auxilium.util.time.ProfilerStopWatch;
 import de.domisum.lib.auxiliumspigot.util.LocationUtil;
 import de.domisum.lib.compitum.navmesh.NavMesh;
+import de.domisum.lib.compitum.metrics.PathfindingStats;
+import de.domisum.lib.compitum.navmesh.NavMeshSnapshot;
 import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
 import de.domisum.lib.compitum.navmesh.pathfinding.traversal.NavMeshTriangleTraverser;
 import de.domisum.lib.compitum.path.Path;
@@ -15,6 +18,10 @@ import java.util.List;
 public class NavMeshPathfinder
 {
 
+	// PROPERTIES
+	private double agentRadius = 0;
+	private boolean returnPartialPath = false;
+
 	// INPUT
 	private Location startLocation;
 	private Location targetLocation;
@@ -23,9 +30,12 @@ public class NavMeshPathfinder
 	// STATUS
 	private ProfilerStopWatch stopWatch = new ProfilerStopWatch("pathfinding.navMesh");
 	private ProfilerStopWatch triangleFindingStopWatch = new ProfilerStopWatch("pathfinding.navMesh.startTargetTriangles");
+	private PathfindingStats stats = new PathfindingStats("navMesh");
+	private long navMeshVersion = -1;
 
 	// OUTPUT
 	private Path path;
+	private boolean pathPartial = false;
 	private String failure;
 
 
@@ -50,26 +60,67 @@ public class NavMeshPathfinder
 		return this.failure;
 	}
 
+	/**
+	 * @return true if the path doesn't reach the target, but leads to the center of the triangle closest to it
+	 */
+	@API public boolean isPathPartial()
+	{
+		return this.pathPartial;
+	}
+
+	/**
+	 * @return the version of the NavMesh snapshot the pathfinding used, -1 if it hasn't started yet
+	 */
+	@API public long getNavMeshVersion()
+	{
+		return this.navMeshVersion;
+	}
+
 
 	public ProfilerStopWatch getStopWatch()
 	{
 		return this.stopWatch;
 	}
 
+	/**
+	 * @return the cost of the pathfinding, with the phases triangleLookup, triangleSequence and traversal
+	 */
+	@API public PathfindingStats getStats()
+	{
+		return this.stats;
+	}
+
+
+	// SETTERS
+	@API public void setAgentRadius(double agentRadius)
+	{
+		this.agentRadius = agentRadius;
+	}
+
+	@API public void setReturnPartialPath(boolean returnPartialPath)
+	{
+		this.returnPartialPath = returnPartialPath;
+	}
+
 
 	// PATHFINDING
 	@API public void findPath()
 	{
 		this.stopWatch.start();
+		// the whole search uses the same version of the mesh, even if it is edited in the meantime
+		NavMeshSnapshot snapshot = this.navMesh.getSnapshot();
+		this.navMeshVersion = snapshot.getVersion();
+
 		this.triangleFindingStopWatch.start();
-		NavMeshTriangle startTriangle = this.navMesh.getTriangleAt(this.startLocation);
+		long phaseStartNano = System.nanoTime();
+		NavMeshTriangle startTriangle = snapshot.getTriangleAt(this.startLocation);
 		if(startTriangle == null)
 		{
 			this.failure = "Start location is not on NavMesh";
 			return;
 		}
 
-		NavMeshTriangle targetTriangle = this.navMesh.getTriangleAt(this.targetLocation);
+		NavMeshTriangle targetTriangle = snapshot.getTriangleAt(this.targetLocation);
 		if(targetTriangle == null)
 		{
 			this.failure = "Target location is not on NavMesh";
@@ -77,9 +128,17 @@ public class NavMeshPathfinder
 		}
 
 		this.triangleFindingStopWatch.stop();
+		phaseStartNano = recordPhase("triangleLookup", phaseStartNano);
 
-		NavMeshTrianglePathfinder trianglePathfinder = new NavMeshTrianglePathfinder(startTriangle, targetTriangle);
+		NavMeshTrianglePathfinder trianglePathfinder = new NavMeshTrianglePathfinder(snapshot, startTriangle,
+				targetTriangle);
+		trianglePathfinder.setLandmarks(snapshot.getLandmarks());
+		trianglePathfinder.setReturnPartialPath(this.returnPartialPath);
 		trianglePathfinder.findPath();
+		phaseStartNano = recordPhase("triangleSequence", phaseStartNano);
+		this.stats.setVisitedNodes(trianglePathfinder.getVisitedNodeCount());
+		this.stats.setOpenSetPeak(trianglePathfinder.getOpenSetPeak());
+
 		List<NavMeshTriangle> triangleSequence = trianglePathfinder.getTriangleSequence();
 		if(triangleSequence == null)
 		{
@@ -87,11 +146,28 @@ public class NavMeshPathfinder
 			return;
 		}
 
-		NavMeshTriangleTraverser triangleTraverser = new NavMeshTriangleTraverser(LocationUtil.toVector3D(this.startLocation),
-				LocationUtil.toVector3D(this.targetLocation), triangleSequence);
+		// a partial path ends in the middle of the last triangle it reaches
+		this.pathPartial = trianglePathfinder.isSequencePartial();
+		Vector3D pathTarget = this.pathPartial ?
+				triangleSequence.get(triangleSequence.size()-1).getCenter() :
+				LocationUtil.toVector3D(this.targetLocation);
+		if(this.pathPartial)
+			this.failure = trianglePathfinder.getFailure();
+
+		NavMeshTriangleTraverser triangleTraverser = new NavMeshTriangleTraverser(snapshot,
+				LocationUtil.toVector3D(this.startLocation), pathTarget, triangleSequence);
+		triangleTraverser.setAgentRadius(this.agentRadius);
 		triangleTraverser.traverseTriangles();
 		this.path = triangleTraverser.getPath();
+		recordPhase("traversal", phaseStartNano);
+		if(this.path == null)
+		{
+			this.failure = "The triangle sequence is not connected in the snapshot of the NavMesh";
+			return;
+		}
 
+		this.stats.setPathFound(true);
+		this.stats.setPathPartial(this.pathPartial);
 		this.stopWatch.stop();
 
 
@@ -102,4 +178,12 @@ public class NavMeshPathfinder
 		DebugUtil.say(triangleTraverser.getStopWatch());*/
 	}
 
+	private long recordPhase(String phase, long phaseStartNano)
+	{
+		long nano = System.nanoTime();
+		this.stats.addPhaseNanos(phase, nano-phaseStartNano);
+
+		return nano;
+	}
+
 }
@@ -9,6 +9,7 @@ public class NavMeshTriangleNode implements WeightedNode
 	// REFERENCES
 	private NavMeshTriangle triangle;
 	private NavMeshTriangleNode parent;
+	private double weightFromParent;
 
 	// STATUS
 	private double gValue = -1;
@@ -16,10 +17,12 @@ public class NavMeshTriangleNode implements WeightedNode
 
 
 	// INIT
-	protected NavMeshTriangleNode(NavMeshTriangle triangle, NavMeshTriangleNode parent, double heuristicValue)
+	protected NavMeshTriangleNode(NavMeshTriangle triangle, NavMeshTriangleNode parent, double weightFromParent,
+			double heuristicValue)
 	{
 		this.triangle = triangle;
 		this.parent = parent;
+		this.weightFromParent = weightFromParent;
 
 		this.heuristicValue = heuristicValue;
 	}
@@ -59,9 +62,7 @@ public class NavMeshTriangleNode implements WeightedNode
 		if(this.gValue == -1)
 		{
 			double toParent = this.parent.getGValue();
-			double fromParent = this.parent.getTriangle().getTransitionTo(this.triangle).getWeight();
-
-			this.gValue = toParent+fromParent;
+			this.gValue = toParent+this.weightFromParent;
 		}
 
 		return this.gValue;
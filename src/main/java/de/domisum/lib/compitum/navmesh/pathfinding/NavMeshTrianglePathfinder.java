@@ -1,16 +1,16 @@
 package de.domisum.lib.compitum.navmesh.pathfinding;
 
+import de.domisum.lib.auxilium.data.container.math.Vector3D;
 import de.domisum.lib.auxilium.util.java.annotations.API;
 import de.domisum.lib.auxilium.util.time.ProfilerStopWatch;
+import de.domisum.lib.compitum.navmesh.NavMeshSnapshot;
 import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
-import de.domisum.lib.compitum.navmesh.transition.NavMeshTriangleTransition;
 import de.domisum.lib.compitum.path.node.weighted.SortedWeightedNodeList;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 @API
@@ -21,25 +21,33 @@ public class NavMeshTrianglePathfinder
 	private int maxNodeVisits = 200;
 
 	private boolean canUseLadders = true;
+	private boolean returnPartialPath = false;
 
 	// INPUT
+	private NavMeshSnapshot snapshot;
 	private NavMeshTriangle startTriangle;
 	private NavMeshTriangle targetTriangle;
+	private NavMeshLandmarks landmarks;
 
 	// STATUS
 	private Set<NavMeshTriangleNode> visitedNodes = new HashSet<>(this.maxNodeVisits);
 	private SortedWeightedNodeList<NavMeshTriangleNode> unvisitedNodes = new SortedWeightedNodeList<>(this.maxNodeVisits*3);
+	private NavMeshTriangleNode closestNode;
+	private int openSetPeak = 0;
 
 	private ProfilerStopWatch stopWatch = new ProfilerStopWatch("pathfinding.navMesh.triangleSequence");
 
 	// OUTPUT
 	private List<NavMeshTriangle> triangleSequence = null;
+	private boolean sequencePartial = false;
 	private String failure;
 
 
 	// INIT
-	@API public NavMeshTrianglePathfinder(NavMeshTriangle startTriangle, NavMeshTriangle targetTriangle)
+	@API public NavMeshTrianglePathfinder(NavMeshSnapshot snapshot, NavMeshTriangle startTriangle,
+			NavMeshTriangle targetTriangle)
 	{
+		this.snapshot = snapshot;
 		this.startTriangle = startTriangle;
 		this.targetTriangle = targetTriangle;
 	}
@@ -56,6 +64,24 @@ public class NavMeshTrianglePathfinder
 		return this.failure;
 	}
 
+	/**
+	 * @return true if the triangle sequence doesn't reach the target triangle, but ends at the triangle closest to it
+	 */
+	@API public boolean isSequencePartial()
+	{
+		return this.sequencePartial;
+	}
+
+	@API public int getVisitedNodeCount()
+	{
+		return this.visitedNodes.size();
+	}
+
+	@API public int getOpenSetPeak()
+	{
+		return this.openSetPeak;
+	}
+
 	@API public ProfilerStopWatch getStopWatch()
 	{
 		return this.stopWatch;
@@ -74,6 +100,22 @@ public class NavMeshTrianglePathfinder
 		this.canUseLadders = canUseLadders;
 	}
 
+	/**
+	 * Makes the pathfinder return the sequence to the visited triangle closest to the target if the maximum number of
+	 * node visits is reached.
+	 *
+	 * @param returnPartialPath whether the sequence to the closest triangle should be returned if the search gives up
+	 */
+	@API public void setReturnPartialPath(boolean returnPartialPath)
+	{
+		this.returnPartialPath = returnPartialPath;
+	}
+
+	@API public void setLandmarks(NavMeshLandmarks landmarks)
+	{
+		this.landmarks = landmarks;
+	}
+
 
 	// PATHFINDING
 	@API public void findPath()
@@ -84,12 +126,18 @@ public class NavMeshTrianglePathfinder
 
 		// pathfinding
 		this.unvisitedNodes
-				.addSorted(new NavMeshTriangleNode(this.startTriangle, null, calculateHeuristicValue(this.startTriangle)));
+				.addSorted(new NavMeshTriangleNode(this.startTriangle, null, 0, calculateHeuristicValue(this.startTriangle)));
 		while(true)
 		{
 			if(this.visitedNodes.size() >= this.maxNodeVisits)
 			{
 				this.failure = "Too many nodes visited";
+				if(this.returnPartialPath && this.closestNode != null && this.closestNode.getParent() != null)
+				{
+					targetNode = this.closestNode;
+					this.sequencePartial = true;
+				}
+
 				break;
 			}
 
@@ -108,6 +156,9 @@ public class NavMeshTrianglePathfinder
 
 			visitNode(node);
 			this.visitedNodes.add(node);
+			this.openSetPeak = Math.max(this.openSetPeak, this.unvisitedNodes.getSize());
+			if(this.closestNode == null || node.getHValue() < this.closestNode.getHValue())
+				this.closestNode = node;
 		}
 
 		// converting linked node list into triangle list
@@ -131,9 +182,10 @@ public class NavMeshTrianglePathfinder
 	private void visitNode(NavMeshTriangleNode node)
 	{
 		NavMeshTriangle triangle = node.getTriangle();
-		for(Map.Entry<NavMeshTriangle, NavMeshTriangleTransition> entry : triangle.neighbors.entrySet())
+		for(NavMeshTriangle neighbor : this.snapshot.getNeighbors(triangle).keySet())
 		{
-			NavMeshTriangleNode newNode = new NavMeshTriangleNode(entry.getKey(), node, calculateHeuristicValue(triangle));
+			NavMeshTriangleNode newNode = new NavMeshTriangleNode(neighbor, node, this.snapshot.getWeight(triangle, neighbor),
+					calculateHeuristicValue(neighbor));
 			if(this.visitedNodes.contains(newNode))
 				continue;
 
@@ -147,9 +199,12 @@ public class NavMeshTrianglePathfinder
 
 	private double calculateHeuristicValue(NavMeshTriangle triangle)
 	{
-		double dX = this.targetTriangle.getHeuristicCenter().x-triangle.getHeuristicCenter().x;
-		double dY = this.targetTriangle.getHeuristicCenter().y-triangle.getHeuristicCenter().y;
-		double dZ = this.targetTriangle.getHeuristicCenter().z-triangle.getHeuristicCenter().z;
+		Vector3D targetCenter = this.snapshot.getHeuristicCenter(this.targetTriangle);
+		Vector3D center = this.snapshot.getHeuristicCenter(triangle);
+
+		double dX = targetCenter.x-center.x;
+		double dY = targetCenter.y-center.y;
+		double dZ = targetCenter.z-center.z;
 
 		double dXAbs = Math.abs(dX);
 		double dYAbs = Math.abs(dY);
@@ -161,7 +216,11 @@ public class NavMeshTrianglePathfinder
 		double diagonalDistance = (maxD-minD)+minD*1.414;
 
 		// add dY to account for height difference
-		return diagonalDistance+dYAbs;
+		double distance = diagonalDistance+dYAbs;
+		if(this.landmarks == null)
+			return distance;
+
+		return Math.max(distance, this.landmarks.getLowerBound(triangle, this.targetTriangle));
 	}
 
 }
@@ -3,6 +3,7 @@ package de.domisum.lib.compitum.navmesh.pathfinding.traversal;
 import de.domisum.lib.auxilium.data.container.math.LineSegment3D;
 import de.domisum.lib.auxilium.data.container.math.Vector3D;
 import de.domisum.lib.auxilium.util.time.ProfilerStopWatch;
+import de.domisum.lib.compitum.navmesh.NavMeshSnapshot;
 import de.domisum.lib.compitum.navmesh.geometry.NavMeshTriangle;
 import de.domisum.lib.compitum.navmesh.transition.NavMeshLadder;
 import de.domisum.lib.compitum.navmesh.transition.NavMeshTrianglePortal;
@@ -14,29 +15,49 @@ import de.domisum.lib.compitum.path.node.TransitionType;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Pulls the string through the portals of a triangle sequence with the simple stupid funnel algorithm. The portals are
+ * read into a primitive array first, the funnel itself only works on doubles.
+ * <p>
+ * If an agent radius is set, the portals are shrunk by it on both ends, so the string keeps that distance to the
+ * corners. Around a corner vertex the string then runs along a circle of that radius, which is filled in with
+ * additional waypoints where the triangles around the vertex are too coarse.
+ */
 public class NavMeshTriangleTraverser
 {
 
+	// CONSTANTS
+	private static final int PORTAL_STRIDE = 6; // left x, y, z, right x, y, z
+	private static final int LEFT = 0;
+	private static final int RIGHT = 3;
+
+	private static final double CORNER_ARC_STEP = Math.PI/8; // max angle between waypoints on a rounded corner
+
+	// PROPERTIES
+	private double agentRadius = 0;
+
 	// INPUT
+	private NavMeshSnapshot snapshot;
 	private Vector3D startPosition;
 	private Vector3D targetPosition;
 	private List<NavMeshTriangle> triangleSequence;
 
 	// STATUS
 	private List<PathWaypoint> pathWaypoints = new ArrayList<>();
-	// triangle traversal
-	private Vector3D currentPosition;
-	private Vector3D visLeft;
-	private Vector3D visRight;
-	private int visLeftTriangleIndex;
-	private int visRightTriangleIndex;
 
-	private int currentTriangleIndex = 0;
-	private NavMeshTriangle triangle;
-	private NavMeshTriangle triangleAfter;
+	private double[] portals; // <transition index * PORTAL_STRIDE, endpoint coordinates>
+	private double[] portalVertices; // <transition index * PORTAL_STRIDE, endpoint coordinates before shrinking>
+	private NavMeshLadder[] ladders; // <transition index, ladder or null if the transition is a portal>
 
-	private Vector3D portalEndpointLeft;
-	private Vector3D portalEndpointRight;
+	// funnel
+	private double apexX;
+	private double apexY;
+	private double apexZ;
+
+	private boolean apexIsCorner = false;
+	private double apexVertexX;
+	private double apexVertexY;
+	private double apexVertexZ;
 
 	private ProfilerStopWatch stopWatch = new ProfilerStopWatch("pathfinding.navMesh.triangleTraversal");
 
@@ -45,8 +66,10 @@ public class NavMeshTriangleTraverser
 
 
 	// INIT
-	public NavMeshTriangleTraverser(Vector3D startPosition, Vector3D targetPosition, List<NavMeshTriangle> triangleSequence)
+	public NavMeshTriangleTraverser(NavMeshSnapshot snapshot, Vector3D startPosition, Vector3D targetPosition,
+			List<NavMeshTriangle> triangleSequence)
 	{
+		this.snapshot = snapshot;
 		this.startPosition = startPosition;
 		this.targetPosition = targetPosition;
 
@@ -55,6 +78,10 @@ public class NavMeshTriangleTraverser
 
 
 	// GETTERS
+	/**
+	 * @return the path through the triangles, null if two consecutive triangles of the sequence are not neighbors in
+	 * the snapshot (e.g. because the sequence was found on another snapshot)
+	 */
 	public Path getPath()
 	{
 		return this.path;
@@ -66,24 +93,16 @@ public class NavMeshTriangleTraverser
 	}
 
 
-	private Vector3D getTowardsVisLeft()
+	// SETTERS
+	/**
+	 * Sets the distance the path keeps to the corners of the NavMesh. Portals narrower than twice the radius are passed
+	 * through their middle.
+	 *
+	 * @param agentRadius the radius of the agent walking the path
+	 */
+	public void setAgentRadius(double agentRadius)
 	{
-		return this.visLeft.subtract(this.currentPosition);
-	}
-
-	private Vector3D getTowardsVisRight()
-	{
-		return this.visRight.subtract(this.currentPosition);
-	}
-
-	private Vector3D getTowardsPortalEndpointLeft()
-	{
-		return this.portalEndpointLeft.subtract(this.currentPosition);
-	}
-
-	private Vector3D getTowardsPortalEndpointRight()
-	{
-		return this.portalEndpointRight.subtract(this.currentPosition);
+		this.agentRadius = agentRadius;
 	}
 
 
@@ -92,183 +111,333 @@ public class NavMeshTriangleTraverser
 	{
 		this.stopWatch.start();
 
-		this.currentPosition = this.startPosition;
+		setApex(this.startPosition.x, this.startPosition.y, this.startPosition.z);
+		if(!readTransitions())
+		{
+			this.stopWatch.stop();
+			return;
+		}
 
-		if(this.triangleSequence.size() == 1)
-			this.pathWaypoints.add(new PathWaypoint(this.targetPosition, TransitionType.WALK));
-		else
+		int transitionCount = this.triangleSequence.size()-1;
+		int segmentStart = 0;
+		for(int i = 0; i < transitionCount; i++)
 		{
-			for(this.currentTriangleIndex = 0;
-			    this.currentTriangleIndex < this.triangleSequence.size(); this.currentTriangleIndex++)
-				processTriangleTransition();
+			NavMeshLadder ladder = this.ladders[i];
+			if(ladder == null)
+				continue;
+
+			useLadder(segmentStart, i, ladder);
+			segmentStart = i+1;
 		}
 
+		Vector3D target = this.targetPosition;
+		pullString(segmentStart, transitionCount, target.x, target.z);
+		this.pathWaypoints.add(new PathWaypoint(target, TransitionType.WALK));
+
 		this.path = new Path(this.pathWaypoints);
 		this.stopWatch.stop();
 	}
 
-
-	private void processTriangleTransition()
+	private boolean readTransitions()
 	{
-		this.triangle = this.triangleSequence.get(this.currentTriangleIndex);
-		this.triangleAfter = this.currentTriangleIndex+1 < this.triangleSequence.size() ?
-				this.triangleSequence.get(this.currentTriangleIndex+1) :
-				null;
-
-		NavMeshTriangleTransition transition = this.triangle.getTransitionTo(this.triangleAfter);
-
-		if(this.triangleAfter == null)
-			traverseTrianglePortal();
-		else if(transition.getTransitionType() == TransitionType.WALK)
-			traverseTrianglePortal();
-		else if(transition.getTransitionType() == TransitionType.CLIMB)
-			useLadder();
-	}
+		int transitionCount = this.triangleSequence.size()-1;
+		this.portals = new double[transitionCount*PORTAL_STRIDE];
+		this.portalVertices = new double[transitionCount*PORTAL_STRIDE];
+		this.ladders = new NavMeshLadder[transitionCount];
 
+		for(int i = 0; i < transitionCount; i++)
+		{
+			NavMeshTriangle from = this.triangleSequence.get(i);
+			NavMeshTriangle to = this.triangleSequence.get(i+1);
 
-	// WALKING
-	private void traverseTrianglePortal()
+			NavMeshTriangleTransition transition = this.snapshot.getTransition(from, to);
+			if(transition == null)
+				return false;
+
+			if(transition.getTransitionType() == TransitionType.CLIMB)
+				this.ladders[i] = (NavMeshLadder) transition;
+			else if(transition.getTransitionType() == TransitionType.WALK)
+				readPortalEndpoints(i, from, ((NavMeshTrianglePortal) transition).getFullLineSegment());
+		}
+
+		return true;
+	}
+
+	private void readPortalEndpoints(int index, NavMeshTriangle from, LineSegment3D portal)
 	{
-		if(this.triangleAfter == null) // last triangle
-			processMovementTowardsTargetPoint(this.targetPosition);
-			// either first triangle processing or after new corner
-		else if(this.visLeft == null) // if visLeft is null, then visRight is also null
+		Vector3D center = from.getCenter();
+		Vector3D left = portal.a;
+		Vector3D right = portal.b;
+
+		// seen from the center of the triangle the portal is left from, the endpoints are sorted left to right
+		if(isLeftOf(right.x-center.x, right.z-center.z, left.x-center.x, left.z-center.z, false))
 		{
-			findPortalEndpoints(this.triangle, this.triangleAfter);
-			this.visLeft = this.portalEndpointLeft;
-			this.visRight = this.portalEndpointRight;
-			this.visLeftTriangleIndex = this.currentTriangleIndex;
-			this.visRightTriangleIndex = this.currentTriangleIndex;
+			left = portal.b;
+			right = portal.a;
 		}
-		else
-		{
-			findPortalEndpoints(this.triangle, this.triangleAfter);
 
-			boolean leftSame = isSame(this.visLeft, this.currentPosition);
-			boolean rightSame = isSame(this.visRight, this.currentPosition);
+		int offset = index*PORTAL_STRIDE;
+		this.portalVertices[offset] = left.x;
+		this.portalVertices[offset+1] = left.y;
+		this.portalVertices[offset+2] = left.z;
+		this.portalVertices[offset+3] = right.x;
+		this.portalVertices[offset+4] = right.y;
+		this.portalVertices[offset+5] = right.z;
+
+		// the endpoints are moved towards each other by the agent radius, measured horizontally
+		double dX = right.x-left.x;
+		double dY = right.y-left.y;
+		double dZ = right.z-left.z;
+		double horizontalLength = Math.sqrt(dX*dX+dZ*dZ);
+
+		double shrinkFraction = 0;
+		if(this.agentRadius > 0 && horizontalLength > 0)
+			shrinkFraction = Math.min(this.agentRadius/horizontalLength, 0.5);
+
+		this.portals[offset] = left.x+dX*shrinkFraction;
+		this.portals[offset+1] = left.y+dY*shrinkFraction;
+		this.portals[offset+2] = left.z+dZ*shrinkFraction;
+		this.portals[offset+3] = right.x-dX*shrinkFraction;
+		this.portals[offset+4] = right.y-dY*shrinkFraction;
+		this.portals[offset+5] = right.z-dZ*shrinkFraction;
+	}
 
-			// check if portal is out on one side
-			if(isLeftOf(getTowardsVisRight(), getTowardsPortalEndpointLeft(), true) && !leftSame && !rightSame) // right turn
-			{
-				newWaypoint(this.visRight, TransitionType.WALK);
 
-				this.currentTriangleIndex = this.visRightTriangleIndex;
-				return;
-			}
-			else if(isLeftOf(getTowardsPortalEndpointRight(), getTowardsVisLeft(), true) && !leftSame && !rightSame) // left turn
+	// WALKING
+	/**
+	 * Runs the funnel from the current apex through the portals of the transitions in [firstTransition,
+	 * endTransition) to the end point. Every corner the string is pulled around is added as a waypoint, the end point
+	 * itself is not.
+	 */
+	private void pullString(int firstTransition, int endTransition, double endX, double endZ)
+	{
+		boolean funnelOpen = false;
+		int leftIndex = 0;
+		int rightIndex = 0;
+
+		for(int i = firstTransition; i <= endTransition; i++)
+		{
+			// the end point is checked against the funnel like a portal with both endpoints at the same position
+			if(i == endTransition)
 			{
-				newWaypoint(this.visLeft, TransitionType.WALK);
+				if(!funnelOpen)
+					return;
+
+				double towardsEndX = endX-this.apexX;
+				double towardsEndZ = endZ-this.apexZ;
+				double towardsVisLeftX = leftX(leftIndex)-this.apexX;
+				double towardsVisLeftZ = leftZ(leftIndex)-this.apexZ;
+				double towardsVisRightX = rightX(rightIndex)-this.apexX;
+				double towardsVisRightZ = rightZ(rightIndex)-this.apexZ;
+
+				if(isLeftOf(towardsVisRightX, towardsVisRightZ, towardsEndX, towardsEndZ, false))
+				{
+					newCorner(rightIndex, RIGHT);
+					funnelOpen = false;
+					i = rightIndex;
+				}
+				else if(isLeftOf(towardsEndX, towardsEndZ, towardsVisLeftX, towardsVisLeftZ, false))
+				{
+					newCorner(leftIndex, LEFT);
+					funnelOpen = false;
+					i = leftIndex;
+				}
+
+				continue;
+			}
 
-				this.currentTriangleIndex = this.visLeftTriangleIndex;
-				return;
+			// a new funnel starts at the first portal after the apex
+			if(!funnelOpen)
+			{
+				funnelOpen = true;
+				leftIndex = i;
+				rightIndex = i;
+				continue;
 			}
 
-			// confine movement cone
-			if(isLeftOf(getTowardsVisLeft(), getTowardsPortalEndpointLeft(), true)) // left
+			double towardsVisLeftX = leftX(leftIndex)-this.apexX;
+			double towardsVisLeftZ = leftZ(leftIndex)-this.apexZ;
+			double towardsVisRightX = rightX(rightIndex)-this.apexX;
+			double towardsVisRightZ = rightZ(rightIndex)-this.apexZ;
+			double towardsPortalLeftX = leftX(i)-this.apexX;
+			double towardsPortalLeftZ = leftZ(i)-this.apexZ;
+			double towardsPortalRightX = rightX(i)-this.apexX;
+			double towardsPortalRightZ = rightZ(i)-this.apexZ;
+
+			// right after a corner the apex is an endpoint of the funnel, then it can't be crossed
+			boolean apexOnFunnel = isApex(leftX(leftIndex), leftY(leftIndex), leftZ(leftIndex)) || isApex(
+					rightX(rightIndex), rightY(rightIndex), rightZ(rightIndex));
+
+			// the portal is completely outside of one side of the funnel
+			boolean rightTurn = isLeftOf(towardsVisRightX, towardsVisRightZ, towardsPortalLeftX, towardsPortalLeftZ,
+					true);
+			boolean leftTurn = isLeftOf(towardsPortalRightX, towardsPortalRightZ, towardsVisLeftX, towardsVisLeftZ,
+					true);
+			if(rightTurn && !apexOnFunnel)
 			{
-				this.visLeft = this.portalEndpointLeft;
-				this.visLeftTriangleIndex = this.currentTriangleIndex;
+				newCorner(rightIndex, RIGHT);
+				funnelOpen = false;
+				i = rightIndex;
+				continue;
 			}
-			if(isLeftOf(getTowardsPortalEndpointRight(), getTowardsVisRight(), true)) // right
+			if(leftTurn && !apexOnFunnel)
 			{
-				this.visRight = this.portalEndpointRight;
-				this.visRightTriangleIndex = this.currentTriangleIndex;
+				newCorner(leftIndex, LEFT);
+				funnelOpen = false;
+				i = leftIndex;
+				continue;
 			}
+
+			// confine the funnel
+			if(isLeftOf(towardsVisLeftX, towardsVisLeftZ, towardsPortalLeftX, towardsPortalLeftZ, true))
+				leftIndex = i;
+			if(isLeftOf(towardsPortalRightX, towardsPortalRightZ, towardsVisRightX, towardsVisRightZ, true))
+				rightIndex = i;
 		}
 	}
 
-	private void processMovementTowardsTargetPoint(Vector3D targetPoint)
+	private void newCorner(int index, int side)
 	{
-		// the vis points can be null if the transition into the previous triangle was a turn
-		// if this is the case, the target point is guaranteed to be in the cone
-		if(this.visLeft != null)
-		{
-			Vector3D towardsTargetPoint = targetPoint.subtract(this.currentPosition);
-
-			if(isLeftOf(getTowardsVisRight(), towardsTargetPoint, false)) // right turn
-			{
-				newWaypoint(this.visRight, TransitionType.WALK);
+		int offset = index*PORTAL_STRIDE+side;
+		double x = this.portals[offset];
+		double y = this.portals[offset+1];
+		double z = this.portals[offset+2];
+		double vertexX = this.portalVertices[offset];
+		double vertexY = this.portalVertices[offset+1];
+		double vertexZ = this.portalVertices[offset+2];
+
+		if(this.agentRadius > 0 && this.apexIsCorner && vertexX == this.apexVertexX && vertexY == this.apexVertexY
+				&& vertexZ == this.apexVertexZ)
+			addCornerArc(vertexX, vertexZ, x, y, z);
+
+		this.pathWaypoints.add(new PathWaypoint(new Vector3D(x, y, z), TransitionType.WALK));
+		setApex(x, y, z);
+
+		this.apexIsCorner = true;
+		this.apexVertexX = vertexX;
+		this.apexVertexY = vertexY;
+		this.apexVertexZ = vertexZ;
+	}
 
-				this.currentTriangleIndex = this.visRightTriangleIndex;
-				return;
-			}
-			else if(isLeftOf(towardsTargetPoint, getTowardsVisLeft(), false)) // left turn
-			{
-				newWaypoint(this.visLeft, TransitionType.WALK);
+	/**
+	 * Adds waypoints on the circle around a corner vertex between the apex and the next corner, if both of them were
+	 * pulled around the same vertex and the angle between them is too large for a smooth turn.
+	 */
+	private void addCornerArc(double vertexX, double vertexZ, double x, double y, double z)
+	{
+		double startAngle = Math.atan2(this.apexZ-vertexZ, this.apexX-vertexX);
+		double angle = Math.atan2(z-vertexZ, x-vertexX)-startAngle;
+		if(angle > Math.PI)
+			angle -= 2*Math.PI;
+		else if(angle < -Math.PI)
+			angle += 2*Math.PI;
+
+		int steps = (int) Math.ceil(Math.abs(angle)/CORNER_ARC_STEP);
+		if(steps <= 1)
+			return;
+
+		double startRadius = Math.sqrt(square(this.apexX-vertexX)+square(this.apexZ-vertexZ));
+		double endRadius = Math.sqrt(square(x-vertexX)+square(z-vertexZ));
+		for(int i = 1; i < steps; i++)
+		{
+			double fraction = i/(double) steps;
+			double stepAngle = startAngle+angle*fraction;
+			double stepRadius = startRadius+(endRadius-startRadius)*fraction;
 
-				this.currentTriangleIndex = this.visLeftTriangleIndex;
-				return;
-			}
+			Vector3D position = new Vector3D(vertexX+Math.cos(stepAngle)*stepRadius, this.apexY+(y-this.apexY)*fraction,
+					vertexZ+Math.sin(stepAngle)*stepRadius);
+			this.pathWaypoints.add(new PathWaypoint(position, TransitionType.WALK));
 		}
-
-		this.pathWaypoints.add(new PathWaypoint(targetPoint, TransitionType.WALK));
 	}
 
 
 	// LADDER CLIMBING
-	private void useLadder()
+	private void useLadder(int segmentStart, int ladderTransition, NavMeshLadder ladder)
 	{
-		NavMeshTriangleTransition transition = this.triangle.getTransitionTo(this.triangleAfter);
-		NavMeshLadder ladder = (NavMeshLadder) transition;
+		Vector3D bottom = ladder.getPositionBottom();
+		Vector3D top = ladder.getPositionTop();
+		Vector3D bottomAtTopHeight = new Vector3D(bottom.x, top.y, bottom.z);
 
-		boolean upwards = ladder.getTriangleBottom() == this.triangle;
+		boolean upwards = ladder.getTriangleBottom() == this.triangleSequence.get(ladderTransition);
 		if(upwards)
 		{
-			processMovementTowardsTargetPoint(ladder.getPositionBottom());
-			Vector3D climbingEndPosition = new Vector3D(ladder.getPositionBottom().x, ladder.getPositionTop().y,
-					ladder.getPositionBottom().z);
+			pullString(segmentStart, ladderTransition, bottom.x, bottom.z);
+			this.pathWaypoints.add(new PathWaypoint(bottom, TransitionType.WALK));
 
-			PathWaypoint climbPathWaypoint = newWaypoint(climbingEndPosition, TransitionType.CLIMB);
+			PathWaypoint climbPathWaypoint = new PathWaypoint(bottomAtTopHeight, TransitionType.CLIMB);
 			climbPathWaypoint.setData("ladderDirection", ladder.getLadderDirection());
-			newWaypoint(ladder.getPositionTop(), TransitionType.WALK);
+			this.pathWaypoints.add(climbPathWaypoint);
+			this.pathWaypoints.add(new PathWaypoint(top, TransitionType.WALK));
+			setApex(top.x, top.y, top.z);
 		}
 		else
 		{
-			Vector3D climbingStartPosition = new Vector3D(ladder.getPositionBottom().x, ladder.getPositionTop().y,
-					ladder.getPositionBottom().z);
+			pullString(segmentStart, ladderTransition, bottomAtTopHeight.x, bottomAtTopHeight.z);
+			this.pathWaypoints.add(new PathWaypoint(bottomAtTopHeight, TransitionType.WALK));
 
-			processMovementTowardsTargetPoint(climbingStartPosition);
-			PathWaypoint climbPathWaypoint = newWaypoint(ladder.getPositionBottom(), TransitionType.CLIMB);
+			PathWaypoint climbPathWaypoint = new PathWaypoint(bottom, TransitionType.CLIMB);
 			climbPathWaypoint.setData("ladderDirection", ladder.getLadderDirection());
+			this.pathWaypoints.add(climbPathWaypoint);
+			setApex(bottom.x, bottom.y, bottom.z);
 		}
 	}
 
 
-	// SUBROUTINES
-	private void findPortalEndpoints(NavMeshTriangle from, NavMeshTriangle to)
+	// PORTALS
+	private double leftX(int index)
+	{
+		return this.portals[index*PORTAL_STRIDE];
+	}
+
+	private double leftY(int index)
+	{
+		return this.portals[index*PORTAL_STRIDE+1];
+	}
+
+	private double leftZ(int index)
 	{
-		NavMeshTriangleTransition transition = from.getTransitionTo(to);
-		LineSegment3D portalLineSegment = ((NavMeshTrianglePortal) transition).getFullLineSegment();
+		return this.portals[index*PORTAL_STRIDE+2];
+	}
 
-		this.portalEndpointLeft = portalLineSegment.a;
-		this.portalEndpointRight = portalLineSegment.b;
+	private double rightX(int index)
+	{
+		return this.portals[index*PORTAL_STRIDE+3];
+	}
 
-		Vector3D fromCenter = from.getCenter();
-		if(isLeftOf(this.portalEndpointRight.subtract(fromCenter), this.portalEndpointLeft.subtract(fromCenter), false))
-		{
-			Vector3D temp = this.portalEndpointLeft;
-			this.portalEndpointLeft = this.portalEndpointRight;
-			this.portalEndpointRight = temp;
-		}
+	private double rightY(int index)
+	{
+		return this.portals[index*PORTAL_STRIDE+4];
 	}
 
-	private PathWaypoint newWaypoint(Vector3D position, int transitionType)
+	private double rightZ(int index)
 	{
-		PathWaypoint pathWaypoint = new PathWaypoint(position, transitionType);
-		this.pathWaypoints.add(pathWaypoint);
+		return this.portals[index*PORTAL_STRIDE+5];
+	}
+
 
-		this.currentPosition = position;
-		this.visLeft = null;
-		this.visRight = null;
+	// APEX
+	private void setApex(double x, double y, double z)
+	{
+		this.apexX = x;
+		this.apexY = y;
+		this.apexZ = z;
+		this.apexIsCorner = false;
+	}
 
-		return pathWaypoint;
+	private boolean isApex(double x, double y, double z)
+	{
+		return x == this.apexX && y == this.apexY && z == this.apexZ;
 	}
 
 
 	// UTIL
-	private static boolean isLeftOf(Vector3D v1, Vector3D v2, boolean onZero)
+	/**
+	 * Checks on which side of the first vector the second one is when looking from above, using the y component of
+	 * their cross product.
+	 */
+	private static boolean isLeftOf(double x1, double z1, double x2, double z2, boolean onZero)
 	{
-		double crossY = v1.crossProduct(v2).y;
+		double crossY = z1*x2-x1*z2;
 
 		if(crossY == 0)
 			return onZero;
@@ -276,12 +445,9 @@ public class NavMeshTriangleTraverser
 		return crossY < 0;
 	}
 
-	private static boolean isSame(Vector3D a, Vector3D b)
+	private static double square(double value)
 	{
-		if(a == null)
-			return b == null;
-
-		return a.equals(b);
+		return value*value;
 	}
 
 }
@@ -61,4 +61,12 @@ public class NavMeshTrianglePortal implements NavMeshTriangleTransition
 		return this.triangleHeuristicCenterDistance;
 	}
 
+
+	// CHANGERS
+	public void resetWeight()
+	{
+		// the weight depends on the heuristic centers, so it has to be calculated again when they move
+		this.triangleHeuristicCenterDistance = -1;
+	}
+
 }
@@ -1,32 +1,137 @@
 package de.domisum.lib.compitum.path;
 
+import de.domisum.lib.auxilium.data.container.DataRegister;
+import de.domisum.lib.auxilium.util.java.annotations.API;
+
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * A path stored in primitive arrays. The few waypoints with additional data (e.g. the direction of a ladder) keep it in
+ * a separate table. Waypoint objects are only created when they are requested, and the last one is kept, so requesting
+ * the waypoint that is currently walked to again every tick doesn't allocate anything. Code going through all waypoints
+ * can read the arrays directly through getX(..), getY(..), getZ(..) and getTransitionType(..) instead.
+ */
 public class Path
 {
 
-	private List<PathWaypoint> pathWaypoints;
+	// CONSTANTS
+	private static final int COORDINATE_STRIDE = 3; // x, y, z
+
+	// PROPERTIES
+	private final double[] coordinates; // <index * COORDINATE_STRIDE, position of the waypoint>
+	private final byte[] transitionTypes; // <index, transition type>
+	private Map<Integer, DataRegister> dataRegisters; // <index, data>, only waypoints which have data
+
+	// STATUS
+	private PathWaypointView lastWaypoint; // only one is kept, so reading a path doesn't make it larger
 
 
 	// INIT
 	public Path(List<PathWaypoint> pathWaypoints)
 	{
-		this.pathWaypoints = pathWaypoints;
+		this.coordinates = new double[pathWaypoints.size()*COORDINATE_STRIDE];
+		this.transitionTypes = new byte[pathWaypoints.size()];
+
+		for(int i = 0; i < pathWaypoints.size(); i++)
+		{
+			PathWaypoint pathWaypoint = pathWaypoints.get(i);
+
+			this.coordinates[i*COORDINATE_STRIDE] = pathWaypoint.getPosition().x;
+			this.coordinates[i*COORDINATE_STRIDE+1] = pathWaypoint.getPosition().y;
+			this.coordinates[i*COORDINATE_STRIDE+2] = pathWaypoint.getPosition().z;
+			this.transitionTypes[i] = (byte) pathWaypoint.getTransitionType();
+
+			DataRegister dataRegister = pathWaypoint.getDataRegister();
+			if(dataRegister != null)
+				getDataRegisters().put(i, dataRegister);
+		}
 	}
 
 
 	// GETTERS
 	public int getNumberOfWaypoints()
 	{
-		return this.pathWaypoints.size();
+		return this.transitionTypes.length;
 	}
 
+	/**
+	 * Returns the waypoint at the given index. The waypoint is created when it is requested, if the same waypoint was
+	 * requested last the same object is returned. Its data is read from and written to this path.
+	 *
+	 * @param index the index of the waypoint
+	 * @return the waypoint at the index, null if there is no waypoint at the index
+	 */
 	public PathWaypoint getWaypoint(int index)
 	{
-		if(index >= this.pathWaypoints.size() || index < 0)
+		if(index >= getNumberOfWaypoints() || index < 0)
+			return null;
+
+		PathWaypointView waypoint = this.lastWaypoint;
+		if(waypoint == null || waypoint.getIndex() != index)
+		{
+			waypoint = new PathWaypointView(this, index);
+			this.lastWaypoint = waypoint;
+		}
+
+		return waypoint;
+	}
+
+
+	@API public double getX(int index)
+	{
+		return this.coordinates[index*COORDINATE_STRIDE];
+	}
+
+	@API public double getY(int index)
+	{
+		return this.coordinates[index*COORDINATE_STRIDE+1];
+	}
+
+	@API public double getZ(int index)
+	{
+		return this.coordinates[index*COORDINATE_STRIDE+2];
+	}
+
+	@API public int getTransitionType(int index)
+	{
+		return this.transitionTypes[index];
+	}
+
+	@API public Object getData(int index, String key)
+	{
+		if(this.dataRegisters == null)
+			return null;
+
+		DataRegister dataRegister = this.dataRegisters.get(index);
+		if(dataRegister == null)
+			return null;
+
+		return dataRegister.get(key);
+	}
+
+	DataRegister getDataRegister(int index)
+	{
+		if(this.dataRegisters == null)
 			return null;
 
-		return this.pathWaypoints.get(index);
+		return this.dataRegisters.get(index);
+	}
+
+
+	// SETTERS
+	@API public void setData(int index, String key, Object value)
+	{
+		getDataRegisters().computeIfAbsent(index, i->new DataRegister()).set(key, value);
+	}
+
+	private Map<Integer, DataRegister> getDataRegisters()
+	{
+		if(this.dataRegisters == null)
+			this.dataRegisters = new HashMap<>();
+
+		return this.dataRegisters;
 	}
 
 }
@@ -0,0 +1,23 @@
+package de.domisum.lib.compitum.path;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+
+/**
+ * Receives the paths of a pathfinding while it is still running, so an agent can start walking before the search is
+ * finished.
+ */
+@API
+public interface PathListener
+{
+
+	/**
+	 * Called with a provisional path whenever the search got closer to the target, and once with the final result.
+	 * A provisional path starts at the start of the search, but can end anywhere and may differ from the final path
+	 * after a few waypoints.
+	 *
+	 * @param path     the path found so far, or the final path (null if no path was found)
+	 * @param finished whether the pathfinding is finished and the path is the final one
+	 */
+	void onPathUpdate(Path path, boolean finished);
+
+}
@@ -10,7 +10,7 @@ public class PathWaypoint
 	private Vector3D position;
 	private int transitionType;
 
-	private DataRegister dataRegister = new DataRegister();
+	private DataRegister dataRegister; // only created when data is set, most waypoints don't have any
 
 
 	// INIT
@@ -39,13 +39,24 @@ public class PathWaypoint
 
 	public Object getData(String key)
 	{
+		if(this.dataRegister == null)
+			return null;
+
 		return this.dataRegister.get(key);
 	}
 
+	DataRegister getDataRegister()
+	{
+		return this.dataRegister;
+	}
+
 
 	// SETTERS
 	public void setData(String key, Object value)
 	{
+		if(this.dataRegister == null)
+			this.dataRegister = new DataRegister();
+
 		this.dataRegister.set(key, value);
 	}
 
@@ -0,0 +1,51 @@
+package de.domisum.lib.compitum.path;
+
+import de.domisum.lib.auxilium.data.container.DataRegister;
+import de.domisum.lib.auxilium.data.container.math.Vector3D;
+
+/**
+ * A waypoint of a path, created by the path when it is requested. The position and the transition type are copied from
+ * the arrays of the path, which never change, the data is read from and written to the table of the path.
+ */
+class PathWaypointView extends PathWaypoint
+{
+
+	// REFERENCES
+	private final Path path;
+	private final int index;
+
+
+	// INIT
+	PathWaypointView(Path path, int index)
+	{
+		super(new Vector3D(path.getX(index), path.getY(index), path.getZ(index)), path.getTransitionType(index));
+
+		this.path = path;
+		this.index = index;
+	}
+
+
+	// GETTERS
+	int getIndex()
+	{
+		return this.index;
+	}
+
+	@Override public Object getData(String key)
+	{
+		return this.path.getData(this.index, key);
+	}
+
+	@Override DataRegister getDataRegister()
+	{
+		return this.path.getDataRegister(this.index);
+	}
+
+
+	// SETTERS
+	@Override public void setData(String key, Object value)
+	{
+		this.path.setData(this.index, key, value);
+	}
+
+}
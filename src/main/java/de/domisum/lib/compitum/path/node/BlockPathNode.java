@@ -65,6 +65,11 @@ public class BlockPathNode implements WeightedNode
 		return this.transitionType;
 	}
 
+	public double getWeightFromParent()
+	{
+		return this.weightFromParent;
+	}
+
 
 	@Override public double getGValue()
 	{
@@ -0,0 +1,32 @@
+package de.domisum.lib.compitum.path.node.weighted;
+
+/**
+ * An entry of the queue of a Dijkstra search, ordered by the distance the element was reached with. Elements are added
+ * again instead of being moved in the queue when a shorter distance is found, so an entry whose distance is larger than
+ * the one known for its element is outdated and skipped when it is polled.
+ *
+ * @param <T> the type of the nodes of the searched graph
+ */
+public class DistanceEntry<T> implements Comparable<DistanceEntry<?>>
+{
+
+	// PROPERTIES
+	public final T element;
+	public final double distance;
+
+
+	// INIT
+	public DistanceEntry(T element, double distance)
+	{
+		this.element = element;
+		this.distance = distance;
+	}
+
+
+	// COMPARISON
+	@Override public int compareTo(DistanceEntry<?> other)
+	{
+		return Double.compare(this.distance, other.distance);
+	}
+
+}
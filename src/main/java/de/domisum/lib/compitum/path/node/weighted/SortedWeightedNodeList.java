@@ -35,6 +35,14 @@ public class SortedWeightedNodeList<T extends WeightedNode>
 		return firstNode;
 	}
 
+	public T getFirst()
+	{
+		if(this.nodes.isEmpty())
+			return null;
+
+		return this.nodes.get(0);
+	}
+
 	public boolean contains(T node)
 	{
 		return this.nodesContainsTester.contains(node);
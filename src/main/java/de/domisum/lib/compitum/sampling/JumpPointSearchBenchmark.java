@@ -0,0 +1,204 @@
+package de.domisum.lib.compitum.sampling;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.block.BlockAStar;
+import de.domisum.lib.compitum.block.BlockAccess;
+import de.domisum.lib.compitum.metrics.PathfindingStats;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import org.bukkit.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the regular expansion of BlockAStar with jump point search on generated plazas, without a server:
+ * <pre>
+ * java -cp ... de.domisum.lib.compitum.sampling.JumpPointSearchBenchmark [plaza size] [pillar percentage] [searches]
+ * </pre>
+ * The plazas are flat and have pillars scattered over them. Jump point search visits fewer nodes, but reads more blocks
+ * for each of them while scanning, so the block lookups and the time are summed up as well as the visited nodes.
+ */
+@API
+public class JumpPointSearchBenchmark
+{
+
+	// CONSTANTS
+	private static final int DEFAULT_PLAZA_SIZE = 128;
+	private static final int DEFAULT_PILLAR_PERCENTAGE = 2;
+	private static final int DEFAULT_SEARCHES = 50;
+
+	private static final long SEED = 0x504C415A41L; // "PLAZA"
+	private static final int GROUND_Y = 64;
+	private static final int MAX_NODE_VISITS = 1_000_000;
+
+
+	// MAIN
+	public static void main(String[] args)
+	{
+		int plazaSize = args.length >= 1 ? Integer.parseInt(args[0]) : DEFAULT_PLAZA_SIZE;
+		int pillarPercentage = args.length >= 2 ? Integer.parseInt(args[1]) : DEFAULT_PILLAR_PERCENTAGE;
+		int searches = args.length >= 3 ? Integer.parseInt(args[2]) : DEFAULT_SEARCHES;
+
+		Plaza plaza = new Plaza(plazaSize, pillarPercentage, new Random(SEED));
+		List<BlockPathNode[]> endpoints = plaza.createEndpoints(searches, new Random(SEED+1));
+
+		// the first round only warms up the JIT
+		run(plaza, endpoints, false);
+		run(plaza, endpoints, true);
+
+		System.out.println("plaza size="+plazaSize+", pillars="+pillarPercentage+"%, searches="+searches);
+		System.out.println("  regular:            "+run(plaza, endpoints, false));
+		System.out.println("  jump point search:  "+run(plaza, endpoints, true));
+	}
+
+	private static Result run(BlockAccess blockAccess, List<BlockPathNode[]> endpoints, boolean useJumpPointSearch)
+	{
+		Result result = new Result();
+		for(BlockPathNode[] startAndTarget : endpoints)
+		{
+			BlockAStar pathfinder = new BlockAStar(getLocation(startAndTarget[0]), getLocation(startAndTarget[1]));
+			pathfinder.setBlockAccess(blockAccess);
+			pathfinder.setMaxNodeVisits(MAX_NODE_VISITS);
+			pathfinder.setUseJumpPointSearch(useJumpPointSearch);
+
+			long startNano = System.nanoTime();
+			pathfinder.findPath();
+			result.add(pathfinder, System.nanoTime()-startNano);
+		}
+
+		return result;
+	}
+
+	private static Location getLocation(BlockPathNode node)
+	{
+		// the world is never accessed, all blocks are read from the plaza
+		return new Location(null, node.x, node.y, node.z);
+	}
+
+
+	// RESULT
+	private static class Result
+	{
+
+		private int pathsFound;
+		private double pathCost;
+		private long visitedNodes;
+		private long blockLookups;
+		private long nanos;
+
+
+		@Override public String toString()
+		{
+			return "pathsFound="+this.pathsFound+", pathCost="+Math.round(this.pathCost)+", visitedNodes="
+					+this.visitedNodes+", blockLookups="+this.blockLookups+", millis="+this.nanos/1_000_000;
+		}
+
+		private void add(BlockAStar pathfinder, long nanos)
+		{
+			PathfindingStats stats = pathfinder.getStats();
+			if(pathfinder.pathFound())
+			{
+				this.pathsFound++;
+				List<BlockPathNode> nodes = pathfinder.getPath().getNodes();
+				this.pathCost += nodes.get(nodes.size()-1).getGValue();
+			}
+
+			this.visitedNodes += stats.getVisitedNodes();
+			this.blockLookups += stats.getBlockLookups();
+			this.nanos += nanos;
+		}
+
+	}
+
+
+	// PLAZA
+	/**
+	 * A flat square of ground at GROUND_Y with walls around it and pillars of three blocks standing on it.
+	 */
+	private static class Plaza implements BlockAccess
+	{
+
+		private final int size;
+		private final boolean[] pillars; // <x*size+z, whether there is a pillar>
+
+
+		private Plaza(int size, int pillarPercentage, Random random)
+		{
+			this.size = size;
+
+			this.pillars = new boolean[size*size];
+			for(int i = 0; i < this.pillars.length; i++)
+				this.pillars[i] = random.nextInt(100) < pillarPercentage;
+		}
+
+		private List<BlockPathNode[]> createEndpoints(int count, Random random)
+		{
+			List<BlockPathNode[]> endpoints = new ArrayList<>();
+			while(endpoints.size() < count)
+			{
+				BlockPathNode start = getRandomFreeNode(random);
+				BlockPathNode target = getRandomFreeNode(random);
+				if(!start.equals(target))
+					endpoints.add(new BlockPathNode[] {start, target});
+			}
+
+			return endpoints;
+		}
+
+		private BlockPathNode getRandomFreeNode(Random random)
+		{
+			while(true)
+			{
+				int x = random.nextInt(this.size);
+				int z = random.nextInt(this.size);
+				if(!this.pillars[x*this.size+z])
+					return new BlockPathNode(x, GROUND_Y+1, z);
+			}
+		}
+
+		private boolean isSolid(int x, int y, int z)
+		{
+			if(y <= GROUND_Y)
+				return true;
+
+			if(x < 0 || z < 0 || x >= this.size || z >= this.size)
+				return true;
+
+			return y <= GROUND_Y+3 && this.pillars[x*this.size+z];
+		}
+
+
+		@Override public int getTypeId(int x, int y, int z)
+		{
+			return isSolid(x, y, z) ? 1 : 0;
+		}
+
+		@Override public int getData(int x, int y, int z)
+		{
+			return 0;
+		}
+
+		@Override public boolean canStandIn(int x, int y, int z)
+		{
+			return !isSolid(x, y, z);
+		}
+
+		@Override public boolean canStandOn(int x, int y, int z)
+		{
+			return isSolid(x, y, z);
+		}
+
+		@Override public boolean isLadder(int x, int y, int z)
+		{
+			return false;
+		}
+
+		@Override public boolean isStair(BlockPathNode from, BlockPathNode to)
+		{
+			return false;
+		}
+
+	}
+
+}
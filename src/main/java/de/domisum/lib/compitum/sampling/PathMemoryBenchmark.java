@@ -0,0 +1,118 @@
+package de.domisum.lib.compitum.sampling;
+
+import de.domisum.lib.auxilium.data.container.math.Vector3D;
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.path.Path;
+import de.domisum.lib.compitum.path.PathWaypoint;
+import de.domisum.lib.compitum.path.node.TransitionType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap used per path, without a server:
+ * <pre>
+ * java -cp ... de.domisum.lib.compitum.sampling.PathMemoryBenchmark [paths] [waypoints per path]
+ * </pre>
+ * Compares a list of waypoint objects, which is what paths used to be stored as, with the packed Path before and after
+ * all of its waypoints were requested. The heap is measured after collecting the garbage, so the numbers are only
+ * rough, the more paths are kept the more accurate they are.
+ */
+@API
+public class PathMemoryBenchmark
+{
+
+	// CONSTANTS
+	private static final int DEFAULT_PATHS = 10_000;
+	private static final int DEFAULT_WAYPOINTS = 100;
+
+	private static final long SEED = 0x50415448L; // "PATH"
+	// about one waypoint in this many is on a ladder and has data
+	private static final int LADDER_WAYPOINT_INTERVAL = 50;
+	private static final int GARBAGE_COLLECTIONS = 5;
+
+
+	// MAIN
+	public static void main(String[] args)
+	{
+		int pathCount = args.length >= 1 ? Integer.parseInt(args[0]) : DEFAULT_PATHS;
+		int waypointCount = args.length >= 2 ? Integer.parseInt(args[1]) : DEFAULT_WAYPOINTS;
+
+		System.out.println("paths="+pathCount+", waypoints per path="+waypointCount);
+
+		System.out.println("  waypoint lists:         "+measure(pathCount, ()->createWaypoints(waypointCount))
+				+" bytes/path");
+		System.out.println("  packed paths:           "+measure(pathCount, ()->new Path(createWaypoints(waypointCount)))
+				+" bytes/path");
+		System.out.println("  packed paths, all read: "+measure(pathCount, ()->createReadPath(waypointCount))
+				+" bytes/path");
+	}
+
+	private static long measure(int pathCount, Supplier<Object> pathSupplier)
+	{
+		Object[] paths = new Object[pathCount];
+		long usedBefore = getUsedHeap();
+
+		for(int i = 0; i < pathCount; i++)
+			paths[i] = pathSupplier.get();
+
+		long usedAfter = getUsedHeap();
+
+		// keeps the paths reachable until the heap was measured
+		if(paths[pathCount-1] == null)
+			throw new IllegalStateException();
+
+		return (usedAfter-usedBefore)/pathCount;
+	}
+
+	private static long getUsedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < GARBAGE_COLLECTIONS; i++)
+			System.gc();
+
+		return runtime.totalMemory()-runtime.freeMemory();
+	}
+
+
+	// PATHS
+	private static List<PathWaypoint> createWaypoints(int waypointCount)
+	{
+		Random random = new Random(SEED);
+
+		List<PathWaypoint> waypoints = new ArrayList<>(waypointCount);
+		double x = 0;
+		double y = 64;
+		double z = 0;
+		for(int i = 0; i < waypointCount; i++)
+		{
+			x += random.nextInt(3)-1;
+			z += random.nextInt(3)-1;
+
+			boolean ladder = random.nextInt(LADDER_WAYPOINT_INTERVAL) == 0;
+			PathWaypoint waypoint = new PathWaypoint(new Vector3D(x+0.5, y, z+0.5),
+					ladder ? TransitionType.CLIMB : TransitionType.WALK);
+			if(ladder)
+			{
+				y++;
+				waypoint.setData("ladderDirection", random.nextInt(4));
+			}
+
+			waypoints.add(waypoint);
+		}
+
+		return waypoints;
+	}
+
+	private static Path createReadPath(int waypointCount)
+	{
+		Path path = new Path(createWaypoints(waypointCount));
+		for(int i = 0; i < path.getNumberOfWaypoints(); i++)
+			path.getWaypoint(i);
+
+		return path;
+	}
+
+}
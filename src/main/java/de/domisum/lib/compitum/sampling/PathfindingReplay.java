@@ -0,0 +1,117 @@
+package de.domisum.lib.compitum.sampling;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.block.BidirectionalBlockAStar;
+import de.domisum.lib.compitum.block.BlockAStar;
+import de.domisum.lib.compitum.block.ParallelBlockAStar;
+import de.domisum.lib.compitum.block.evaluator.MaterialEvaluator;
+import de.domisum.lib.compitum.block.evaluator.StairEvaluator;
+import de.domisum.lib.compitum.metrics.PathfindingStats;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import org.bukkit.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays recorded pathfinding samples without a server, e.g. to profile them:
+ * <pre>
+ * java -cp ... de.domisum.lib.compitum.sampling.PathfindingReplay &lt;sample file or directory&gt; [repetitions]
+ * </pre>
+ * Block searches are run on the recorded blocks with the recorded options. NavMesh samples are only listed, since
+ * loading the NavMesh needs its world.
+ */
+@API
+public class PathfindingReplay
+{
+
+	// CONSTANTS
+	private static final int DEFAULT_REPETITIONS = 5;
+
+
+	// MAIN
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length < 1)
+		{
+			System.out.println("Usage: PathfindingReplay <sample file or directory> [repetitions]");
+			return;
+		}
+
+		int repetitions = args.length >= 2 ? Integer.parseInt(args[1]) : DEFAULT_REPETITIONS;
+
+		MaterialEvaluator.prepareEvaluation();
+		StairEvaluator.prepareEvaluation();
+
+		for(File file : getSampleFiles(new File(args[0])))
+		{
+			PathfindingSample sample = PathfindingSample.read(file);
+			System.out.println(file.getName()+": "+sample);
+			if(!sample.hasBlocks())
+			{
+				System.out.println("  skipped, only block samples can be replayed");
+				continue;
+			}
+
+			for(int i = 0; i < repetitions; i++)
+				System.out.println("  "+replay(sample));
+		}
+	}
+
+	private static List<File> getSampleFiles(File file)
+	{
+		List<File> files = new ArrayList<>();
+		if(file.isDirectory())
+		{
+			File[] directoryFiles = file.listFiles();
+			if(directoryFiles != null)
+				files.addAll(Arrays.asList(directoryFiles));
+			files.sort(null);
+		}
+		else
+			files.add(file);
+
+		return files;
+	}
+
+
+	// REPLAY
+	/**
+	 * Runs the block search of the sample again on the recorded blocks.
+	 *
+	 * @param sample the sample to replay, it has to contain blocks
+	 * @return the cost of the search
+	 */
+	@API public static PathfindingStats replay(PathfindingSample sample)
+	{
+		if(!sample.hasBlocks())
+			throw new IllegalArgumentException("The sample doesn't contain blocks");
+
+		// the world is never accessed, all blocks are read from the sample
+		Location start = getLocation(sample.getStart());
+		Location target = getLocation(sample.getTarget());
+
+		BlockAStar pathfinder;
+		if(sample.isParallelSearch())
+			pathfinder = new ParallelBlockAStar(start, target);
+		else if(sample.isBidirectionalSearch())
+			pathfinder = new BidirectionalBlockAStar(start, target);
+		else
+			pathfinder = new BlockAStar(start, target);
+
+		pathfinder.setBlockAccess(sample);
+		pathfinder.setReturnPartialPath(sample.isReturnPartialPath());
+		pathfinder.findPath();
+
+		return pathfinder.getStats();
+	}
+
+	private static Location getLocation(BlockPathNode node)
+	{
+		return new Location(null, node.x, node.y, node.z);
+	}
+
+}
@@ -0,0 +1,337 @@
+package de.domisum.lib.compitum.sampling;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.block.BlockAccess;
+import de.domisum.lib.compitum.metrics.PathfindingStats;
+import de.domisum.lib.compitum.path.node.BlockPathNode;
+import org.bukkit.Location;
+import org.bukkit.Material;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A recorded pathfinding request: start, target and options, together with the blocks around the area the search
+ * visited or the version of the NavMesh it used. The blocks can be read like a BlockSnapshot, so the request can be
+ * replayed without a server.
+ */
+@API
+public class PathfindingSample implements BlockAccess
+{
+
+	// CONSTANTS
+	private static final int MAGIC_NUMBER = 0x43505346; // "CPSF"
+	private static final int FORMAT_VERSION = 1;
+
+	@SuppressWarnings("deprecation") private static final int OUTSIDE_TYPE_ID = Material.STONE.getId();
+
+	// REQUEST
+	private final long timestamp;
+	private final String pathfinderName;
+	private final long durationNanos;
+	private final String failure;
+
+	private final BlockPathNode start;
+	private final BlockPathNode target;
+
+	private final boolean bidirectionalSearch;
+	private final boolean parallelSearch;
+	private final boolean returnPartialPath;
+
+	// NAVMESH
+	private String navMeshId;
+	private long navMeshVersion = -1;
+
+	// BLOCKS
+	private int minX;
+	private int minY;
+	private int minZ;
+
+	private int sizeX;
+	private int sizeY;
+	private int sizeZ;
+
+	private short[] blocks = new short[0]; // (typeId<<4)|data, in the order of the coordinates x, y, z
+
+
+	// INIT
+	public PathfindingSample(PathfindingStats stats, String failure, Location start, Location target,
+			boolean bidirectionalSearch, boolean parallelSearch, boolean returnPartialPath)
+	{
+		this.timestamp = System.currentTimeMillis();
+		this.pathfinderName = stats.getPathfinderName();
+		this.durationNanos = stats.getTotalNanos();
+		this.failure = failure;
+
+		this.start = new BlockPathNode(start.getBlockX(), start.getBlockY(), start.getBlockZ());
+		this.target = new BlockPathNode(target.getBlockX(), target.getBlockY(), target.getBlockZ());
+
+		this.bidirectionalSearch = bidirectionalSearch;
+		this.parallelSearch = parallelSearch;
+		this.returnPartialPath = returnPartialPath;
+	}
+
+	private PathfindingSample(DataInputStream input) throws IOException
+	{
+		this.timestamp = input.readLong();
+		this.pathfinderName = input.readUTF();
+		this.durationNanos = input.readLong();
+		this.failure = input.readBoolean() ? input.readUTF() : null;
+
+		this.start = new BlockPathNode(input.readInt(), input.readInt(), input.readInt());
+		this.target = new BlockPathNode(input.readInt(), input.readInt(), input.readInt());
+
+		this.bidirectionalSearch = input.readBoolean();
+		this.parallelSearch = input.readBoolean();
+		this.returnPartialPath = input.readBoolean();
+
+		this.navMeshId = input.readBoolean() ? input.readUTF() : null;
+		this.navMeshVersion = input.readLong();
+
+		this.minX = input.readInt();
+		this.minY = input.readInt();
+		this.minZ = input.readInt();
+		this.sizeX = input.readInt();
+		this.sizeY = input.readInt();
+		this.sizeZ = input.readInt();
+
+		this.blocks = new short[this.sizeX*this.sizeY*this.sizeZ];
+		for(int i = 0; i < this.blocks.length; i++)
+			this.blocks[i] = input.readShort();
+	}
+
+	@Override public String toString()
+	{
+		String string = "pathfinder="+this.pathfinderName+", ";
+		string += "durationMs="+this.durationNanos/1000/1000d+", ";
+		string += "start="+this.start.x+"/"+this.start.y+"/"+this.start.z+", ";
+		string += "target="+this.target.x+"/"+this.target.y+"/"+this.target.z+", ";
+		if(this.failure != null)
+			string += "failure="+this.failure+", ";
+		if(this.navMeshId != null)
+			string += "navMesh="+this.navMeshId+"@"+this.navMeshVersion+", ";
+		else
+			string += "blocks="+this.sizeX+"x"+this.sizeY+"x"+this.sizeZ+", ";
+
+		return string;
+	}
+
+
+	// GETTERS
+	@API public long getTimestamp()
+	{
+		return this.timestamp;
+	}
+
+	@API public String getPathfinderName()
+	{
+		return this.pathfinderName;
+	}
+
+	@API public long getDurationNanos()
+	{
+		return this.durationNanos;
+	}
+
+	@API public String getFailure()
+	{
+		return this.failure;
+	}
+
+	@API public BlockPathNode getStart()
+	{
+		return this.start;
+	}
+
+	@API public BlockPathNode getTarget()
+	{
+		return this.target;
+	}
+
+	@API public boolean isBidirectionalSearch()
+	{
+		return this.bidirectionalSearch;
+	}
+
+	@API public boolean isParallelSearch()
+	{
+		return this.parallelSearch;
+	}
+
+	@API public boolean isReturnPartialPath()
+	{
+		return this.returnPartialPath;
+	}
+
+	@API public String getNavMeshId()
+	{
+		return this.navMeshId;
+	}
+
+	@API public long getNavMeshVersion()
+	{
+		return this.navMeshVersion;
+	}
+
+	@API public boolean hasBlocks()
+	{
+		return this.blocks.length > 0;
+	}
+
+	@API public int getBlockCount()
+	{
+		return this.blocks.length;
+	}
+
+	private boolean contains(int x, int y, int z)
+	{
+		return x >= this.minX && x < this.minX+this.sizeX && y >= this.minY && y < this.minY+this.sizeY && z >= this.minZ
+				&& z < this.minZ+this.sizeZ;
+	}
+
+	private int getIndex(int x, int y, int z)
+	{
+		return ((x-this.minX)*this.sizeY+(y-this.minY))*this.sizeZ+(z-this.minZ);
+	}
+
+
+	// SETTERS
+	public void setNavMesh(String navMeshId, long navMeshVersion)
+	{
+		this.navMeshId = navMeshId;
+		this.navMeshVersion = navMeshVersion;
+	}
+
+	/**
+	 * Copies the blocks of the cuboid region between the corners. Blocks outside of the region are treated as solid
+	 * when the sample is read, so the region has to contain every block the search looked at.
+	 *
+	 * @param blockAccess the source of the blocks, e.g. a BlockSnapshot so this can be done off the main thread
+	 * @param minX        the lowest x coordinate of the region
+	 * @param minY        the lowest y coordinate of the region
+	 * @param minZ        the lowest z coordinate of the region
+	 * @param maxX        the highest x coordinate of the region
+	 * @param maxY        the highest y coordinate of the region
+	 * @param maxZ        the highest z coordinate of the region
+	 */
+	public void copyBlocks(BlockAccess blockAccess, int minX, int minY, int minZ, int maxX, int maxY, int maxZ)
+	{
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.sizeX = maxX-minX+1;
+		this.sizeY = maxY-minY+1;
+		this.sizeZ = maxZ-minZ+1;
+
+		short[] blocks = new short[this.sizeX*this.sizeY*this.sizeZ];
+		for(int x = minX; x <= maxX; x++)
+			for(int y = minY; y <= maxY; y++)
+				for(int z = minZ; z <= maxZ; z++)
+				{
+					int typeId = blockAccess.getTypeId(x, y, z);
+					blocks[getIndex(x, y, z)] = (short) ((typeId<<4)|blockAccess.getData(x, y, z));
+				}
+
+		this.blocks = blocks;
+	}
+
+
+	// ACCESS
+	@Override public int getTypeId(int x, int y, int z)
+	{
+		if(!contains(x, y, z))
+			return OUTSIDE_TYPE_ID;
+
+		return (this.blocks[getIndex(x, y, z)]&0xFFFF)>>4;
+	}
+
+	@Override public int getData(int x, int y, int z)
+	{
+		if(!contains(x, y, z))
+			return 0;
+
+		return this.blocks[getIndex(x, y, z)]&0xF;
+	}
+
+
+	// SERIALIZATION
+	/**
+	 * Writes the sample to a gzip compressed file. The block array makes up most of the file and compresses well,
+	 * since most of it is air or the same few materials.
+	 *
+	 * @param file the file to write to, it is replaced if it exists
+	 * @throws IOException if the file can't be written
+	 */
+	public void write(File file) throws IOException
+	{
+		try(DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file)))))
+		{
+			output.writeInt(MAGIC_NUMBER);
+			output.writeInt(FORMAT_VERSION);
+
+			output.writeLong(this.timestamp);
+			output.writeUTF(this.pathfinderName);
+			output.writeLong(this.durationNanos);
+			writeNullableString(output, this.failure);
+
+			writeNode(output, this.start);
+			writeNode(output, this.target);
+
+			output.writeBoolean(this.bidirectionalSearch);
+			output.writeBoolean(this.parallelSearch);
+			output.writeBoolean(this.returnPartialPath);
+
+			writeNullableString(output, this.navMeshId);
+			output.writeLong(this.navMeshVersion);
+
+			output.writeInt(this.minX);
+			output.writeInt(this.minY);
+			output.writeInt(this.minZ);
+			output.writeInt(this.sizeX);
+			output.writeInt(this.sizeY);
+			output.writeInt(this.sizeZ);
+			for(short block : this.blocks)
+				output.writeShort(block);
+		}
+	}
+
+	@API public static PathfindingSample read(File file) throws IOException
+	{
+		try(DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new GZIPInputStream(new FileInputStream(file)))))
+		{
+			if(input.readInt() != MAGIC_NUMBER)
+				throw new IOException("The file '"+file.getAbsolutePath()+"' is not a pathfinding sample");
+
+			int formatVersion = input.readInt();
+			if(formatVersion != FORMAT_VERSION)
+				throw new IOException("The pathfinding sample format version "+formatVersion+" is not supported");
+
+			return new PathfindingSample(input);
+		}
+	}
+
+	private static void writeNullableString(DataOutputStream output, String string) throws IOException
+	{
+		output.writeBoolean(string != null);
+		if(string != null)
+			output.writeUTF(string);
+	}
+
+	private static void writeNode(DataOutputStream output, BlockPathNode node) throws IOException
+	{
+		output.writeInt(node.x);
+		output.writeInt(node.y);
+		output.writeInt(node.z);
+	}
+
+}
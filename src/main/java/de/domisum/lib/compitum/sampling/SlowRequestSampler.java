@@ -0,0 +1,266 @@
+package de.domisum.lib.compitum.sampling;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.block.BlockAStar;
+import de.domisum.lib.compitum.block.BlockSnapshot;
+import de.domisum.lib.compitum.metrics.PathfindingStats;
+import org.bukkit.Location;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records pathfinding requests which took longer than a threshold, so they can be replayed with PathfindingReplay.
+ * The samples are written to a fixed number of files in a directory, the oldest one is replaced when all are used.
+ * <p>
+ * Only taking the chunk snapshots is done on the calling thread, copying the blocks and writing the file is done on a
+ * separate thread. Searches which read their blocks from a snapshot are recorded with it. For the others, only the
+ * chunks the search visited and the chunks around them are taken after the search, so blocks changed in the meantime
+ * are recorded in their new state, and searches which visited too many chunks are not recorded.
+ */
+@API
+public class SlowRequestSampler
+{
+
+	// CONSTANTS
+	private static final String SAMPLE_FILE_PREFIX = "sample-";
+	private static final String SAMPLE_FILE_EXTENSION = ".bin";
+
+	// the search looks at the neighbors of the visited nodes, the blocks below them and the headroom for jumps
+	private static final int SEARCH_BOUNDS_MARGIN = 3;
+	// searches that don't keep track of the visited area use the snapshot area of the parallel search
+	private static final int UNTRACKED_SEARCH_MARGIN = 32;
+	private static final int MAX_SAMPLE_VOLUME = 256*64*256;
+	// every chunk snapshot is taken on the main thread
+	private static final int MAX_SAMPLE_CHUNKS = 64;
+
+	// PROPERTIES
+	private final long thresholdNanos;
+	private final File directory;
+	private final int capacity;
+
+	// REFERENCES
+	private final Logger logger;
+
+	// STATUS
+	private final ExecutorService writer = Executors.newSingleThreadExecutor((runnable)->
+	{
+		Thread thread = new Thread(runnable, "CompitumLib-SlowRequestSampler");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private int nextSlot = -1; // only accessed by the writer thread
+
+	private final AtomicLong writtenSampleCount = new AtomicLong();
+	private final AtomicLong tooLargeSampleCount = new AtomicLong();
+
+
+	// INIT
+	/**
+	 * @param thresholdNanos the duration in nanoseconds above which a pathfinding is recorded
+	 * @param directory      the directory the samples are written to
+	 * @param capacity       the number of samples kept in the directory
+	 * @param logger         the logger failures to write samples are reported to
+	 */
+	@API public SlowRequestSampler(long thresholdNanos, File directory, int capacity, Logger logger)
+	{
+		if(capacity <= 0)
+			throw new IllegalArgumentException("The capacity has to be at least 1");
+
+		this.thresholdNanos = thresholdNanos;
+		this.directory = directory;
+		this.capacity = capacity;
+		this.logger = logger;
+	}
+
+	public void terminate()
+	{
+		this.writer.shutdown();
+	}
+
+
+	// GETTERS
+	@API public long getThresholdNanos()
+	{
+		return this.thresholdNanos;
+	}
+
+	@API public File getDirectory()
+	{
+		return this.directory;
+	}
+
+	@API public long getWrittenSampleCount()
+	{
+		return this.writtenSampleCount.get();
+	}
+
+	/**
+	 * @return the number of block samples which were skipped because the area of the search was too large or the
+	 * search visited too many chunks
+	 */
+	@API public long getTooLargeSampleCount()
+	{
+		return this.tooLargeSampleCount.get();
+	}
+
+	public boolean isSlow(PathfindingStats stats)
+	{
+		return stats.getTotalNanos() >= this.thresholdNanos;
+	}
+
+
+	// SAMPLING
+	/**
+	 * Records a block pathfinding together with the blocks around the area its search visited. This has to be called
+	 * on the main thread.
+	 *
+	 * @param sample     the request
+	 * @param start      the start of the pathfinding
+	 * @param target     the target of the pathfinding
+	 * @param pathfinder the finished search
+	 */
+	public void sampleBlockSearch(PathfindingSample sample, Location start, Location target, BlockAStar pathfinder)
+	{
+		Location corner1 = pathfinder.getSearchMin();
+		Location corner2 = pathfinder.getSearchMax();
+		int margin = SEARCH_BOUNDS_MARGIN;
+		if(corner1 == null || corner2 == null)
+		{
+			corner1 = start;
+			corner2 = target;
+			margin = UNTRACKED_SEARCH_MARGIN;
+		}
+
+		int minX = Math.min(corner1.getBlockX(), corner2.getBlockX())-margin;
+		int minY = Math.max(Math.min(corner1.getBlockY(), corner2.getBlockY())-margin, 0);
+		int minZ = Math.min(corner1.getBlockZ(), corner2.getBlockZ())-margin;
+		int maxX = Math.max(corner1.getBlockX(), corner2.getBlockX())+margin;
+		int maxY = Math.min(Math.max(corner1.getBlockY(), corner2.getBlockY())+margin,
+				start.getWorld().getMaxHeight()-1);
+		int maxZ = Math.max(corner1.getBlockZ(), corner2.getBlockZ())+margin;
+
+		if((long) (maxX-minX+1)*(maxY-minY+1)*(maxZ-minZ+1) > MAX_SAMPLE_VOLUME)
+		{
+			this.tooLargeSampleCount.incrementAndGet();
+			return;
+		}
+
+		BlockSnapshot snapshot = getSnapshot(start, target, pathfinder);
+		if(snapshot == null)
+		{
+			this.tooLargeSampleCount.incrementAndGet();
+			return;
+		}
+
+		submit(()->
+		{
+			sample.copyBlocks(snapshot, minX, minY, minZ, maxX, maxY, maxZ);
+			write(sample);
+		});
+	}
+
+	private BlockSnapshot getSnapshot(Location start, Location target, BlockAStar pathfinder)
+	{
+		// the blocks the search saw, the parallel search reads them from a snapshot of the corridor
+		if(pathfinder.getBlockAccess() instanceof BlockSnapshot)
+			return (BlockSnapshot) pathfinder.getBlockAccess();
+
+		if(pathfinder.getSearchChunks().isEmpty())
+			return BlockSnapshot.ofCorridor(start, target, UNTRACKED_SEARCH_MARGIN);
+
+		// the blocks next to the visited nodes can be in the neighboring chunks
+		Set<Long> chunkKeys = new HashSet<>();
+		for(long chunkKey : pathfinder.getSearchChunks())
+			for(int dX = -1; dX <= 1; dX++)
+				for(int dZ = -1; dZ <= 1; dZ++)
+					chunkKeys.add(BlockSnapshot.getChunkKey(BlockSnapshot.getChunkX(chunkKey)+dX,
+							BlockSnapshot.getChunkZ(chunkKey)+dZ));
+
+		if(chunkKeys.size() > MAX_SAMPLE_CHUNKS)
+			return null;
+
+		return BlockSnapshot.ofChunks(start.getWorld(), chunkKeys);
+	}
+
+	/**
+	 * Records a NavMesh pathfinding. The sample only contains the id and the version of the NavMesh, the mesh itself
+	 * is saved separately.
+	 *
+	 * @param sample the request, with the NavMesh set
+	 */
+	public void sampleNavMeshSearch(PathfindingSample sample)
+	{
+		submit(()->write(sample));
+	}
+
+	private void submit(Runnable task)
+	{
+		try
+		{
+			this.writer.execute(task);
+		}
+		catch(RejectedExecutionException ignored)
+		{
+			// the sampler was terminated in the meantime
+		}
+	}
+
+
+	// WRITING
+	private void write(PathfindingSample sample)
+	{
+		// noinspection ResultOfMethodCallIgnored
+		this.directory.mkdirs();
+
+		File file = getSampleFile(getNextSlot());
+		try
+		{
+			sample.write(file);
+			this.writtenSampleCount.incrementAndGet();
+		}
+		catch(IOException e)
+		{
+			this.logger.log(Level.WARNING, "Failed to write pathfinding sample '"+file+"'", e);
+		}
+	}
+
+	private int getNextSlot()
+	{
+		// after a restart the ring continues at the first unused or the oldest slot
+		if(this.nextSlot == -1)
+		{
+			this.nextSlot = 0;
+			for(int slot = 0; slot < this.capacity; slot++)
+			{
+				File file = getSampleFile(slot);
+				if(!file.exists())
+				{
+					this.nextSlot = slot;
+					break;
+				}
+
+				if(file.lastModified() < getSampleFile(this.nextSlot).lastModified())
+					this.nextSlot = slot;
+			}
+		}
+
+		int slot = this.nextSlot;
+		this.nextSlot = (this.nextSlot+1)%this.capacity;
+		return slot;
+	}
+
+	private File getSampleFile(int slot)
+	{
+		return new File(this.directory, SAMPLE_FILE_PREFIX+String.format("%04d", slot)+SAMPLE_FILE_EXTENSION);
+	}
+
+}
@@ -0,0 +1,209 @@
+package de.domisum.lib.compitum.scheduling;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.CompitumLib;
+import de.domisum.lib.compitum.UniversalPathfinder;
+import de.domisum.lib.compitum.path.Path;
+import de.domisum.lib.compitum.path.PathListener;
+import org.bukkit.Location;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * A pathfinding request waiting in or processed by the PathfindingScheduler. Requests with the same start and target
+ * block are merged, so one request can have multiple callbacks.
+ */
+@API
+public class PathfindingRequest
+{
+
+	// INPUT
+	private final Location start;
+	private final Location target;
+
+	// PROPERTIES
+	private int priority;
+	private long deadlineNano;
+	private final long submissionNano;
+	private final long submissionIndex;
+
+	// REFERENCES
+	private final UniversalPathfinder pathfinder;
+	private final List<Consumer<PathfindingRequest>> callbacks = new ArrayList<>();
+	private final List<PathListener> pathListeners = new ArrayList<>();
+
+	// STATUS
+	private boolean finished = false;
+	private String failure;
+	private long completionNano;
+
+
+	// INIT
+	PathfindingRequest(Location start, Location target, int priority, long deadlineNano, long submissionIndex)
+	{
+		this.start = start.clone();
+		this.target = target.clone();
+
+		this.priority = priority;
+		this.deadlineNano = deadlineNano;
+		this.submissionNano = System.nanoTime();
+		this.submissionIndex = submissionIndex;
+
+		// the pathfinder adjusts the locations it is given
+		this.pathfinder = new UniversalPathfinder(start.clone(), target.clone());
+		this.pathfinder.setPathListener(this::onPathUpdate);
+	}
+
+
+	// GETTERS
+	@API public Location getStart()
+	{
+		return this.start.clone();
+	}
+
+	@API public Location getTarget()
+	{
+		return this.target.clone();
+	}
+
+	@API public int getPriority()
+	{
+		return this.priority;
+	}
+
+	@API public boolean isFinished()
+	{
+		return this.finished;
+	}
+
+	@API public boolean isPathFound()
+	{
+		return this.finished && this.pathfinder.isPathFound();
+	}
+
+	@API public Path getPath()
+	{
+		return this.finished ? this.pathfinder.getPath() : null;
+	}
+
+	@API public boolean isPathPartial()
+	{
+		return this.finished && this.pathfinder.isPathPartial();
+	}
+
+	@API public String getFailure()
+	{
+		return this.failure;
+	}
+
+	@API public String getDiagnose()
+	{
+		return this.pathfinder.getDiagnose();
+	}
+
+	/**
+	 * @return the time in nanoseconds from the submission until the request was finished, or until now if it isn't
+	 * finished yet
+	 */
+	@API public long getLatencyNano()
+	{
+		return (this.finished ? this.completionNano : System.nanoTime())-this.submissionNano;
+	}
+
+
+	long getDeadlineNano()
+	{
+		return this.deadlineNano;
+	}
+
+	long getSubmissionIndex()
+	{
+		return this.submissionIndex;
+	}
+
+	boolean isDeadlineExceeded(long nano)
+	{
+		return nano-this.deadlineNano > 0;
+	}
+
+
+	// CHANGERS
+	void merge(int priority, long deadlineNano, Consumer<PathfindingRequest> callback)
+	{
+		this.priority = Math.max(this.priority, priority);
+		if(deadlineNano-this.deadlineNano < 0)
+			this.deadlineNano = deadlineNano;
+
+		addCallback(callback);
+	}
+
+	void addCallback(Consumer<PathfindingRequest> callback)
+	{
+		if(callback != null)
+			this.callbacks.add(callback);
+	}
+
+	/**
+	 * Makes the request return a partial path if the search gives up, see
+	 * {@link UniversalPathfinder#setReturnPartialPath(boolean)}. This only has an effect before the request is processed.
+	 *
+	 * @param returnPartialPath whether a partial path should be returned if the search gives up
+	 */
+	@API public void setReturnPartialPath(boolean returnPartialPath)
+	{
+		this.pathfinder.setReturnPartialPath(returnPartialPath);
+	}
+
+	/**
+	 * Adds a listener which receives the provisional paths of this request while it is processed. Since requests can be
+	 * merged, a request can have multiple listeners.
+	 *
+	 * @param pathListener the listener receiving the paths
+	 */
+	@API public void addPathListener(PathListener pathListener)
+	{
+		this.pathListeners.add(pathListener);
+	}
+
+
+	// PATHFINDING
+	boolean step(long nanoBudget)
+	{
+		return this.pathfinder.stepFor(nanoBudget);
+	}
+
+	private void onPathUpdate(Path path, boolean finished)
+	{
+		for(PathListener pathListener : this.pathListeners)
+			pathListener.onPathUpdate(path, finished);
+	}
+
+	void finish(String failure)
+	{
+		this.finished = true;
+		this.completionNano = System.nanoTime();
+		this.failure = failure != null ? failure : this.pathfinder.getFailure();
+
+		// the pathfinder only tells the listeners about the end if it finished the search itself
+		if(!this.pathfinder.isFinished())
+		{
+			this.pathfinder.cancel();
+			onPathUpdate(null, true);
+		}
+
+		// the callbacks belong to different callers, one of them failing must not keep the others from being called
+		for(Consumer<PathfindingRequest> callback : this.callbacks)
+			try
+			{
+				callback.accept(this);
+			}
+			catch(RuntimeException e)
+			{
+				CompitumLib.getLogger().log(Level.SEVERE, "A pathfinding request callback threw an exception", e);
+			}
+	}
+
+}
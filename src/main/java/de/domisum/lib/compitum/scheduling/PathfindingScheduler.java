@@ -0,0 +1,323 @@
+package de.domisum.lib.compitum.scheduling;
+
+import de.domisum.lib.auxilium.util.java.annotations.API;
+import de.domisum.lib.compitum.CompitumLib;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Processes pathfinding requests on the main thread with a fixed amount of time per server tick. Requests with a higher
+ * priority are processed first, a block pathfinding search that doesn't fit into one tick is continued in the next one.
+ * Requests for the same start and target block are merged and only processed once.
+ * <p>
+ * All methods have to be called from the main thread.
+ */
+@API
+public class PathfindingScheduler
+{
+
+	// CONSTANTS
+	private static final long DEFAULT_TICK_BUDGET_NANO = TimeUnit.MILLISECONDS.toNanos(5);
+	private static final int LATENCY_SAMPLE_COUNT = 1024;
+
+	private static final Comparator<PathfindingRequest> REQUEST_ORDER = Comparator
+			.comparingInt((PathfindingRequest r)->-r.getPriority())
+			.thenComparingLong(PathfindingRequest::getDeadlineNano)
+			.thenComparingLong(PathfindingRequest::getSubmissionIndex);
+
+	// PROPERTIES
+	private long tickBudgetNano = DEFAULT_TICK_BUDGET_NANO;
+
+	// STATUS
+	private PriorityQueue<PathfindingRequest> queue = new PriorityQueue<>(REQUEST_ORDER);
+	private Map<RequestKey, PathfindingRequest> requests = new HashMap<>();
+	private long submissionCount = 0;
+	private BukkitTask task;
+
+	private long[] latencySamples = new long[LATENCY_SAMPLE_COUNT];
+	private long latencySampleCount = 0;
+	private long finishedRequestCount = 0;
+	private long expiredRequestCount = 0;
+	private long mergedRequestCount = 0;
+	private long lastTickNano;
+
+
+	// INIT
+	@API public void start(Plugin plugin)
+	{
+		if(this.task != null)
+			return;
+
+		this.task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 1, 1);
+	}
+
+	@API public void stop()
+	{
+		if(this.task == null)
+			return;
+
+		this.task.cancel();
+		this.task = null;
+	}
+
+
+	// GETTERS
+	@API public int getQueueDepth()
+	{
+		return this.queue.size();
+	}
+
+	@API public long getFinishedRequestCount()
+	{
+		return this.finishedRequestCount;
+	}
+
+	@API public long getExpiredRequestCount()
+	{
+		return this.expiredRequestCount;
+	}
+
+	@API public long getMergedRequestCount()
+	{
+		return this.mergedRequestCount;
+	}
+
+	/**
+	 * @return the time in nanoseconds spent on pathfinding in the last tick
+	 */
+	@API public long getLastTickNano()
+	{
+		return this.lastTickNano;
+	}
+
+	/**
+	 * Returns a percentile of the time from submission to completion of the last finished requests.
+	 *
+	 * @param percentile the percentile, between 0 and 1 (e.g. 0.99)
+	 * @return the latency in nanoseconds, 0 if no request was finished yet
+	 */
+	@API public long getLatencyPercentileNano(double percentile)
+	{
+		if(percentile < 0 || percentile > 1)
+			throw new IllegalArgumentException("The percentile has to be between 0 and 1, was "+percentile);
+
+		int sampleCount = (int) Math.min(this.latencySampleCount, LATENCY_SAMPLE_COUNT);
+		if(sampleCount == 0)
+			return 0;
+
+		long[] samples = Arrays.copyOf(this.latencySamples, sampleCount);
+		Arrays.sort(samples);
+
+		int index = (int) Math.ceil(percentile*sampleCount)-1;
+		return samples[Math.max(0, index)];
+	}
+
+
+	// SETTERS
+	@API public void setTickBudgetNano(long tickBudgetNano)
+	{
+		if(tickBudgetNano <= 0)
+			throw new IllegalArgumentException("The tick budget has to be positive, was "+tickBudgetNano);
+
+		this.tickBudgetNano = tickBudgetNano;
+	}
+
+
+	// REQUESTS
+	/**
+	 * Adds a pathfinding request to the queue. If a request with the same start and target block is already queued, the
+	 * requests are merged: the merged request keeps the higher priority and the earlier deadline and the callback is
+	 * added to it.
+	 *
+	 * @param start     the start of the path
+	 * @param target    the target of the path
+	 * @param priority  the priority, requests with a higher priority are processed first
+	 * @param maxWaitMs the time after which the request is given up if it isn't finished yet
+	 * @param callback  called on the main thread once the request is finished, with or without a path
+	 * @return the request, which is shared with the merged requests
+	 * @throws IllegalArgumentException if the start and the target are in different worlds
+	 */
+	@API public PathfindingRequest submit(Location start, Location target, int priority, long maxWaitMs,
+			Consumer<PathfindingRequest> callback)
+	{
+		if(start.getWorld() != target.getWorld())
+			throw new IllegalArgumentException("The start and the target of the request are in different worlds");
+
+		long deadlineNano = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+
+		RequestKey key = new RequestKey(start, target);
+		PathfindingRequest existing = this.requests.get(key);
+		if(existing != null)
+		{
+			// the position in the queue depends on the priority and deadline, so it has to be reinserted
+			this.queue.remove(existing);
+			existing.merge(priority, deadlineNano, callback);
+			this.queue.add(existing);
+
+			this.mergedRequestCount++;
+			return existing;
+		}
+
+		PathfindingRequest request = new PathfindingRequest(start, target, priority, deadlineNano, this.submissionCount++);
+		request.addCallback(callback);
+
+		this.requests.put(key, request);
+		this.queue.add(request);
+		return request;
+	}
+
+
+	// TICK
+	private void tick()
+	{
+		if(this.queue.isEmpty())
+		{
+			this.lastTickNano = 0;
+			return;
+		}
+
+		long tickStartNano = System.nanoTime();
+		long tickEndNano = tickStartNano+this.tickBudgetNano;
+
+		// requests waiting behind a long search are given up on time as well, not only once they reach the head
+		finishExpiredRequests(tickStartNano);
+
+		long nano = System.nanoTime();
+		while(!this.queue.isEmpty() && nano-tickEndNano < 0)
+		{
+			// the first request is continued until it is finished, unless a request with a higher priority is added
+			PathfindingRequest request = this.queue.peek();
+			if(request.isDeadlineExceeded(nano))
+				expire(request);
+			else
+				step(request, tickEndNano-nano);
+
+			nano = System.nanoTime();
+		}
+
+		this.lastTickNano = nano-tickStartNano;
+		CompitumLib.getMetrics().recordLatency("scheduler.tick", this.lastTickNano);
+	}
+
+	private void step(PathfindingRequest request, long nanoBudget)
+	{
+		boolean finished;
+		try
+		{
+			finished = request.step(nanoBudget);
+		}
+		catch(RuntimeException e)
+		{
+			// otherwise the request would stay at the head of the queue and fail again in every tick
+			CompitumLib.getLogger().log(Level.SEVERE, "A pathfinding request threw an exception", e);
+			finish(request, "The pathfinding threw an exception: "+e);
+			return;
+		}
+
+		if(finished)
+			finish(request, null);
+	}
+
+	private void finishExpiredRequests(long nano)
+	{
+		List<PathfindingRequest> expiredRequests = new ArrayList<>();
+		for(PathfindingRequest request : this.queue)
+			if(request.isDeadlineExceeded(nano))
+				expiredRequests.add(request);
+
+		for(PathfindingRequest request : expiredRequests)
+			expire(request);
+	}
+
+	private void expire(PathfindingRequest request)
+	{
+		this.expiredRequestCount++;
+		CompitumLib.getMetrics().addToCounter("scheduler.expired", 1);
+		finish(request, "Deadline exceeded before the pathfinding was finished");
+	}
+
+	private void finish(PathfindingRequest request, String failure)
+	{
+		this.queue.remove(request);
+		this.requests.remove(new RequestKey(request.getStart(), request.getTarget()));
+
+		try
+		{
+			request.finish(failure);
+		}
+		catch(RuntimeException e)
+		{
+			CompitumLib.getLogger().log(Level.SEVERE, "Finishing a pathfinding request threw an exception", e);
+		}
+
+		this.latencySamples[(int) (this.latencySampleCount%LATENCY_SAMPLE_COUNT)] = request.getLatencyNano();
+		this.latencySampleCount++;
+		this.finishedRequestCount++;
+		CompitumLib.getMetrics().recordLatency("scheduler.latency", request.getLatencyNano());
+	}
+
+
+	// KEY
+	private static class RequestKey
+	{
+
+		private final UUID worldId;
+		private final int startX;
+		private final int startY;
+		private final int startZ;
+		private final int targetX;
+		private final int targetY;
+		private final int targetZ;
+
+
+		// INIT
+		private RequestKey(Location start, Location target)
+		{
+			this.worldId = start.getWorld().getUID();
+			this.startX = start.getBlockX();
+			this.startY = start.getBlockY();
+			this.startZ = start.getBlockZ();
+			this.targetX = target.getBlockX();
+			this.targetY = target.getBlockY();
+			this.targetZ = target.getBlockZ();
+		}
+
+
+		// OBJECT
+		@Override public boolean equals(Object o)
+		{
+			if(this == o)
+				return true;
+			if(!(o instanceof RequestKey))
+				return false;
+
+			RequestKey other = (RequestKey) o;
+			return this.startX == other.startX && this.startY == other.startY && this.startZ == other.startZ
+					&& this.targetX == other.targetX && this.targetY == other.targetY && this.targetZ == other.targetZ
+					&& Objects.equals(this.worldId, other.worldId);
+		}
+
+		@Override public int hashCode()
+		{
+			return Objects.hash(this.worldId, this.startX, this.startY, this.startZ, this.targetX, this.targetY,
+					this.targetZ);
+		}
+
+	}
+
+}